@@ -19,9 +19,11 @@
 package org.platformlambda.kafka.services;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.header.Header;
@@ -35,6 +37,7 @@ import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.serializers.MsgPack;
 import org.platformlambda.core.system.Platform;
 import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.core.util.AppConfigReader;
 import org.platformlambda.core.util.Utility;
 import org.platformlambda.core.websocket.common.MultipartPayload;
 import org.slf4j.Logger;
@@ -43,6 +46,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class EventConsumer extends Thread {
@@ -57,6 +61,13 @@ public class EventConsumer extends Thread {
     private static final long INITIALIZE = ServiceLifeCycle.INITIALIZE;
     private static final String MONITOR = "monitor";
     private static final String TO_MONITOR = "@"+MONITOR;
+    private static final String AT_LEAST_ONCE = "kafka.consumer.at.least.once";
+    private static final String MAX_IN_FLIGHT = "kafka.consumer.max.in.flight";
+    private static final String ACK_TIMEOUT = "kafka.consumer.ack.timeout";
+    private static final String CONCURRENCY = "kafka.consumer.concurrency";
+    private static final String DEAD_LETTER_TOPIC = "kafka.consumer.dead.letter.topic";
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY = 1000;
     private final String INIT_TOKEN = UUID.randomUUID().toString();
     private final String topic, realTopic;
     private final int partition;
@@ -65,9 +76,24 @@ public class EventConsumer extends Thread {
     private final AtomicBoolean normal = new AtomicBoolean(true);
     private int skipped = 0;
     private long offset = -1;
+    private final boolean atLeastOnce;
+    private final int maxInFlight;
+    private final long ackTimeout;
+    private final int concurrency;
+    private final Map<TopicPartition, OffsetTracker> trackers = new ConcurrentHashMap<>();
+    private final Set<TopicPartition> stalled = new HashSet<>();
+    private final RecordDispatcher dispatcher;
+    private boolean paused = false;
 
     public EventConsumer(Properties base, String topic, int partition, String... parameters) throws IOException {
         Utility util = Utility.getInstance();
+        AppConfigReader config = AppConfigReader.getInstance();
+        this.atLeastOnce = "true".equals(config.getProperty(AT_LEAST_ONCE, "false"));
+        this.maxInFlight = Math.max(1, util.str2int(config.getProperty(MAX_IN_FLIGHT, "500")));
+        this.ackTimeout = Math.max(1000, util.str2long(config.getProperty(ACK_TIMEOUT, "30000")));
+        this.concurrency = atLeastOnce? Math.max(1, util.str2int(config.getProperty(CONCURRENCY, "1"))) : 1;
+        this.dispatcher = atLeastOnce? new RecordDispatcher(topic, ackTimeout, MAX_ATTEMPTS, RETRY_DELAY,
+                                                config.getProperty(DEAD_LETTER_TOPIC, "")) : null;
         boolean substitute = ConnectorConfig.topicSubstitutionEnabled();
         Map<String, String> preAllocatedTopics = ConnectorConfig.getTopicSubstitution();
         this.topic = topic;
@@ -107,6 +133,10 @@ public class EventConsumer extends Thread {
         }
         prop.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         prop.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        if (atLeastOnce) {
+            // offsets are committed only after the target function has processed the records
+            prop.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        }
         this.consumer = new KafkaConsumer<>(prop);
     }
 
@@ -120,6 +150,11 @@ public class EventConsumer extends Thread {
         return data.get(tp);
     }
 
+    private OffsetAndMetadata getCommitted(TopicPartition tp) {
+        Map<TopicPartition, OffsetAndMetadata> data = consumer.committed(Collections.singleton(tp));
+        return data.get(tp);
+    }
+
     @Override
     public void run() {
         final boolean init = offset == INITIALIZE;
@@ -149,14 +184,19 @@ public class EventConsumer extends Thread {
         String virtualTopic = (topic + (partition < 0? "" : "." + partition)).toLowerCase();
         String topicPartition = realTopic + (realPartition < 0? "" : "." + realPartition);
         if (realPartition < 0) {
-            consumer.subscribe(Collections.singletonList(realTopic));
+            if (atLeastOnce) {
+                consumer.subscribe(Collections.singletonList(realTopic), new RebalanceHandler());
+            } else {
+                consumer.subscribe(Collections.singletonList(realTopic));
+            }
         } else {
             consumer.assign(Collections.singletonList(new TopicPartition(realTopic, realPartition)));
         }
         log.info("Subscribed {}", topicPartition);
         try {
             while (normal.get()) {
-                long interval = reset? 15 : 30;
+                // use a short interval in at-least-once mode so that commits and resume are timely
+                long interval = reset? 15 : (atLeastOnce? 1 : 30);
                 ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofSeconds(interval));
                 if (reset) {
                     Set<TopicPartition> p = consumer.assignment();
@@ -168,7 +208,12 @@ public class EventConsumer extends Thread {
                     for (TopicPartition tp : p) {
                         long earliest = getEarliest(tp);
                         long latest = getLatest(tp);
-                        if (offset < 0) {
+                        OffsetAndMetadata committed = atLeastOnce && !init && offset < 0? getCommitted(tp) : null;
+                        if (committed != null && committed.offset() >= earliest) {
+                            consumer.seek(tp, committed.offset());
+                            log.info("Resuming offset of {}, partition-{} at {} ({} - {})",
+                                    realTopic, tp.partition(), committed.offset(), earliest, latest);
+                        } else if (offset < 0) {
                             consumer.seek(tp, latest);
                             log.info("Setting offset of {}, partition-{} to latest ({} - {})",
                                     realTopic, tp.partition(), earliest, latest);
@@ -194,85 +239,105 @@ public class EventConsumer extends Thread {
                     continue;
                 }
                 for (ConsumerRecord<String, byte[]> record : records) {
-                    Map<String, String> originalHeaders = getSimpleHeaders(record.headers());
-                    String dataType = originalHeaders.getOrDefault(EventProducer.DATA_TYPE, EventProducer.BYTES_DATA);
-                    boolean embedEvent = originalHeaders.containsKey(EventProducer.EMBED_EVENT);
-                    String recipient = originalHeaders.get(EventProducer.RECIPIENT);
-                    if (recipient != null && !recipient.contains(MONITOR) && !recipient.equals(origin)) {
-                        /*
-                         * this is an error case when two consumers listen to the same partition
-                         * or when READ offset is incorrect
-                         */
-                        log.error("Skipping record {} because it belongs to {}", record.offset(), recipient);
-                        if (++invalidEvents > INVALID_EVENT_THRESHOLD) {
-                            throw new IOException("Too many outdated events - likely to be a READ offset error");
-                        }
-                        continue;
-                    }
-                    byte[] data = record.value();
-                    EventEnvelope message = new EventEnvelope();
-                    if (embedEvent) {
-                        // payload is an embedded event
-                        try {
-                            message.load(data);
-                            message.setEndOfRoute();
-                        } catch (Exception e) {
-                            log.error("Unable to decode incoming event for {} - {}", topicPartition, e.getMessage());
-                            continue;
-                        }
-                        try {
-                            String to = message.getTo();
-                            if (to != null) {
-                                // remove special routing qualifier for presence monitor events
-                                if (to.contains(TO_MONITOR)) {
-                                    message.setTo(to.substring(0, to.indexOf(TO_MONITOR)));
-                                }
-                                po.send(message);
-                            } else {
-                                MultipartPayload.getInstance().incoming(message);
+                    // in at-least-once mode, records that are not dispatched are acknowledged immediately
+                    OffsetTracker tracker = atLeastOnce? track(record) : null;
+                    boolean deferred = false;
+                    try {
+                        Map<String, String> originalHeaders = getSimpleHeaders(record.headers());
+                        String dataType = originalHeaders.getOrDefault(EventProducer.DATA_TYPE, EventProducer.BYTES_DATA);
+                        boolean embedEvent = originalHeaders.containsKey(EventProducer.EMBED_EVENT);
+                        String recipient = originalHeaders.get(EventProducer.RECIPIENT);
+                        if (recipient != null && !recipient.contains(MONITOR) && !recipient.equals(origin)) {
+                            /*
+                             * this is an error case when two consumers listen to the same partition
+                             * or when READ offset is incorrect
+                             */
+                            log.error("Skipping record {} because it belongs to {}", record.offset(), recipient);
+                            if (++invalidEvents > INVALID_EVENT_THRESHOLD) {
+                                throw new IOException("Too many outdated events - likely to be a READ offset error");
                             }
-                        } catch (Exception e) {
-                            log.error("Unable to process incoming event for {} - {} {}",
-                                    topicPartition, e.getClass().getSimpleName(), e.getMessage());
+                            continue;
                         }
-                    } else {
-                        if (offset == INITIALIZE) {
-                            if (INIT.equals(originalHeaders.get(TYPE)) &&
-                                    INIT_TOKEN.equals(originalHeaders.get(TOKEN))) {
-                                offset = -1;
-                                if (skipped > 0) {
-                                    log.info("Skipped {} outdated event{}", skipped, skipped == 1 ? "" : "s");
-                                }
-                            } else {
-                                skipped++;
+                        byte[] data = record.value();
+                        EventEnvelope message = new EventEnvelope();
+                        if (embedEvent) {
+                            // payload is an embedded event
+                            try {
+                                message.load(data);
+                                message.setEndOfRoute();
+                            } catch (Exception e) {
+                                log.error("Unable to decode incoming event for {} - {}", topicPartition, e.getMessage());
                                 continue;
                             }
-                        }
-                        // transport the headers and payload in original form
-                        try {
-                            if (EventProducer.TEXT_DATA.equals(dataType)) {
-                                message.setHeaders(originalHeaders).setBody(util.getUTF(data));
-                            } else if (EventProducer.MAP_DATA.equals(dataType) ||
-                                    EventProducer.LIST_DATA.equals(dataType)) {
-                                message.setHeaders(originalHeaders).setBody(msgPack.unpack(data));
-                            } else {
-                                message.setHeaders(originalHeaders).setBody(data);
+                            try {
+                                String to = message.getTo();
+                                if (to != null) {
+                                    // remove special routing qualifier for presence monitor events
+                                    if (to.contains(TO_MONITOR)) {
+                                        message.setTo(to.substring(0, to.indexOf(TO_MONITOR)));
+                                    }
+                                    po.send(message);
+                                } else {
+                                    MultipartPayload.getInstance().incoming(message);
+                                }
+                            } catch (Exception e) {
+                                log.error("Unable to process incoming event for {} - {} {}",
+                                        topicPartition, e.getClass().getSimpleName(), e.getMessage());
                             }
-                            /*
-                             * Offset is only meaningful when listening to a specific partition.
-                             * This allows user application to reposition offset when required.
-                             */
-                            if (partition >= 0) {
-                                message.setHeader(OFFSET, String.valueOf(record.offset()));
+                        } else {
+                            if (offset == INITIALIZE) {
+                                if (INIT.equals(originalHeaders.get(TYPE)) &&
+                                        INIT_TOKEN.equals(originalHeaders.get(TOKEN))) {
+                                    offset = -1;
+                                    if (skipped > 0) {
+                                        log.info("Skipped {} outdated event{}", skipped, skipped == 1 ? "" : "s");
+                                    }
+                                } else {
+                                    skipped++;
+                                    continue;
+                                }
                             }
-                            po.send(message.setTo(virtualTopic));
+                            // transport the headers and payload in original form
+                            try {
+                                if (EventProducer.TEXT_DATA.equals(dataType)) {
+                                    message.setHeaders(originalHeaders).setBody(util.getUTF(data));
+                                } else if (EventProducer.MAP_DATA.equals(dataType) ||
+                                        EventProducer.LIST_DATA.equals(dataType)) {
+                                    message.setHeaders(originalHeaders).setBody(msgPack.unpack(data));
+                                } else {
+                                    message.setHeaders(originalHeaders).setBody(data);
+                                }
+                                /*
+                                 * Offset is only meaningful when listening to a specific partition.
+                                 * This allows user application to reposition offset when required.
+                                 */
+                                if (partition >= 0) {
+                                    message.setHeader(OFFSET, String.valueOf(record.offset()));
+                                }
+                                message.setTo(virtualTopic);
+                                if (tracker != null) {
+                                    dispatcher.submit(tracker, record.offset(), record.key(), message);
+                                    deferred = true;
+                                } else {
+                                    po.send(message);
+                                }
 
-                        } catch (Exception e) {
-                            log.error("Unable to process incoming event for {} - {} {}",
-                                    topicPartition, e.getClass().getSimpleName(), e.getMessage());
+                            } catch (Exception e) {
+                                log.error("Unable to process incoming event for {} - {} {}",
+                                        topicPartition, e.getClass().getSimpleName(), e.getMessage());
+                            }
+                        }
+                    } finally {
+                        if (tracker != null && !deferred) {
+                            tracker.ack(record.offset());
                         }
                     }
                 }
+                if (atLeastOnce) {
+                    commitOffsets(false);
+                    pauseStalledPartitions();
+                    applyBackPressure();
+                }
             }
         } catch (Exception e) {
             if (e instanceof WakeupException) {
@@ -283,6 +348,13 @@ public class EventConsumer extends Thread {
                 System.exit(10);
             }
         } finally {
+            if (atLeastOnce) {
+                try {
+                    commitOffsets(true);
+                } catch (Exception e) {
+                    log.warn("Unable to commit offsets for {} - {}", topicPartition, e.getMessage());
+                }
+            }
             consumer.close();
             log.info("Unsubscribed {}", topicPartition);
             String INIT_HANDLER = INIT + "." + (partition < 0 ? topic : topic + "." + partition);
@@ -305,11 +377,117 @@ public class EventConsumer extends Thread {
         return result;
     }
 
+    private OffsetTracker track(ConsumerRecord<String, byte[]> record) {
+        TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+        OffsetTracker tracker = trackers.computeIfAbsent(tp, k -> new OffsetTracker());
+        tracker.add(record.offset());
+        return tracker;
+    }
+
+    private void commitOffsets(boolean sync) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, OffsetTracker> kv: trackers.entrySet()) {
+            long next = kv.getValue().getCommittable();
+            if (next >= 0) {
+                offsets.put(kv.getKey(), new OffsetAndMetadata(next));
+            }
+        }
+        if (!offsets.isEmpty()) {
+            if (sync) {
+                consumer.commitSync(offsets);
+                setCommitted(offsets);
+            } else {
+                consumer.commitAsync(offsets, (done, e) -> {
+                    if (e == null) {
+                        setCommitted(done);
+                    } else {
+                        log.warn("Unable to commit offsets for {} - {}", realTopic, e.getMessage());
+                    }
+                });
+            }
+        }
+    }
+
+    private void setCommitted(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        for (Map.Entry<TopicPartition, OffsetAndMetadata> kv: offsets.entrySet()) {
+            OffsetTracker tracker = trackers.get(kv.getKey());
+            if (tracker != null) {
+                tracker.setCommitted(kv.getValue().offset());
+            }
+        }
+    }
+
+    private void pauseStalledPartitions() {
+        for (Map.Entry<TopicPartition, OffsetTracker> kv: trackers.entrySet()) {
+            TopicPartition tp = kv.getKey();
+            if (kv.getValue().isStalled() && stalled.add(tp)) {
+                // the partition remains paused until it is reassigned or the application restarts
+                consumer.pause(Collections.singletonList(tp));
+                log.error("Paused {}, partition-{} - offset {} will not be committed",
+                        realTopic, tp.partition(), kv.getValue().getCommittable());
+            }
+        }
+    }
+
+    private void applyBackPressure() {
+        int n = dispatcher.getInFlight();
+        if (!paused && n >= maxInFlight) {
+            consumer.pause(consumer.assignment());
+            paused = true;
+            log.info("Paused {} - {} events in flight", realTopic, n);
+        } else if (paused && n <= maxInFlight / 2) {
+            Set<TopicPartition> resumable = new HashSet<>(consumer.paused());
+            resumable.removeAll(stalled);
+            consumer.resume(resumable);
+            paused = false;
+            log.info("Resumed {} - {} events in flight", realTopic, n);
+        }
+    }
+
+    /**
+     * Records of different keys may be processed concurrently in at-least-once mode
+     *
+     * @return number of listener instances
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
     public void shutdown() {
         if (normal.get()) {
             normal.set(false);
+            if (dispatcher != null) {
+                dispatcher.stop();
+            }
             consumer.wakeup();
         }
     }
 
+    private class RebalanceHandler implements ConsumerRebalanceListener {
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            try {
+                commitOffsets(true);
+            } catch (Exception e) {
+                log.warn("Unable to commit offsets for {} - {}", realTopic, e.getMessage());
+            }
+            // records still in flight for revoked partitions will be delivered again to the new owner
+            for (TopicPartition tp: partitions) {
+                OffsetTracker tracker = trackers.remove(tp);
+                if (tracker != null && dispatcher != null) {
+                    dispatcher.purge(tracker);
+                }
+                stalled.remove(tp);
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            if (paused) {
+                consumer.pause(partitions);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,95 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.kafka.services;
+
+import java.util.TreeSet;
+
+/**
+ * Tracks in-flight records of a single topic partition.
+ * <p>
+ * A record is added when it is dispatched and acknowledged when the target function
+ * has processed it. The committable offset is the lowest offset that has not been
+ * acknowledged so that a restart resumes from the first unprocessed record.
+ */
+public class OffsetTracker {
+
+    private final TreeSet<Long> pending = new TreeSet<>();
+    private long highest = -1;
+    private long committed = -1;
+    private boolean stalled = false, revoked = false;
+
+    public synchronized void add(long offset) {
+        pending.add(offset);
+        if (offset > highest) {
+            highest = offset;
+        }
+    }
+
+    public synchronized void ack(long offset) {
+        pending.remove(offset);
+    }
+
+    /**
+     * Mark the partition as stalled when a record cannot be delivered.
+     * The consumer pauses a stalled partition so that its offset is not committed beyond the record.
+     */
+    public synchronized void stall() {
+        stalled = true;
+    }
+
+    public synchronized boolean isStalled() {
+        return stalled;
+    }
+
+    /**
+     * Mark the partition as revoked so that records still in flight are dropped
+     * instead of being retried or held back.
+     */
+    public synchronized void revoke() {
+        revoked = true;
+    }
+
+    public synchronized boolean isRevoked() {
+        return revoked;
+    }
+
+    public synchronized int inFlight() {
+        return pending.size();
+    }
+
+    /**
+     * Get the next offset to commit
+     *
+     * @return offset or -1 if there is nothing new to commit
+     */
+    public synchronized long getCommittable() {
+        if (highest < 0) {
+            return -1;
+        }
+        long next = pending.isEmpty()? highest + 1 : pending.first();
+        return next > committed? next : -1;
+    }
+
+    public synchronized void setCommitted(long offset) {
+        if (offset > committed) {
+            committed = offset;
+        }
+    }
+
+}
@@ -315,7 +315,7 @@ public class PubSubManager implements PubSubProvider {
             }
             EventConsumer consumer = new EventConsumer(getProperties(), topic, partition, parameters);
             consumer.start();
-            Platform.getInstance().registerPrivate(topicPartition.toLowerCase(), listener, 1);
+            Platform.getInstance().registerPrivate(topicPartition.toLowerCase(), listener, consumer.getConcurrency());
             subscribers.put(topicPartition, consumer);
         } else {
             throw new IOException("Check parameters: clientId, groupId and optional offset pointer");
@@ -0,0 +1,289 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.kafka.services;
+
+import org.platformlambda.cloud.EventProducer;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.system.Platform;
+import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.core.system.PubSub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers records of a topic to its listener function in at-least-once mode.
+ * <p>
+ * Records of the same key are delivered one at a time in offset order.
+ * Records of different keys are delivered concurrently.
+ * <p>
+ * Timeout and server errors (status 5xx) are retried. A record that still fails after all attempts
+ * is acknowledged only when it has been forwarded to the dead letter topic. Otherwise, the tracker is
+ * stalled so that the consumer pauses the partition and leaves the offset uncommitted.
+ * <p>
+ * Other errors are not retried because the same record would fail again. Such a record is forwarded
+ * to the dead letter topic when one is configured. Otherwise, it is logged and acknowledged.
+ */
+public class RecordDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(RecordDispatcher.class);
+
+    public static final String DEAD_LETTER_SOURCE = "x-dead-letter-source";
+    public static final String DEAD_LETTER_OFFSET = "x-dead-letter-offset";
+    public static final String DEAD_LETTER_ERROR = "x-dead-letter-error";
+    private final String topic;
+    private final long ackTimeout;
+    private final int maxAttempts;
+    private final long retryDelay;
+    private final String deadLetterTopic;
+    private final Map<String, Deque<PendingRecord>> keyQueues = new HashMap<>();
+    private final Set<PendingRecord> stalledRecords = new HashSet<>();
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicBoolean normal = new AtomicBoolean(true);
+
+    /**
+     * Create a dispatcher for a topic
+     *
+     * @param topic for logging and dead letter headers
+     * @param ackTimeout in milliseconds for each delivery attempt
+     * @param maxAttempts before a record is forwarded to the dead letter topic
+     * @param retryDelay in milliseconds between attempts
+     * @param deadLetterTopic or null to pause the partition when a record cannot be delivered
+     */
+    public RecordDispatcher(String topic, long ackTimeout, int maxAttempts, long retryDelay, String deadLetterTopic) {
+        this.topic = topic;
+        this.ackTimeout = ackTimeout;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelay = retryDelay;
+        this.deadLetterTopic = deadLetterTopic == null || deadLetterTopic.isEmpty()? null : deadLetterTopic;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public void stop() {
+        normal.set(false);
+    }
+
+    /**
+     * Drop the records of a revoked partition
+     * <p>
+     * Waiting and stalled records are released so that records of the same key can be delivered
+     * when the partition is assigned again. Records in the middle of a delivery attempt are released
+     * when the attempt finishes.
+     *
+     * @param tracker of the revoked partition
+     */
+    public void purge(OffsetTracker tracker) {
+        tracker.revoke();
+        List<PendingRecord> released = new ArrayList<>();
+        synchronized (keyQueues) {
+            for (Deque<PendingRecord> queue: keyQueues.values()) {
+                Iterator<PendingRecord> records = queue.iterator();
+                while (records.hasNext()) {
+                    if (records.next().tracker == tracker) {
+                        records.remove();
+                        inFlight.decrementAndGet();
+                    }
+                }
+            }
+            Iterator<PendingRecord> records = stalledRecords.iterator();
+            while (records.hasNext()) {
+                PendingRecord pending = records.next();
+                if (pending.tracker == tracker) {
+                    records.remove();
+                    released.add(pending);
+                }
+            }
+        }
+        for (PendingRecord pending: released) {
+            release(pending);
+        }
+    }
+
+    /**
+     * Submit a record for delivery
+     *
+     * @param tracker of the partition
+     * @param offset of the record
+     * @param key of the record or null
+     * @param event to the listener function
+     */
+    public void submit(OffsetTracker tracker, long offset, String key, EventEnvelope event) {
+        PendingRecord pending = new PendingRecord(tracker, offset, key, event);
+        inFlight.incrementAndGet();
+        if (key != null) {
+            synchronized (keyQueues) {
+                Deque<PendingRecord> queue = keyQueues.get(key);
+                if (queue != null) {
+                    queue.add(pending);
+                    return;
+                }
+                keyQueues.put(key, new ArrayDeque<>());
+            }
+        }
+        dispatch(pending);
+    }
+
+    private void dispatch(PendingRecord pending) {
+        if (pending.tracker.isRevoked()) {
+            // the new owner of the partition will receive the record again
+            release(pending);
+            return;
+        }
+        /*
+         * The post office sets the deadline and reply address of a request.
+         * Therefore, each attempt sends a fresh copy of the original event.
+         */
+        EventEnvelope event = pending.event.copy();
+        try {
+            PostOffice.getInstance().asyncRequest(event, ackTimeout)
+                    .onSuccess(response -> {
+                        if (!response.hasError()) {
+                            complete(pending);
+                        } else if (isRetryable(response.getStatus())) {
+                            retry(pending, response.getError());
+                        } else {
+                            reject(pending, response.getError());
+                        }
+                    })
+                    .onFailure(e -> retry(pending, e.getMessage()));
+        } catch (IOException e) {
+            retry(pending, e.getMessage());
+        }
+    }
+
+    private boolean isRetryable(int status) {
+        return status == 408 || status >= 500;
+    }
+
+    private void reject(PendingRecord pending, String error) {
+        pending.attempts++;
+        if (pending.tracker.isRevoked()) {
+            release(pending);
+        } else if (deadLetterTopic != null) {
+            deadLetter(pending, error);
+        } else {
+            log.error("Offset {} of {} dropped - {}", pending.offset, topic, error);
+            complete(pending);
+        }
+    }
+
+    private void retry(PendingRecord pending, String error) {
+        if (!normal.get() || pending.tracker.isRevoked()) {
+            // leave it uncommitted so that it will be delivered again after restart or to the new owner
+            release(pending);
+            return;
+        }
+        if (++pending.attempts < maxAttempts) {
+            log.warn("Retry offset {} of {} - {}", pending.offset, topic, error);
+            Platform.getInstance().getVertx().setTimer(retryDelay, t -> dispatch(pending));
+        } else if (deadLetterTopic != null) {
+            deadLetter(pending, error);
+        } else {
+            stall(pending, error);
+        }
+    }
+
+    private void deadLetter(PendingRecord pending, String error) {
+        Platform.getInstance().getVertx().<Boolean>executeBlocking(promise -> {
+            // publishing to a topic is a blocking operation
+            Map<String, String> headers = new HashMap<>(pending.event.getHeaders());
+            headers.remove(EventProducer.DATA_TYPE);
+            headers.put(DEAD_LETTER_SOURCE, topic);
+            headers.put(DEAD_LETTER_OFFSET, String.valueOf(pending.offset));
+            headers.put(DEAD_LETTER_ERROR, String.valueOf(error));
+            try {
+                PubSub.getInstance().publish(deadLetterTopic, headers, pending.event.getBody());
+                promise.complete(true);
+            } catch (Exception e) {
+                promise.fail(e);
+            }
+        }, false, result -> {
+            if (result.succeeded()) {
+                log.warn("Offset {} of {} forwarded to {} after {} attempts - {}",
+                        pending.offset, topic, deadLetterTopic, pending.attempts, error);
+                complete(pending);
+            } else {
+                stall(pending, error + ", dead letter topic " + deadLetterTopic + " - " +
+                        result.cause().getMessage());
+            }
+        });
+    }
+
+    private void stall(PendingRecord pending, String error) {
+        // the record stays in flight and holds back records of the same key until the partition is revoked
+        log.error("Unable to deliver offset {} of {} after {} attempts - {}",
+                pending.offset, topic, pending.attempts, error);
+        boolean revoked;
+        synchronized (keyQueues) {
+            revoked = pending.tracker.isRevoked();
+            if (!revoked) {
+                stalledRecords.add(pending);
+            }
+        }
+        if (revoked) {
+            release(pending);
+        } else {
+            pending.tracker.stall();
+        }
+    }
+
+    private void complete(PendingRecord pending) {
+        pending.tracker.ack(pending.offset);
+        release(pending);
+    }
+
+    private void release(PendingRecord pending) {
+        inFlight.decrementAndGet();
+        if (pending.key != null) {
+            PendingRecord next;
+            synchronized (keyQueues) {
+                Deque<PendingRecord> queue = keyQueues.get(pending.key);
+                next = queue == null? null : queue.poll();
+                if (next == null) {
+                    keyQueues.remove(pending.key);
+                }
+            }
+            if (next != null) {
+                dispatch(next);
+            }
+        }
+    }
+
+    private static class PendingRecord {
+        private final OffsetTracker tracker;
+        private final long offset;
+        private final String key;
+        private final EventEnvelope event;
+        private int attempts = 0;
+
+        private PendingRecord(OffsetTracker tracker, long offset, String key, EventEnvelope event) {
+            this.tracker = tracker;
+            this.offset = offset;
+            this.key = key;
+            this.event = event;
+        }
+    }
+
+}
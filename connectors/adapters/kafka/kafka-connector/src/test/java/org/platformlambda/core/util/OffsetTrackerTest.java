@@ -0,0 +1,52 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.kafka.services.OffsetTracker;
+
+public class OffsetTrackerTest {
+
+    @Test
+    public void commitAfterProcessing() {
+        OffsetTracker tracker = new OffsetTracker();
+        Assert.assertEquals(-1, tracker.getCommittable());
+        tracker.add(10);
+        tracker.add(11);
+        tracker.add(12);
+        Assert.assertEquals(3, tracker.inFlight());
+        // nothing is processed yet so a restart must resume from the first record
+        Assert.assertEquals(10, tracker.getCommittable());
+        // out-of-order completion must not advance beyond the oldest unprocessed record
+        tracker.ack(12);
+        tracker.ack(11);
+        Assert.assertEquals(10, tracker.getCommittable());
+        tracker.ack(10);
+        Assert.assertEquals(0, tracker.inFlight());
+        Assert.assertEquals(13, tracker.getCommittable());
+        tracker.setCommitted(13);
+        Assert.assertEquals(-1, tracker.getCommittable());
+        tracker.add(13);
+        Assert.assertEquals(-1, tracker.getCommittable());
+        tracker.ack(13);
+        Assert.assertEquals(14, tracker.getCommittable());
+    }
+
+}
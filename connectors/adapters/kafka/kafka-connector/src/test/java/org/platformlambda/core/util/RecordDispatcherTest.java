@@ -0,0 +1,166 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.exception.AppException;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.models.LambdaFunction;
+import org.platformlambda.core.system.Platform;
+import org.platformlambda.kafka.services.OffsetTracker;
+import org.platformlambda.kafka.services.RecordDispatcher;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RecordDispatcherTest {
+
+    private static final long RETRY_DELAY = 100;
+
+    @Test
+    public void retryUntilSuccess() throws IOException, InterruptedException {
+        String route = "flaky.listener";
+        AtomicInteger attempts = new AtomicInteger(0);
+        LambdaFunction f = (headers, body, instance) -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new AppException(503, "not ready");
+            }
+            return true;
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(route, f, 1);
+        try {
+            OffsetTracker tracker = new OffsetTracker();
+            tracker.add(20);
+            RecordDispatcher dispatcher = new RecordDispatcher(route, 5000, 3, RETRY_DELAY, null);
+            dispatcher.submit(tracker, 20, "k1", new EventEnvelope().setTo(route).setBody("hello"));
+            waitFor(tracker, 21);
+            Assert.assertEquals(3, attempts.get());
+            Assert.assertEquals(21, tracker.getCommittable());
+            Assert.assertEquals(0, dispatcher.getInFlight());
+            Assert.assertFalse(tracker.isStalled());
+        } finally {
+            platform.release(route);
+        }
+    }
+
+    @Test
+    public void undeliveredRecordIsNotCommitted() throws IOException, InterruptedException {
+        String route = "broken.listener";
+        AtomicInteger attempts = new AtomicInteger(0);
+        LambdaFunction f = (headers, body, instance) -> {
+            attempts.incrementAndGet();
+            throw new AppException(500, "always fails");
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(route, f, 1);
+        try {
+            OffsetTracker tracker = new OffsetTracker();
+            tracker.add(30);
+            tracker.add(31);
+            RecordDispatcher dispatcher = new RecordDispatcher(route, 5000, 3, RETRY_DELAY, null);
+            dispatcher.submit(tracker, 30, "k1", new EventEnvelope().setTo(route).setBody("first"));
+            // the next record of the same key must be held back
+            dispatcher.submit(tracker, 31, "k1", new EventEnvelope().setTo(route).setBody("second"));
+            for (int i = 0; i < 50 && !tracker.isStalled(); i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertTrue(tracker.isStalled());
+            Assert.assertEquals(3, attempts.get());
+            Assert.assertEquals(30, tracker.getCommittable());
+            Assert.assertEquals(2, dispatcher.getInFlight());
+        } finally {
+            platform.release(route);
+        }
+    }
+
+    @Test
+    public void nonRetryableErrorIsSkipped() throws IOException, InterruptedException {
+        String route = "strict.listener";
+        AtomicInteger attempts = new AtomicInteger(0);
+        LambdaFunction f = (headers, body, instance) -> {
+            attempts.incrementAndGet();
+            throw new IllegalArgumentException("bad record");
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(route, f, 1);
+        try {
+            OffsetTracker tracker = new OffsetTracker();
+            tracker.add(40);
+            RecordDispatcher dispatcher = new RecordDispatcher(route, 5000, 3, RETRY_DELAY, null);
+            dispatcher.submit(tracker, 40, "k1", new EventEnvelope().setTo(route).setBody("poison"));
+            waitFor(tracker, 41);
+            // a deterministic failure is attempted once and does not stall the partition
+            Assert.assertEquals(1, attempts.get());
+            Assert.assertEquals(41, tracker.getCommittable());
+            Assert.assertEquals(0, dispatcher.getInFlight());
+            Assert.assertFalse(tracker.isStalled());
+        } finally {
+            platform.release(route);
+        }
+    }
+
+    @Test
+    public void revokedPartitionIsPurged() throws IOException, InterruptedException {
+        String route = "unavailable.listener";
+        AtomicInteger attempts = new AtomicInteger(0);
+        LambdaFunction f = (headers, body, instance) -> {
+            if (attempts.incrementAndGet() <= 3) {
+                throw new AppException(503, "unavailable");
+            }
+            return true;
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(route, f, 1);
+        try {
+            OffsetTracker tracker = new OffsetTracker();
+            tracker.add(50);
+            tracker.add(51);
+            RecordDispatcher dispatcher = new RecordDispatcher(route, 5000, 3, RETRY_DELAY, null);
+            dispatcher.submit(tracker, 50, "k1", new EventEnvelope().setTo(route).setBody("first"));
+            dispatcher.submit(tracker, 51, "k1", new EventEnvelope().setTo(route).setBody("second"));
+            for (int i = 0; i < 50 && !tracker.isStalled(); i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertTrue(tracker.isStalled());
+            Assert.assertEquals(2, dispatcher.getInFlight());
+            // revoking the partition releases the stalled and waiting records
+            dispatcher.purge(tracker);
+            Assert.assertEquals(0, dispatcher.getInFlight());
+            // the redelivered record of the same key is not held back when the partition is assigned again
+            OffsetTracker reassigned = new OffsetTracker();
+            reassigned.add(50);
+            dispatcher.submit(reassigned, 50, "k1", new EventEnvelope().setTo(route).setBody("first"));
+            waitFor(reassigned, 51);
+            Assert.assertEquals(51, reassigned.getCommittable());
+            Assert.assertEquals(0, dispatcher.getInFlight());
+            Assert.assertEquals(50, tracker.getCommittable());
+        } finally {
+            platform.release(route);
+        }
+    }
+
+    private void waitFor(OffsetTracker tracker, long offset) throws InterruptedException {
+        for (int i = 0; i < 50 && tracker.getCommittable() != offset; i++) {
+            Thread.sleep(100);
+        }
+    }
+
+}
@@ -45,7 +45,9 @@ public class EventProducer implements LambdaFunction {
     public static final String BYTES_DATA = "bytes";
     public static final String MAP_DATA = "map";
     public static final String LIST_DATA = "list";
-    private static final SimpleCache cache = SimpleCache.createCache("sticky.destinations", 60000);
+    private static final long MAX_STICKY_DESTINATIONS = 50000;
+    private static final SimpleCache cache = SimpleCache.createCache("sticky.destinations", 60000,
+                                                                        MAX_STICKY_DESTINATIONS, 0);
     private static final String ID = MultipartPayload.ID;
     private static final String COUNT = MultipartPayload.COUNT;
     private static final String TOTAL = MultipartPayload.TOTAL;
@@ -215,7 +215,9 @@ public class PresenceConnector implements LambdaFunction {
                 if (alive && active) {
                     po.send(ServiceDiscovery.SERVICE_REGISTRY + APP_GROUP + closedUserGroup,
                             new Kv(TYPE, ALIVE), new Kv(TOPIC, topicPartition),
-                            new Kv(ORIGIN, platform.getOrigin()));
+                            new Kv(ORIGIN, platform.getOrigin()),
+                            new Kv(ServiceRegistry.ROUTE_SEQ, ServiceRegistry.getRouteSeq()),
+                            new Kv(ServiceRegistry.DIGEST, ServiceRegistry.getDigest(platform.getOrigin())));
                 }
 
             } catch (IOException e) {
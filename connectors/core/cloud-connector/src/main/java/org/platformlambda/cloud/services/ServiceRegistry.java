@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @ZeroTracing
 public class ServiceRegistry implements LambdaFunction {
@@ -41,6 +42,8 @@ public class ServiceRegistry implements LambdaFunction {
 
     public static final String APP_GROUP = "@monitor-";
     public static final String CLOUD_MANAGER = "cloud.manager";
+    public static final String ROUTE_SEQ = "route_seq";
+    public static final String DIGEST = "digest";
     private static final String PERSONALITY = "personality";
     private static final String ALIVE = "keep-alive";
     private static final String TYPE = ServiceDiscovery.TYPE;
@@ -51,6 +54,7 @@ public class ServiceRegistry implements LambdaFunction {
     private static final String UNREGISTER = ServiceDiscovery.UNREGISTER;
     private static final String ADD = ServiceDiscovery.ADD;
     private static final String EXCHANGE = "exchange";
+    private static final String SYNC = "sync";
     private static final String VERSION = "version";
     private static final String SUBSCRIBE_LIFE_CYCLE = "subscribe_life_cycle";
     private static final String UNSUBSCRIBE_LIFE_CYCLE = "unsubscribe_life_cycle";
@@ -67,6 +71,8 @@ public class ServiceRegistry implements LambdaFunction {
     private static final String NOW = "now";
     private static final String MONITOR = "monitor-";
     private static final long EXPIRY = 60 * 1000;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
 
     // static because this is a shared lambda function
     private final boolean presenceMonitor;
@@ -75,13 +81,20 @@ public class ServiceRegistry implements LambdaFunction {
      * cloudRoutes: route_name -> (origin, personality)
      * cloudOrigins: origin -> last seen
      * originTopic: origin -> topic and partition
+     * originSeq: origin -> sequence number of the last routing table change applied
+     * originDigest: origin -> order independent hash of its routes
      */
     private static final PostOffice po = PostOffice.getInstance();
     private static final ConcurrentMap<String, ConcurrentMap<String, String>> cloudRoutes = po.getCloudRoutes();
     private static final ConcurrentMap<String, String> cloudOrigins = po.getCloudOrigins();
     private static final ConcurrentMap<String, String> originTopic = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Long> originSeq = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Long> originDigest = new ConcurrentHashMap<>();
+    // start from current time so that a restarted application instance with the same origin moves forward
+    private static final AtomicLong routeSeq = new AtomicLong(System.currentTimeMillis());
     private static final ConcurrentMap<String, Boolean> lifeCycleSubscribers = new ConcurrentHashMap<>();
     private static final ManagedCache cache = ManagedCache.createCache("member.life.cycle.events", 5000);
+    private static final ManagedCache syncRequests = ManagedCache.createCache("route.sync.requests", 10000);
 
     private static String monitorTopic;
     private long lastBroadcastAdd = 0;
@@ -137,6 +150,27 @@ public class ServiceRegistry implements LambdaFunction {
         }
     }
 
+    /**
+     * Sequence number of the last change to the routing table of this application instance
+     *
+     * @return sequence number
+     */
+    public static long getRouteSeq() {
+        return routeSeq.get();
+    }
+
+    /**
+     * Compact digest of the routes of an application instance.
+     * Peers compare it with the digest in the keep-alive message to detect drift.
+     *
+     * @param origin of an application instance
+     * @return digest in hex
+     */
+    public static String getDigest(String origin) {
+        Long digest = originDigest.get(origin);
+        return Long.toHexString(digest == null? 0 : digest);
+    }
+
     public static String getTopic(String dest) {
         return dest.startsWith(MONITOR)? monitorTopic+"-"+dest.substring(MONITOR.length()) : originTopic.get(dest);
     }
@@ -178,7 +212,7 @@ public class ServiceRegistry implements LambdaFunction {
 
                 } else {
                     // send routing table of this node to the newly joined node
-                    sendMyRoutes(true);
+                    sendMyRoutes(origin, true);
                 }
             }
         }
@@ -193,7 +227,7 @@ public class ServiceRegistry implements LambdaFunction {
                     connector.setActive(myOrigin, user, RESUME.equals(type));
                     if (NOW.equals(headers.get(WHEN))) {
                         if (RESUME.equals(type)) {
-                            sendMyRoutes(true);
+                            sendMyRoutes(null, true);
                             log.info("Restore {} by {}", myOrigin, user);
                         } else {
                             po.send(ServiceDiscovery.SERVICE_REGISTRY + APP_GROUP + closedUserGroup,
@@ -221,6 +255,10 @@ public class ServiceRegistry implements LambdaFunction {
                         log.info("Peer {} joins", origin);
                         po.send(ServiceDiscovery.SERVICE_REGISTRY, new Kv(TYPE, JOIN),
                                 new Kv(ORIGIN, origin), new Kv(TOPIC, topic));
+                    } else if (headers.containsKey(DIGEST) && !getDigest(origin).equals(headers.get(DIGEST))) {
+                        requestSync(origin);
+                    } else if (headers.containsKey(ROUTE_SEQ)) {
+                        originSeq.put(origin, Utility.getInstance().str2long(headers.get(ROUTE_SEQ)));
                     }
                 }
             }
@@ -249,6 +287,7 @@ public class ServiceRegistry implements LambdaFunction {
                 } else {
                     log.info("Peer {} left", origin);
                     removeRoutesFromOrigin(origin);
+                    syncRequests.remove(origin);
                     notifyLifeCycleSubscribers(new Kv(TYPE, LEAVE), new Kv(ORIGIN, origin));
                     cache.remove(origin);
                 }
@@ -262,19 +301,23 @@ public class ServiceRegistry implements LambdaFunction {
                     // add a single route
                     String route = headers.get(ROUTE);
                     String personality = headers.get(PERSONALITY);
-                    // add to routing table
-                    addRoute(origin, route, personality);
-                    if (origin.equals(myOrigin) && !headers.containsKey(IS_FINAL)) {
-                        // broadcast to peers
-                        EventEnvelope request = new EventEnvelope();
-                        request.setTo(ServiceDiscovery.SERVICE_REGISTRY + APP_GROUP + closedUserGroup)
-                                .setHeaders(headers).setHeader(IS_FINAL, true);
-                        po.send(request);
+                    if (origin.equals(myOrigin)) {
+                        // add to routing table
+                        addRoute(origin, route, personality);
+                        if (!headers.containsKey(IS_FINAL)) {
+                            // broadcast the change to peers
+                            EventEnvelope request = new EventEnvelope();
+                            request.setTo(ServiceDiscovery.SERVICE_REGISTRY + APP_GROUP + closedUserGroup)
+                                    .setHeaders(headers).setHeader(IS_FINAL, true)
+                                    .setHeader(ROUTE_SEQ, routeSeq.incrementAndGet());
+                            po.send(request);
+                        }
+                    } else if (isNextChange(origin, headers.get(ROUTE_SEQ))) {
+                        addRoute(origin, route, personality);
                     }
 
                 } else if (body instanceof Map) {
                     if (!origin.equals(myOrigin)) {
-                        // add a list of routes
                         Map<String, String> routeMap = (Map<String, String>) body;
                         int count = routeMap.size();
                         int n = 0;
@@ -282,6 +325,17 @@ public class ServiceRegistry implements LambdaFunction {
                             String personality = routeMap.get(route);
                             if (addRoute(origin, route, personality)) n++;
                         }
+                        if (headers.containsKey(ROUTE_SEQ)) {
+                            // this is a complete routing table so any route not in the list is stale
+                            List<String> routes = new ArrayList<>(cloudRoutes.keySet());
+                            for (String r: routes) {
+                                if (!routeMap.containsKey(r)) {
+                                    removeRoute(origin, r);
+                                }
+                            }
+                            originSeq.put(origin, Utility.getInstance().str2long(headers.get(ROUTE_SEQ)));
+                            syncRequests.remove(origin);
+                        }
                         if (n > 0) {
                             log.info("Loaded {} route{} from {}", count, count == 1 ? "" : "s", origin);
                         }
@@ -296,7 +350,7 @@ public class ServiceRegistry implements LambdaFunction {
                             }
                         }
                         if (headers.containsKey(EXCHANGE)) {
-                            sendMyRoutes(false);
+                            sendMyRoutes(origin, false);
                         }
                     }
                 }
@@ -305,27 +359,85 @@ public class ServiceRegistry implements LambdaFunction {
             if (UNREGISTER.equals(type) && headers.containsKey(ROUTE) && headers.containsKey(ORIGIN)) {
                 String route = headers.get(ROUTE);
                 String origin = headers.get(ORIGIN);
-                // remove from routing table
-                removeRoute(origin, route);
-                if (origin.equals(myOrigin) && !headers.containsKey(IS_FINAL)) {
-                    // broadcast to peers
-                    EventEnvelope request = new EventEnvelope();
-                    request.setTo(ServiceDiscovery.SERVICE_REGISTRY + APP_GROUP + closedUserGroup)
-                            .setHeaders(headers).setHeader(IS_FINAL, true);
-                    po.send(request);
+                if (origin.equals(myOrigin)) {
+                    // remove from routing table
+                    removeRoute(origin, route);
+                    if (!headers.containsKey(IS_FINAL)) {
+                        // broadcast the change to peers
+                        EventEnvelope request = new EventEnvelope();
+                        request.setTo(ServiceDiscovery.SERVICE_REGISTRY + APP_GROUP + closedUserGroup)
+                                .setHeaders(headers).setHeader(IS_FINAL, true)
+                                .setHeader(ROUTE_SEQ, routeSeq.incrementAndGet());
+                        po.send(request);
+                    }
+                } else if (isNextChange(origin, headers.get(ROUTE_SEQ))) {
+                    removeRoute(origin, route);
+                }
+            }
+            // a peer detected that its copy of my routing table has drifted
+            if (SYNC.equals(type) && headers.containsKey(ORIGIN)) {
+                String origin = headers.get(ORIGIN);
+                if (!origin.equals(myOrigin)) {
+                    sendMyRoutes(origin, false);
                 }
             }
         }
         return true;
     }
 
-    private void sendMyRoutes(boolean exchange) throws IOException {
-        long now = System.currentTimeMillis();
-        if (!exchange && now - lastBroadcastAdd < 100) {
-            log.debug("Duplicated broadcast add ignored");
-            return;
+    /**
+     * Check the sequence number of a routing table change from a peer
+     *
+     * @param origin of the peer
+     * @param seq of the change or null if the peer does not support it
+     * @return true if the change should be applied
+     * @throws IOException in case of routing error
+     */
+    private boolean isNextChange(String origin, String seq) throws IOException {
+        if (seq == null) {
+            return true;
+        }
+        long n = Utility.getInstance().str2long(seq);
+        Long last = originSeq.get(origin);
+        if (last != null) {
+            if (n <= last) {
+                // the change is already included in the last complete routing table
+                return false;
+            }
+            if (n > last + 1) {
+                log.warn("Missing routing table changes from {} ({} -> {})", origin, last, n);
+                requestSync(origin);
+            }
+        }
+        originSeq.put(origin, n);
+        return true;
+    }
+
+    private void requestSync(String origin) throws IOException {
+        if (!syncRequests.exists(origin)) {
+            syncRequests.put(origin, true);
+            log.info("Request routing table from {}", origin);
+            po.send(ServiceDiscovery.SERVICE_REGISTRY + "@" + origin,
+                    new Kv(TYPE, SYNC), new Kv(ORIGIN, Platform.getInstance().getOrigin()));
+        }
+    }
+
+    /**
+     * Send routing table of this application instance
+     *
+     * @param target origin of a peer or null to broadcast to all peers
+     * @param exchange is true if the peer should send its routing table in return
+     * @throws IOException in case of routing error
+     */
+    private void sendMyRoutes(String target, boolean exchange) throws IOException {
+        if (target == null) {
+            long now = System.currentTimeMillis();
+            if (now - lastBroadcastAdd < 100) {
+                log.debug("Duplicated broadcast add ignored");
+                return;
+            }
+            lastBroadcastAdd = now;
         }
-        lastBroadcastAdd = now;
         Platform platform = Platform.getInstance();
         String myOrigin = platform.getOrigin();
         Map<String, String> routeMap = new HashMap<>();
@@ -336,9 +448,11 @@ public class ServiceRegistry implements LambdaFunction {
             }
         }
         EventEnvelope request = new EventEnvelope()
-                .setTo(ServiceDiscovery.SERVICE_REGISTRY + APP_GROUP + closedUserGroup)
+                .setTo(ServiceDiscovery.SERVICE_REGISTRY +
+                        (target == null? APP_GROUP + closedUserGroup : "@" + target))
                 .setHeader(TOPIC, PresenceConnector.getInstance().getTopic())
                 .setHeader(NAME, platform.getName())
+                .setHeader(ROUTE_SEQ, routeSeq.get())
                 .setHeader(TYPE, ADD).setHeader(ORIGIN, myOrigin).setBody(routeMap);
         if (exchange) {
             request.setHeader(EXCHANGE, true);
@@ -355,7 +469,9 @@ public class ServiceRegistry implements LambdaFunction {
             return false;
         } else {
             originMap.put(origin, personality);
+            originDigest.merge(origin, hash(route), (a, b) -> a ^ b);
             cloudOrigins.put(origin, Utility.getInstance().date2str(new Date(), true));
+            PostOffice.invalidateRoutes();
             log.info("{} ({}.{}) registered", route, personality, origin);
             return true;
         }
@@ -365,8 +481,8 @@ public class ServiceRegistry implements LambdaFunction {
         boolean deleted = false;
         if (cloudRoutes.containsKey(route)) {
             ConcurrentMap<String, String> originMap = cloudRoutes.get(route);
-            if (originMap.containsKey(origin)) {
-                originMap.remove(origin);
+            if (originMap.remove(origin) != null) {
+                originDigest.merge(origin, hash(route), (a, b) -> a ^ b);
                 deleted = true;
             }
             if (originMap.isEmpty()) {
@@ -374,6 +490,7 @@ public class ServiceRegistry implements LambdaFunction {
             }
         }
         if (deleted) {
+            PostOffice.invalidateRoutes();
             log.info("{} {} unregistered", route, origin);
         }
     }
@@ -385,6 +502,25 @@ public class ServiceRegistry implements LambdaFunction {
         }
         cloudOrigins.remove(origin);
         originTopic.remove(origin);
+        originSeq.remove(origin);
+        originDigest.remove(origin);
+    }
+
+    /**
+     * FNV-1a hash of a route name.
+     * The digest of a routing table is the XOR of the hashes of its routes
+     * so that it can be updated incrementally and is independent of ordering.
+     *
+     * @param route name
+     * @return hash value
+     */
+    private long hash(String route) {
+        long h = FNV_OFFSET;
+        for (int i=0; i < route.length(); i++) {
+            h ^= route.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h;
     }
 
     private void registerMyRoutes() {
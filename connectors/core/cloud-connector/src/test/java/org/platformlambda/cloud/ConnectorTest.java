@@ -20,6 +20,7 @@ package org.platformlambda.cloud;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.platformlambda.cloud.services.ServiceRegistry;
 import org.platformlambda.core.exception.AppException;
 import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.Kv;
@@ -122,6 +123,46 @@ public class ConnectorTest extends TestBase {
         po.send(ServiceDiscovery.SERVICE_REGISTRY, new Kv("type", "leave"), new Kv("origin", origin));
     }
 
+    @Test
+    public void routeDeltaTest() throws TimeoutException, AppException, IOException {
+        String origin = "delta-test";
+        String other = "delta-test-2";
+        Platform.getInstance().waitForProvider("cloud.connector.health", 10);
+        PostOffice po = PostOffice.getInstance();
+        po.request(ServiceDiscovery.SERVICE_REGISTRY, 5000,
+                new Kv("type", "join"), new Kv("origin", origin), new Kv("topic", "multiplex.0001-002"));
+        Map<String, Object> routes = new HashMap<>();
+        routes.put("delta.one", "WEB");
+        routes.put("delta.two", "WEB");
+        po.request(ServiceDiscovery.SERVICE_REGISTRY, 5000, routes, new Kv("type", "add"),
+                new Kv("origin", origin), new Kv(ServiceRegistry.ROUTE_SEQ, 100));
+        po.request(ServiceDiscovery.SERVICE_REGISTRY, 5000, new Kv("type", "add"), new Kv("origin", origin),
+                new Kv("route", "delta.three"), new Kv("personality", "WEB"), new Kv("final", true),
+                new Kv(ServiceRegistry.ROUTE_SEQ, 101));
+        Assert.assertTrue(ServiceRegistry.getInstances("delta.three").contains(origin));
+        // a change that is older than the routing table is ignored
+        po.request(ServiceDiscovery.SERVICE_REGISTRY, 5000, new Kv("type", "add"), new Kv("origin", origin),
+                new Kv("route", "delta.stale"), new Kv("personality", "WEB"), new Kv("final", true),
+                new Kv(ServiceRegistry.ROUTE_SEQ, 99));
+        Assert.assertFalse(ServiceRegistry.getInstances("delta.stale").contains(origin));
+        // a complete routing table replaces the routes of the origin
+        routes.remove("delta.two");
+        po.request(ServiceDiscovery.SERVICE_REGISTRY, 5000, routes, new Kv("type", "add"),
+                new Kv("origin", origin), new Kv(ServiceRegistry.ROUTE_SEQ, 200));
+        Assert.assertTrue(ServiceRegistry.getInstances("delta.one").contains(origin));
+        Assert.assertFalse(ServiceRegistry.getInstances("delta.two").contains(origin));
+        Assert.assertFalse(ServiceRegistry.getInstances("delta.three").contains(origin));
+        // digest is independent of the order of changes
+        po.request(ServiceDiscovery.SERVICE_REGISTRY, 5000,
+                new Kv("type", "join"), new Kv("origin", other), new Kv("topic", "multiplex.0001-003"));
+        po.request(ServiceDiscovery.SERVICE_REGISTRY, 5000, routes, new Kv("type", "add"),
+                new Kv("origin", other), new Kv(ServiceRegistry.ROUTE_SEQ, 1));
+        Assert.assertNotEquals("0", ServiceRegistry.getDigest(origin));
+        Assert.assertEquals(ServiceRegistry.getDigest(origin), ServiceRegistry.getDigest(other));
+        po.send(ServiceDiscovery.SERVICE_REGISTRY, new Kv("type", "leave"), new Kv("origin", origin));
+        po.send(ServiceDiscovery.SERVICE_REGISTRY, new Kv("type", "leave"), new Kv("origin", other));
+    }
+
     @Test(expected = IOException.class)
     public void checkTopicNameWithoutDot() throws IOException {
         String name = "hello.world";
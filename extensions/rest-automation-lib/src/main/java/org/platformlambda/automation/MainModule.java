@@ -26,7 +26,6 @@ import org.platformlambda.automation.http.HttpRelay;
 import org.platformlambda.automation.http.HttpRequestHandler;
 import org.platformlambda.automation.models.AsyncContextHolder;
 import org.platformlambda.automation.services.*;
-import org.platformlambda.automation.util.AsyncTimeoutHandler;
 import org.platformlambda.automation.ws.WsRequestHandler;
 import org.platformlambda.automation.ws.WsTokenIssuer;
 import org.platformlambda.core.annotations.MainApplication;
@@ -109,8 +108,6 @@ public class MainModule implements EntryPoint {
                         System.exit(-1);
                     });
 
-            AsyncTimeoutHandler timeoutHandler = new AsyncTimeoutHandler(contexts);
-            timeoutHandler.start();
             // start a generic notification service
             platform.register(NOTIFICATION_MANAGER, new NotificationManager(), 10);
             platform.registerPrivate(WS_TOKEN_ISSUER, new WsTokenIssuer(), 10);
@@ -44,6 +44,8 @@ public class RoutingEntry {
     private static final String UPLOAD = "upload";
     private static final String THRESHOLD = "threshold";
     private static final String TRACING = "tracing";
+    private static final String COMPRESSION = "compression";
+    private static final String COMPRESSION_THRESHOLD = "compression_threshold";
     private static final String SERVICE = "service";
     private static final String METHODS = "methods";
     private static final String URL_LABEL = "url";
@@ -413,6 +415,14 @@ public class RoutingEntry {
                     info.tracing = true;
                 }
             }
+            if (entry.containsKey(COMPRESSION)) {
+                if ("true".equalsIgnoreCase(entry.get(COMPRESSION).toString())) {
+                    info.compression = true;
+                }
+                if (entry.containsKey(COMPRESSION_THRESHOLD)) {
+                    info.compressionThreshold = Math.max(0, util.str2int(entry.get(COMPRESSION_THRESHOLD).toString()));
+                }
+            }
             List<String> methods = (List<String>) entry.get(METHODS);
             // save case insensitive version of the URL
             String url = entry.get(URL_LABEL).toString().toLowerCase();
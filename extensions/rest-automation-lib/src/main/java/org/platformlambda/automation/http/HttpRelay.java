@@ -22,6 +22,7 @@ import com.google.api.client.http.*;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import org.platformlambda.automation.services.ServiceGateway;
 import org.platformlambda.automation.util.Housekeeper;
+import org.platformlambda.automation.util.SimpleHttpUtility;
 import org.platformlambda.core.exception.AppException;
 import org.platformlambda.core.models.AsyncHttpRequest;
 import org.platformlambda.core.models.EventEnvelope;
@@ -145,8 +146,9 @@ public class HttpRelay implements LambdaFunction {
                 if (reqBody instanceof Map) {
                     boolean xml = contentType != null && contentType.startsWith(APPLICATION_XML);
                     if (xml) {
-                        String v = xmlWriter.write(reqBody);
-                        content = ByteArrayContent.fromString(contentType, v);
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        xmlWriter.write(reqBody, out);
+                        content = new ByteArrayContent(contentType, out.toByteArray());
                     } else {
                         byte[] json = SimpleMapper.getInstance().getMapper().writeValueAsBytes(reqBody);
                         content = new ByteArrayContent(contentType, json);
@@ -318,11 +320,13 @@ public class HttpRelay implements LambdaFunction {
 
                         } else if (resContentType.startsWith(APPLICATION_XML)) {
                             // response body is assumed to be XML
-                            String text = util.getUTF(b).trim();
+                            // the XML declaration must be at the start of the document
+                            int start = SimpleHttpUtility.getInstance().skipWhitespace(b);
                             try {
-                                return resEvent.setBody(text.isEmpty() ? new HashMap<>() : xmlReader.parse(text));
+                                return resEvent.setBody(start == b.length ? new HashMap<>() :
+                                                        xmlReader.parse(new ByteArrayInputStream(b, start, b.length - start)));
                             } catch (Exception e) {
-                                return resEvent.setBody(text);
+                                return resEvent.setBody(util.getUTF(b).trim());
                             }
                         } else if (resContentType.startsWith(TEXT_HTML) ||
                                 resContentType.startsWith(TEXT_PLAIN) ||
@@ -26,7 +26,11 @@ import org.platformlambda.automation.config.RoutingEntry;
 import org.platformlambda.automation.models.AssignedRoute;
 import org.platformlambda.automation.models.AsyncContextHolder;
 import org.platformlambda.automation.services.ServiceGateway;
+import org.platformlambda.automation.services.ServiceResponseHandler;
+import org.platformlambda.automation.util.AsyncTimeoutHandler;
+import org.platformlambda.automation.util.ResponseCompressor;
 import org.platformlambda.automation.util.SimpleHttpUtility;
+import org.platformlambda.core.actuator.ActuatorSnapshot;
 import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.system.Platform;
 import org.platformlambda.core.system.PostOffice;
@@ -49,6 +53,14 @@ public class HttpRequestHandler implements Handler<HttpServerRequest> {
     private static final String GET = "GET";
     private static final String POST = "POST";
     private static final String DATE = "Date";
+    private static final String ETAG = "ETag";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String CONTENT_LEN = "Content-Length";
+    private static final String APPLICATION_JSON = "application/json";
+    private static final String TEXT_HTML = "text/html";
+    private static final String APPLICATION_XML = "application/xml";
     private static final String WS_PREFIX = "/ws/";
     private static final String APP_INSTANCE = "X-App-Instance";
     private static final String USER = "user";
@@ -71,12 +83,15 @@ public class HttpRequestHandler implements Handler<HttpServerRequest> {
     private final ServiceGateway gateway;
     private final ConcurrentMap<String, AsyncContextHolder> contexts;
     private final boolean protectEndpoint;
+    private final int compressionThreshold;
 
     public HttpRequestHandler(ServiceGateway gateway) {
         AppConfigReader config = AppConfigReader.getInstance();
         this.gateway = gateway;
         this.contexts = gateway.getContexts();
         this.protectEndpoint = "true".equals(config.getProperty("protect.info.endpoints", "false"));
+        this.compressionThreshold = Math.max(0, Utility.getInstance().str2int(
+                config.getProperty("info.compression.threshold", String.valueOf(ResponseCompressor.DEFAULT_THRESHOLD))));
     }
 
     @Override
@@ -90,13 +105,15 @@ public class HttpRequestHandler implements Handler<HttpServerRequest> {
         }
         String url = request.path();
         String method = request.method().name();
-        String requestId = util.getUuid();
+        String requestId = util.getRandomId();
         AsyncContextHolder holder = new AsyncContextHolder(request);
         String acceptContent = request.getHeader(ACCEPT);
         if (acceptContent != null) {
             holder.setAccept(acceptContent);
         }
         contexts.put(requestId, holder);
+        AsyncTimeoutHandler timeoutHandler = AsyncTimeoutHandler.getInstance();
+        timeoutHandler.schedule(requestId, holder);
         if (GET.equals(method) && isAdminEndpoint(requestId, request, url)) {
             return;
         }
@@ -124,6 +141,7 @@ public class HttpRequestHandler implements Handler<HttpServerRequest> {
             error = "Method not allowed";
         } else {
             holder.setTimeout(route.info.timeoutSeconds * 1000L);
+            timeoutHandler.schedule(requestId, holder);
             if (POST.equals(method) && route.info.upload) {
                 try {
                     request.setExpectMultipart(true);
@@ -140,6 +158,12 @@ public class HttpRequestHandler implements Handler<HttpServerRequest> {
     private boolean isAdminEndpoint(String requestId, HttpServerRequest request, String path) {
         for (String[] service: ADMIN_ENDPOINTS) {
             if (path.equals(service[0])) {
+                AsyncContextHolder holder = contexts.get(requestId);
+                if (holder != null) {
+                    // admin responses are compressed like those of REST endpoints
+                    holder.setEncoding(ResponseCompressor.negotiate(request.getHeader(ACCEPT_ENCODING)),
+                                        compressionThreshold);
+                }
                 return infoService(requestId, request, service[1]);
             }
         }
@@ -157,6 +181,9 @@ public class HttpRequestHandler implements Handler<HttpServerRequest> {
             }
             origin = platform.getOrigin();
         }
+        if (origin.equals(platform.getOrigin()) && sendSnapshot(requestId, request, type)) {
+            return true;
+        }
         EventEnvelope event = new EventEnvelope().setHeader(TYPE, type);
         if (origin.equals(Platform.getInstance().getOrigin())) {
             event.setTo(PostOffice.ACTUATOR_SERVICES);
@@ -176,6 +203,38 @@ public class HttpRequestHandler implements Handler<HttpServerRequest> {
         return true;
     }
 
+    /**
+     * Send a cached actuator view as pre-serialized JSON with an ETag
+     *
+     * @param requestId of the HTTP request
+     * @param request object
+     * @param type of actuator view
+     * @return true if the view is available from a current snapshot
+     */
+    private boolean sendSnapshot(String requestId, HttpServerRequest request, String type) {
+        String accept = request.getHeader(ACCEPT);
+        if (accept != null && (accept.contains(TEXT_HTML) || accept.contains(APPLICATION_XML))) {
+            return false;
+        }
+        ActuatorSnapshot.Snapshot snapshot = ActuatorSnapshot.getInstance().get(type);
+        AsyncContextHolder holder = contexts.get(requestId);
+        if (snapshot == null || holder == null) {
+            return false;
+        }
+        ServiceGateway.closeContext(requestId);
+        HttpServerResponse response = request.response();
+        response.putHeader(ETAG, snapshot.getETag());
+        if (snapshot.getETag().equals(request.getHeader(IF_NONE_MATCH))) {
+            response.setStatusCode(304);
+            response.putHeader(CONTENT_LEN, "0");
+        } else {
+            response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
+            ServiceResponseHandler.writePayload(holder, APPLICATION_JSON, snapshot.getJson());
+        }
+        response.end();
+        return true;
+    }
+
     private void shutdown(String requestId, HttpServerRequest request) {
         PostOffice po = PostOffice.getInstance();
         SimpleHttpUtility httpUtil = SimpleHttpUtility.getInstance();
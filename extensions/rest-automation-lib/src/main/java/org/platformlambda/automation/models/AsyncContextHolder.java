@@ -25,7 +25,10 @@ public class AsyncContextHolder {
     public HttpServerRequest request;
     public long timeout;
     public long lastAccess;
-    public String url, resHeaderId, accept, method;
+    public String url, resHeaderId, accept, method, encoding;
+    public int compressionThreshold;
+    // vert.x timer for the request timeout
+    public volatile long timerId = -1;
 
     public AsyncContextHolder(HttpServerRequest request) {
         this.request = request;
@@ -64,6 +67,19 @@ public class AsyncContextHolder {
         return this;
     }
 
+    /**
+     * Set the negotiated content encoding for the HTTP response
+     *
+     * @param encoding "gzip", "deflate" or null for no compression
+     * @param threshold minimum payload size in bytes to be compressed
+     * @return this
+     */
+    public AsyncContextHolder setEncoding(String encoding, int threshold) {
+        this.encoding = encoding;
+        this.compressionThreshold = threshold;
+        return this;
+    }
+
     public void touch() {
         this.lastAccess = System.currentTimeMillis();
     }
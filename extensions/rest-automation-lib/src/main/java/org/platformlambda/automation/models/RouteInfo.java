@@ -18,6 +18,8 @@
 
 package org.platformlambda.automation.models;
 
+import org.platformlambda.automation.util.ResponseCompressor;
+
 import java.util.*;
 
 public class RouteInfo {
@@ -32,6 +34,9 @@ public class RouteInfo {
     public List<String> methods;
     public int timeoutSeconds = 30;
     public boolean upload = false;
+    // optional response compression
+    public boolean compression = false;
+    public int compressionThreshold = ResponseCompressor.DEFAULT_THRESHOLD;
     // optional for HTTP relay
     public String host;
     public boolean trustAllCert = false;
@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NotificationManager implements LambdaFunction {
     private static final Logger log = LoggerFactory.getLogger(NotificationManager.class);
@@ -65,7 +66,7 @@ public class NotificationManager implements LambdaFunction {
     private static final ManagedCache tokenCache = ManagedCache.createCache("ws.tokens", 30000);
     private static final ManagedCache eventCache = ManagedCache.createCache("ws.conn.events", 2000);
     // topic -> list of websocket return path (aka TX_PATH)
-    private static final Map<String, List<String>> subscription = new HashMap<>();
+    private static final Map<String, List<String>> subscription = new ConcurrentHashMap<>();
 
     public NotificationManager() throws IOException {
         final AppConfigReader config = AppConfigReader.getInstance();
@@ -88,30 +89,14 @@ public class NotificationManager implements LambdaFunction {
                         po.sendLater(event, new Date(System.currentTimeMillis() + 2000));
                     }
                 }
-                if (SUBSCRIBE.equals(type) && headers.containsKey(TOPIC) && headers.containsKey(ORIGIN)
-                        && headers.containsKey(TX_PATH)) {
-                    String topic = headers.get(TOPIC);
-                    String target = headers.get(TX_PATH) + "@" + headers.get(ORIGIN);
-                    List<String> list = subscription.getOrDefault(topic, new ArrayList<>());
-                    list.add(target);
-                    subscription.put(topic, list);
-                    log.info("{} subscribed to {}", target, topic);
-                }
-                if (UNSUBSCRIBE.equals(type) && headers.containsKey(TOPIC) && headers.containsKey(ORIGIN)
-                        && headers.containsKey(TX_PATH)) {
-                    String topic = headers.get(TOPIC);
-                    String target = headers.get(TX_PATH) + "@" + headers.get(ORIGIN);
-                    List<String> list = subscription.getOrDefault(topic, new ArrayList<>());
-                    if (list.contains(target)) {
-                        list.remove(target);
-                        log.info("{} unsubscribed from {}", target, topic);
-                        if (list.isEmpty()) {
-                            subscription.remove(topic);
-                            log.info("Notification topic {} cleared", topic);
-                        } else {
-                            subscription.put(topic, list);
-                        }
-                    }
+                /*
+                 * Subscriptions from websocket connections of this instance have been applied
+                 * by the websocket handler so that they take effect before any subsequent publish.
+                 */
+                if ((SUBSCRIBE.equals(type) || UNSUBSCRIBE.equals(type)) && headers.containsKey(TOPIC)
+                        && headers.containsKey(ORIGIN) && headers.containsKey(TX_PATH)
+                        && !origin.equals(headers.get(ORIGIN))) {
+                    updateSubscription(type, headers.get(TOPIC), headers.get(TX_PATH) + "@" + headers.get(ORIGIN));
                 }
                 if (CONNECTED.equals(type)) {
                     log.info("connected");
@@ -157,8 +142,7 @@ public class NotificationManager implements LambdaFunction {
                         eventCache.put(key, true);
                         if (origin.equals(peer)) {
                             WsRequestHandler.closeAllConnections();
-                            subscription.clear();
-                            log.info("Clearing all notification topics");
+                            clearAll();
 
                         } else {
                             // clear all entries from the ORIGIN
@@ -184,7 +168,40 @@ public class NotificationManager implements LambdaFunction {
         }
     }
 
-    private void clearEntries(String path) {
+    /**
+     * Add or remove a subscriber of a notification topic
+     *
+     * @param type "subscribe" or "unsubscribe"
+     * @param topic of notification
+     * @param target in the format of TX_PATH@origin
+     */
+    public static synchronized void updateSubscription(String type, String topic, String target) {
+        // copy-on-write so that publishers can iterate the subscriber list without locking
+        List<String> list = new ArrayList<>(subscription.getOrDefault(topic, Collections.emptyList()));
+        if (SUBSCRIBE.equals(type)) {
+            if (!list.contains(target)) {
+                list.add(target);
+                subscription.put(topic, list);
+                log.info("{} subscribed to {}", target, topic);
+            }
+        } else if (UNSUBSCRIBE.equals(type) && list.contains(target)) {
+            list.remove(target);
+            log.info("{} unsubscribed from {}", target, topic);
+            if (list.isEmpty()) {
+                subscription.remove(topic);
+                log.info("Notification topic {} cleared", topic);
+            } else {
+                subscription.put(topic, list);
+            }
+        }
+    }
+
+    private static synchronized void clearAll() {
+        subscription.clear();
+        log.info("Clearing all notification topics");
+    }
+
+    private static synchronized void clearEntries(String path) {
         boolean atPath = path.startsWith("@");
         List<String> topicToDelete = new ArrayList<>();
         for (String topic: subscription.keySet()) {
@@ -222,10 +239,10 @@ public class NotificationManager implements LambdaFunction {
     }
 
     @SuppressWarnings("unchecked")
-    private void loadRoutesFromPeer(String peer, Object body) {
+    private static synchronized void loadRoutesFromPeer(String peer, Object body) {
         Map<String, List<String>> loadList = (Map<String, List<String>>) body;
         for (String topic: loadList.keySet()) {
-            List<String> list = subscription.getOrDefault(topic, new ArrayList<>());
+            List<String> list = new ArrayList<>(subscription.getOrDefault(topic, Collections.emptyList()));
             List<String> additions = loadList.get(topic);
             int n = 0;
             for (String target: additions) {
@@ -25,6 +25,8 @@ import io.vertx.core.http.HttpServerResponse;
 import org.platformlambda.automation.MainModule;
 import org.platformlambda.automation.config.RoutingEntry;
 import org.platformlambda.automation.models.*;
+import org.platformlambda.automation.util.AsyncTimeoutHandler;
+import org.platformlambda.automation.util.ResponseCompressor;
 import org.platformlambda.automation.util.SimpleHttpUtility;
 import org.platformlambda.core.exception.AppException;
 import org.platformlambda.core.models.AsyncHttpRequest;
@@ -61,6 +63,7 @@ public class ServiceGateway {
     private static final String TEXT_HTML = "text/html";
     private static final String TEXT_PLAIN = "text/plain";
     private static final String PROTOCOL = "x-forwarded-proto";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
     private static final String HTTPS = "https";
     private static final String COOKIE = "cookie";
     private static final String ASYNC_HTTP_RESPONSE = MainModule.ASYNC_HTTP_RESPONSE;
@@ -113,7 +116,10 @@ public class ServiceGateway {
     }
 
     public static void closeContext(String requestId) {
-        contexts.remove(requestId);
+        AsyncContextHolder holder = contexts.remove(requestId);
+        if (holder != null) {
+            AsyncTimeoutHandler.getInstance().cancel(holder);
+        }
     }
 
     public void handleEvent(AssignedRoute route, String requestId, int status, String error) {
@@ -205,6 +211,10 @@ public class ServiceGateway {
         String url = request.path();
         String method = request.method().name();
         holder.setUrl(url).setMethod(method).setResHeaderId(route.info.responseTransformId);
+        if (route.info.compression) {
+            holder.setEncoding(ResponseCompressor.negotiate(request.getHeader(ACCEPT_ENCODING)),
+                                route.info.compressionThreshold);
+        }
         SimpleHttpUtility httpUtil = SimpleHttpUtility.getInstance();
         Utility util = Utility.getInstance();
         if (OPTIONS.equals(method)) {
@@ -445,11 +455,15 @@ public class ServiceGateway {
                     byte[] b = block.getBytes(0, block.length());
                     requestBody.write(b, 0, b.length);
                     if (inputComplete.get()) {
-                        String text = util.getUTF(requestBody.toByteArray()).trim();
+                        // parse directly from the request bytes and decode as text only if it is not valid XML
+                        byte[] xml = requestBody.toByteArray();
+                        // the XML declaration must be at the start of the document
+                        int start = SimpleHttpUtility.getInstance().skipWhitespace(xml);
                         try {
-                            req.setBody(text.isEmpty()? new HashMap<>() : xmlReader.parse(text));
+                            req.setBody(start == xml.length? new HashMap<>() :
+                                        xmlReader.parse(new ByteArrayInputStream(xml, start, xml.length - start)));
                         } catch (Exception e) {
-                            req.setBody(text);
+                            req.setBody(util.getUTF(xml).trim());
                         }
                         sendRequestToService(request, req, route, requestId, traceIdFinal, tracePathFinal);
                     }
@@ -525,6 +539,8 @@ public class ServiceGateway {
         EventEnvelope event = new EventEnvelope();
         event.setTo(route.info.primary).setBody(requestBody)
                 .setCorrelationId(requestId).setReplyTo(ASYNC_HTTP_RESPONSE +"@"+Platform.getInstance().getOrigin());
+        // tell the service when the HTTP caller will stop waiting for the response
+        event.setDeadline(System.currentTimeMillis() + route.info.timeoutSeconds * 1000L);
         // enable distributed tracing if needed
         if (route.info.tracing) {
             event.setFrom(HTTP_REQUEST);
@@ -592,7 +608,7 @@ public class ServiceGateway {
             }
         }
         result.add(getDefaultTraceIdLabel());
-        result.add(Utility.getInstance().getUuid());
+        result.add(Utility.getInstance().getUniqueId());
         return result;
     }
 
@@ -23,17 +23,20 @@ import io.vertx.core.http.HttpServerResponse;
 import org.platformlambda.automation.config.RoutingEntry;
 import org.platformlambda.automation.models.AsyncContextHolder;
 import org.platformlambda.automation.models.HeaderInfo;
+import org.platformlambda.automation.util.ResponseCompressor;
 import org.platformlambda.automation.util.SimpleHttpUtility;
+import org.platformlambda.automation.util.StreamResponseBridge;
 import org.platformlambda.core.annotations.EventInterceptor;
 import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.LambdaFunction;
 import org.platformlambda.core.serializers.SimpleMapper;
 import org.platformlambda.core.serializers.SimpleXmlWriter;
-import org.platformlambda.core.system.ObjectStreamReader;
+import org.platformlambda.core.util.AppConfigReader;
 import org.platformlambda.core.util.Utility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
@@ -56,15 +59,23 @@ public class ServiceResponseHandler implements LambdaFunction {
     private static final String SET_COOKIE = "Set-Cookie";
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String CONTENT_LEN = "Content-Length";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String VARY = "Vary";
     private static final String HTML_START = "<!DOCTYPE html>\n<html>\n<body>\n<pre>\n";
     private static final String HTML_END = "\n</pre>\n<body>\n</html>";
     private static final String RESULT = "result";
     private static final String ACCEPT_ANY = "*/*";
 
     private final ConcurrentMap<String, AsyncContextHolder> contexts;
+    private final int flushSize, writeQueueSize;
 
     public ServiceResponseHandler(ConcurrentMap<String, AsyncContextHolder> contexts) {
         this.contexts = contexts;
+        AppConfigReader config = AppConfigReader.getInstance();
+        Utility util = Utility.getInstance();
+        this.flushSize = Math.max(1, util.str2int(config.getProperty("http.stream.flush.size", "16384")));
+        this.writeQueueSize = util.str2int(config.getProperty("http.stream.write.queue", "0"));
     }
 
     private long getReadTimeout(String timeoutOverride, long contextTimeout) {
@@ -167,30 +178,23 @@ public class ServiceResponseHandler implements LambdaFunction {
                     // output is a stream?
                     Object responseBody = event.getRawBody();
                     if (responseBody == null && streamId != null) {
-                        response.setChunked(true);
-                        try (ObjectStreamReader in = new ObjectStreamReader(streamId,
-                                                        getReadTimeout(timeoutOverride, holder.timeout))) {
-                            for (Object block : in) {
-                                // update last access time
-                                holder.touch();
-                                /*
-                                 * only bytes or text are supported when using output stream
-                                 * e.g. for downloading a large file
-                                 */
-                                if (block instanceof byte[]) {
-                                    byte[] b = (byte[]) block;
-                                    if (b.length > 0) {
-                                        response.write(Buffer.buffer(b));
-                                    }
-                                }
-                                if (block instanceof String) {
-                                    String text = (String) block;
-                                    if (!text.isEmpty()) {
-                                        response.write((String) block);
-                                    }
-                                }
+                        if (writeQueueSize > 0) {
+                            response.setWriteQueueMaxSize(writeQueueSize);
+                        }
+                        String encoding = shouldCompress(holder, contentType)? holder.encoding : null;
+                        if (encoding != null) {
+                            response.putHeader(CONTENT_ENCODING, encoding);
+                            response.putHeader(VARY, ACCEPT_ENCODING);
+                        }
+                        StreamResponseBridge bridge = new StreamResponseBridge(holder, streamId,
+                                            getReadTimeout(timeoutOverride, holder.timeout), flushSize, encoding);
+                        try {
+                            if (!bridge.relay()) {
+                                // client has disconnected so there is nothing more to send
+                                ServiceGateway.closeContext(requestId);
+                                return null;
                             }
-                        } catch (IOException | RuntimeException e) {
+                        } catch (IOException e) {
                             log.warn("{} {} interrupted - {}", holder.url, streamId, e.getMessage());
                             httpUtil.sendResponse(requestId, holder.request,
                                     e.getMessage().contains("timeout") ? 408 : 500, e.getMessage());
@@ -199,55 +203,33 @@ public class ServiceResponseHandler implements LambdaFunction {
                         // regular output
                     } else if (responseBody instanceof Map) {
                         if (contentType.startsWith(TEXT_HTML)) {
-                            byte[] start = util.getUTF(HTML_START);
-                            byte[] payload = SimpleMapper.getInstance().getMapper().writeValueAsBytes(responseBody);
-                            byte[] end = util.getUTF(HTML_END);
-                            response.putHeader(CONTENT_LEN, String.valueOf(start.length+payload.length+end.length));
-                            response.write(HTML_START);
-                            response.write(Buffer.buffer(payload));
-                            response.write(HTML_END);
+                            String json = SimpleMapper.getInstance().getMapper().writeValueAsString(responseBody);
+                            writePayload(holder, contentType, util.getUTF(HTML_START + json + HTML_END));
                         } else if (contentType.startsWith(APPLICATION_XML)) {
-                            byte[] payload = util.getUTF(xmlWriter.write("result", responseBody));
-                            response.putHeader(CONTENT_LEN, String.valueOf(payload.length));
-                            response.write(Buffer.buffer(payload));
+                            writePayload(holder, contentType, toXml(responseBody));
                         } else {
-                            byte[] payload = SimpleMapper.getInstance().getMapper().writeValueAsBytes(responseBody);
-                            response.putHeader(CONTENT_LEN, String.valueOf(payload.length));
-                            response.write(Buffer.buffer(payload));
+                            writePayload(holder, contentType,
+                                    SimpleMapper.getInstance().getMapper().writeValueAsBytes(responseBody));
                         }
                     } else if (responseBody instanceof List) {
                         if (contentType.startsWith(TEXT_HTML)) {
-                            byte[] start = util.getUTF(HTML_START);
-                            byte[] payload = SimpleMapper.getInstance().getMapper().writeValueAsBytes(responseBody);
-                            byte[] end = util.getUTF(HTML_END);
-                            response.putHeader(CONTENT_LEN, String.valueOf(start.length+payload.length+end.length));
-                            response.write(HTML_START);
-                            response.write(Buffer.buffer(payload));
-                            response.write(HTML_END);
+                            String json = SimpleMapper.getInstance().getMapper().writeValueAsString(responseBody);
+                            writePayload(holder, contentType, util.getUTF(HTML_START + json + HTML_END));
                         } else if (contentType.startsWith(APPLICATION_XML)) {
                             // xml must be delivered as a map so we use a wrapper here
                             Map<String, Object> map = new HashMap<>();
                             map.put(RESULT, responseBody);
-                            byte[] payload = util.getUTF(xmlWriter.write("result", map));
-                            response.putHeader(CONTENT_LEN, String.valueOf(payload.length));
-                            response.write(Buffer.buffer(payload));
+                            writePayload(holder, contentType, toXml(map));
                         } else {
-                            byte[] payload = SimpleMapper.getInstance().getMapper().writeValueAsBytes(responseBody);
-                            response.putHeader(CONTENT_LEN, String.valueOf(payload.length));
-                            response.write(Buffer.buffer(payload));
+                            writePayload(holder, contentType,
+                                    SimpleMapper.getInstance().getMapper().writeValueAsBytes(responseBody));
                         }
                     } else if (responseBody instanceof String) {
-                        byte[] payload = util.getUTF((String) responseBody);
-                        response.putHeader(CONTENT_LEN, String.valueOf(payload.length));
-                        response.write(Buffer.buffer(payload));
+                        writePayload(holder, contentType, util.getUTF((String) responseBody));
                     } else if (responseBody instanceof byte[]) {
-                        byte[] payload = (byte[]) responseBody;
-                        response.putHeader(CONTENT_LEN, String.valueOf(payload.length));
-                        response.write(Buffer.buffer(payload));
+                        writePayload(holder, contentType, (byte[]) responseBody);
                     } else if (responseBody != null) {
-                        byte[] payload = util.getUTF(responseBody.toString());
-                        response.putHeader(CONTENT_LEN, String.valueOf(payload.length));
-                        response.write(Buffer.buffer(payload));
+                        writePayload(holder, contentType, util.getUTF(responseBody.toString()));
                     }
                 }
                 ServiceGateway.closeContext(requestId);
@@ -257,4 +239,42 @@ public class ServiceResponseHandler implements LambdaFunction {
         return null;
     }
 
+    private byte[] toXml(Object map) {
+        // stream the XML document as UTF-8 bytes without an intermediate string
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            xmlWriter.write("result", map, out);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw exception
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write the response body with compression if negotiated and the payload is large enough
+     * <p>
+     * This is also used by the admin endpoints so that all responses follow the same encoding rules.
+     *
+     * @param holder of the async HTTP context
+     * @param contentType of the response
+     * @param payload to be sent
+     */
+    public static void writePayload(AsyncContextHolder holder, String contentType, byte[] payload) {
+        HttpServerResponse response = holder.request.response();
+        if (shouldCompress(holder, contentType) && payload.length >= holder.compressionThreshold) {
+            payload = ResponseCompressor.compress(holder.encoding, payload);
+            response.putHeader(CONTENT_ENCODING, holder.encoding);
+            response.putHeader(VARY, ACCEPT_ENCODING);
+        }
+        response.putHeader(CONTENT_LEN, String.valueOf(payload.length));
+        response.write(Buffer.buffer(payload));
+    }
+
+    private static boolean shouldCompress(AsyncContextHolder holder, String contentType) {
+        HttpServerResponse response = holder.request.response();
+        return holder.encoding != null && ResponseCompressor.isCompressible(contentType) &&
+                !response.headers().contains(CONTENT_ENCODING);
+    }
+
 }
@@ -15,58 +15,81 @@
     limitations under the License.
 
  */
-
 package org.platformlambda.automation.util;
 
+import io.vertx.core.Vertx;
 import org.platformlambda.automation.models.AsyncContextHolder;
+import org.platformlambda.core.system.Platform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ConcurrentMap;
-
-public class AsyncTimeoutHandler extends Thread {
+/**
+ * Per-request timeout scheduling for async HTTP contexts
+ * <p>
+ * Each context has its own timer that fires when the context has been idle for its timeout period.
+ * The timer is cancelled when the context is closed. If the context has been touched
+ * (e.g. by a streaming response) when the timer fires, it is re-armed for the remaining idle time.
+ */
+public class AsyncTimeoutHandler {
     private static final Logger log = LoggerFactory.getLogger(AsyncTimeoutHandler.class);
 
-    private final ConcurrentMap<String, AsyncContextHolder> contexts;
-    private boolean normal = true;
+    private static final AsyncTimeoutHandler instance = new AsyncTimeoutHandler();
+
+    private AsyncTimeoutHandler() {
+        // singleton
+    }
+
+    public static AsyncTimeoutHandler getInstance() {
+        return instance;
+    }
 
-    public AsyncTimeoutHandler(ConcurrentMap<String, AsyncContextHolder> contexts) {
-        this.contexts = contexts;
-        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+    /**
+     * Schedule or re-schedule the timeout of an async HTTP context
+     *
+     * @param requestId of the context
+     * @param holder of the context
+     */
+    public void schedule(String requestId, AsyncContextHolder holder) {
+        cancel(holder);
+        long idle = System.currentTimeMillis() - holder.lastAccess;
+        arm(requestId, holder, holder.timeout - idle);
     }
 
-    @Override
-    public void run() {
-        log.info("Async HTTP timeout handler started");
-        while (normal) {
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                // ok to ignore
-            }
-            // check async context timeout
-            if (!contexts.isEmpty()) {
-                List<String> list = new ArrayList<>(contexts.keySet());
-                long now = System.currentTimeMillis();
-                for (String id : list) {
-                    AsyncContextHolder holder = contexts.get(id);
-                    long t1 = holder.lastAccess;
-                    if (now - t1 > holder.timeout) {
-                        log.warn("Async HTTP Context {} timeout for {} ms", id, now - t1);
-                        SimpleHttpUtility httpUtil = SimpleHttpUtility.getInstance();
-                        httpUtil.sendResponse(id, holder.request, 408,
-                                "Timeout for " + (holder.timeout / 1000) + " seconds");
-                    }
-                }
-            }
+    /**
+     * Cancel the timeout of an async HTTP context
+     *
+     * @param holder of the context
+     */
+    public void cancel(AsyncContextHolder holder) {
+        long timerId = holder.timerId;
+        if (timerId != -1) {
+            holder.timerId = -1;
+            Platform.getInstance().getVertx().cancelTimer(timerId);
         }
-        log.info("Async HTTP timeout handler stopped");
     }
 
-    private void shutdown() {
-        normal = false;
+    private void arm(String requestId, AsyncContextHolder holder, long delay) {
+        Vertx vertx = Platform.getInstance().getVertx();
+        // vert.x timers must be at least 1 ms
+        holder.timerId = vertx.setTimer(Math.max(1, delay), id -> expire(requestId, holder, id));
+    }
+
+    private void expire(String requestId, AsyncContextHolder holder, long timerId) {
+        if (holder.timerId != timerId) {
+            // the timer has been cancelled or re-scheduled
+            return;
+        }
+        holder.timerId = -1;
+        long idle = System.currentTimeMillis() - holder.lastAccess;
+        if (idle < holder.timeout) {
+            // the context is still active so wait for the remaining time
+            arm(requestId, holder, holder.timeout - idle);
+        } else {
+            log.warn("Async HTTP Context {} timeout for {} ms", requestId, idle);
+            SimpleHttpUtility httpUtil = SimpleHttpUtility.getInstance();
+            httpUtil.sendResponse(requestId, holder.request, 408,
+                    "Timeout for " + (holder.timeout / 1000) + " seconds");
+        }
     }
-}
 
+}
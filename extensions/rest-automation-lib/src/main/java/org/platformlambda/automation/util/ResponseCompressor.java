@@ -0,0 +1,225 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+package org.platformlambda.automation.util;
+
+import org.platformlambda.core.util.Utility;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * HTTP response compression using pooled deflaters
+ * <p>
+ * GZIP framing is written directly so that a Deflater can be reused across requests.
+ * Brotli is not offered because there is no pure-Java encoder.
+ */
+public class ResponseCompressor {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    // payloads smaller than this are sent as is unless configured otherwise
+    public static final int DEFAULT_THRESHOLD = 1024;
+    private static final int MAX_POOL = 64;
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final String[] COMPRESSIBLE_TYPES = {"text/", "application/json", "application/xml",
+            "application/javascript", "application/x-www-form-urlencoded", "+json", "+xml"};
+    // raw deflaters are used for gzip and zlib-wrapped deflaters for the "deflate" encoding
+    private static final ConcurrentLinkedQueue<Deflater> rawPool = new ConcurrentLinkedQueue<>();
+    private static final ConcurrentLinkedQueue<Deflater> zlibPool = new ConcurrentLinkedQueue<>();
+
+    private ResponseCompressor() {}
+
+    /**
+     * Select a supported content encoding from the Accept-Encoding header
+     *
+     * @param acceptEncoding header value
+     * @return "gzip", "deflate" or null if none is acceptable
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        Utility util = Utility.getInstance();
+        // "*" applies only to the codings that are not listed explicitly
+        Float gzip = null, deflate = null, any = null;
+        List<String> items = util.split(acceptEncoding.toLowerCase(), ",");
+        for (String item: items) {
+            List<String> parts = util.split(item, ";");
+            if (parts.isEmpty()) {
+                continue;
+            }
+            String coding = parts.get(0).trim();
+            float q = 1;
+            for (int i=1; i < parts.size(); i++) {
+                String p = parts.get(i).trim();
+                if (p.startsWith("q=")) {
+                    try {
+                        q = Float.parseFloat(p.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (GZIP.equals(coding)) {
+                gzip = q;
+            } else if (DEFLATE.equals(coding)) {
+                deflate = q;
+            } else if ("*".equals(coding)) {
+                any = q;
+            }
+        }
+        float gzipQ = gzip != null? gzip : (any != null? any : 0);
+        float deflateQ = deflate != null? deflate : (any != null? any : 0);
+        // gzip is preferred when both are equally acceptable
+        if (gzipQ > 0 && gzipQ >= deflateQ) {
+            return GZIP;
+        }
+        return deflateQ > 0? DEFLATE : null;
+    }
+
+    public static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        for (String t: COMPRESSIBLE_TYPES) {
+            if (t.startsWith("+")? type.contains(t) : type.startsWith(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compress a payload in one pass
+     *
+     * @param encoding "gzip" or "deflate"
+     * @param data to be compressed
+     * @return compressed bytes
+     */
+    public static byte[] compress(String encoding, byte[] data) {
+        Encoder encoder = new Encoder(encoding);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            encoder.write(out, data, false);
+            encoder.finish(out);
+            return out.toByteArray();
+        } finally {
+            encoder.release();
+        }
+    }
+
+    /**
+     * Incremental encoder for streaming responses.
+     * Each chunk is sync-flushed so that the client can decode it immediately.
+     */
+    public static class Encoder {
+        private final boolean gzip;
+        private final CRC32 crc;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private Deflater deflater;
+        private boolean started = false;
+
+        public Encoder(String encoding) {
+            this.gzip = GZIP.equals(encoding);
+            this.crc = gzip? new CRC32() : null;
+            ConcurrentLinkedQueue<Deflater> pool = gzip? rawPool : zlibPool;
+            Deflater d = pool.poll();
+            this.deflater = d != null? d : new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+        }
+
+        public byte[] update(byte[] data) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            write(out, data, true);
+            return out.toByteArray();
+        }
+
+        public byte[] finish() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+            finish(out);
+            return out.toByteArray();
+        }
+
+        private void write(ByteArrayOutputStream out, byte[] data, boolean sync) {
+            if (gzip && !started) {
+                out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            }
+            started = true;
+            if (gzip) {
+                crc.update(data, 0, data.length);
+            }
+            deflater.setInput(data);
+            while (!deflater.needsInput()) {
+                int n = deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH);
+                out.write(buffer, 0, n);
+            }
+            if (sync) {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+        }
+
+        private void finish(ByteArrayOutputStream out) {
+            if (gzip && !started) {
+                out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            }
+            started = true;
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            if (gzip) {
+                writeInt(out, (int) crc.getValue());
+                writeInt(out, (int) deflater.getBytesRead());
+            }
+        }
+
+        /**
+         * Return the deflater to the pool. The encoder must not be used afterwards.
+         */
+        public void release() {
+            if (deflater != null) {
+                deflater.reset();
+                ConcurrentLinkedQueue<Deflater> pool = gzip? rawPool : zlibPool;
+                if (pool.size() < MAX_POOL) {
+                    pool.offer(deflater);
+                } else {
+                    deflater.end();
+                }
+                deflater = null;
+            }
+        }
+
+        private void writeInt(ByteArrayOutputStream out, int v) {
+            // little endian as required by the GZIP trailer
+            out.write(v & 0xff);
+            out.write((v >> 8) & 0xff);
+            out.write((v >> 16) & 0xff);
+            out.write((v >> 24) & 0xff);
+        }
+    }
+
+}
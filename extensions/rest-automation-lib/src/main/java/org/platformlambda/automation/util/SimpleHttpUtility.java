@@ -130,6 +130,34 @@ public class SimpleHttpUtility {
         return url;
     }
 
+    /**
+     * Check if a payload is empty or contains whitespace only
+     *
+     * @param payload in bytes
+     * @return true if blank
+     */
+    public boolean isBlank(byte[] payload) {
+        return skipWhitespace(payload) == payload.length;
+    }
+
+    /**
+     * Find the first character of a payload that is not whitespace
+     *
+     * @param payload in bytes
+     * @return offset or length of the payload if it is blank
+     */
+    public int skipWhitespace(byte[] payload) {
+        int i = 0;
+        while (i < payload.length) {
+            byte b = payload[i];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
     public Map<String, String> decodeQueryString(String query) {
         Map<String, String> result = new HashMap<>();
         Utility util = Utility.getInstance();
@@ -0,0 +1,146 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+package org.platformlambda.automation.util;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import org.platformlambda.automation.models.AsyncContextHolder;
+import org.platformlambda.core.system.ObjectStreamReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relay an object stream to a HTTP response with back-pressure.
+ * <p>
+ * Blocks are fetched from the stream only when the response write queue has room.
+ * Small blocks are coalesced into chunks of "flushSize" bytes and optionally compressed
+ * with a sync flush so that each chunk can be decoded by the client. When the client disconnects,
+ * the stream is closed so that the upstream service stops producing data.
+ * <p>
+ * This must be called from a worker thread because it waits for the client to drain the write queue.
+ */
+public class StreamResponseBridge {
+    private static final Logger log = LoggerFactory.getLogger(StreamResponseBridge.class);
+
+    private final AsyncContextHolder holder;
+    private final HttpServerResponse response;
+    private final String streamId;
+    private final long timeout;
+    private final int flushSize;
+    private final String encoding;
+    private final BlockingQueue<Boolean> signal = new ArrayBlockingQueue<>(1);
+    private volatile boolean disconnected = false;
+
+    public StreamResponseBridge(AsyncContextHolder holder, String streamId, long timeout, int flushSize,
+                                String encoding) {
+        this.holder = holder;
+        this.response = holder.request.response();
+        this.streamId = streamId;
+        this.timeout = timeout;
+        this.flushSize = Math.max(1, flushSize);
+        this.encoding = encoding;
+    }
+
+    /**
+     * Relay the stream to the HTTP response
+     *
+     * @return true if completed or false if the client has disconnected
+     * @throws IOException in case of read timeout or stream error
+     */
+    public boolean relay() throws IOException {
+        response.closeHandler(v -> {
+            disconnected = true;
+            signal.offer(true);
+        });
+        response.setChunked(true);
+        Buffer pending = Buffer.buffer();
+        ResponseCompressor.Encoder encoder = encoding == null? null : new ResponseCompressor.Encoder(encoding);
+        try (ObjectStreamReader in = new ObjectStreamReader(streamId, timeout)) {
+            Iterator<Object> blocks = in.iterator();
+            while (!disconnected && blocks.hasNext()) {
+                Object block = blocks.next();
+                // update last access time
+                holder.touch();
+                /*
+                 * only bytes or text are supported when using output stream
+                 * e.g. for downloading a large file
+                 */
+                if (block instanceof byte[]) {
+                    pending.appendBytes((byte[]) block);
+                } else if (block instanceof String) {
+                    pending.appendString((String) block);
+                }
+                if (pending.length() >= flushSize) {
+                    write(pending, encoder);
+                    pending = Buffer.buffer();
+                }
+            }
+            if (disconnected) {
+                // closing the reader tells the upstream service to stop streaming
+                log.warn("{} {} cancelled because client has disconnected", holder.url, streamId);
+                return false;
+            }
+            if (pending.length() > 0) {
+                write(pending, encoder);
+            }
+            if (encoder != null) {
+                write(Buffer.buffer(encoder.finish()), null);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            if (encoder != null) {
+                encoder.release();
+            }
+            response.closeHandler(null);
+            response.drainHandler(null);
+        }
+    }
+
+    private void write(Buffer data, ResponseCompressor.Encoder encoder) throws IOException {
+        response.write(encoder == null? data : Buffer.buffer(encoder.update(data.getBytes())));
+        if (response.writeQueueFull()) {
+            // pause block fetching until the client has consumed the buffered data
+            signal.clear();
+            response.drainHandler(v -> signal.offer(true));
+            long begin = System.currentTimeMillis();
+            while (!disconnected && response.writeQueueFull()) {
+                long remaining = timeout - (System.currentTimeMillis() - begin);
+                if (remaining <= 0) {
+                    throw new IOException("Write timeout - client is not reading");
+                }
+                try {
+                    signal.poll(Math.min(remaining, 1000), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted while waiting for client");
+                }
+                // keep the async context alive while the client is reading
+                holder.touch();
+            }
+            response.drainHandler(null);
+        }
+    }
+
+}
@@ -307,6 +307,8 @@ public class WsRequestHandler implements Handler<ServerWebSocket> {
         PostOffice po = PostOffice.getInstance();
         Utility util = Utility.getInstance();
         if (util.validServiceName(topic)) {
+            // apply locally first so that a subsequent publish from this connection will see the subscription
+            NotificationManager.updateSubscription(type, topic, txPath + "@" + origin);
             po.broadcast(MainModule.NOTIFICATION_MANAGER,
                     new Kv(TYPE, type), new Kv(ORIGIN, origin),
                     new Kv(TOPIC, topic), new Kv(TX_PATH, txPath));
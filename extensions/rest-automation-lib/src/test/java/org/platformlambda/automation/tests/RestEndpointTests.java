@@ -21,10 +21,12 @@ package org.platformlambda.automation.tests;
 import org.junit.Assert;
 import org.junit.Test;
 import org.platformlambda.automation.mock.TestBase;
+import org.platformlambda.automation.util.ResponseCompressor;
 import org.platformlambda.core.exception.AppException;
 import org.platformlambda.core.models.AsyncHttpRequest;
 import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.LambdaFunction;
+import org.platformlambda.core.models.TypedLambdaFunction;
 import org.platformlambda.core.serializers.SimpleMapper;
 import org.platformlambda.core.serializers.SimpleXmlWriter;
 import org.platformlambda.core.system.*;
@@ -34,11 +36,18 @@ import org.platformlambda.core.util.Utility;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 public class RestEndpointTests extends TestBase {
 
@@ -98,6 +107,119 @@ public class RestEndpointTests extends TestBase {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void compressionTest() throws IOException {
+        Utility util = Utility.getInstance();
+        String[] encodings = {"gzip", "deflate"};
+        for (String encoding: encodings) {
+            URL url = new URL("http://127.0.0.1:" + port + "/api/hello/compress?x=" + encoding);
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestProperty("Accept", "application/json");
+            conn.setRequestProperty("Accept-Encoding", "br;q=1.0, " + encoding + ";q=0.8");
+            Assert.assertEquals(200, conn.getResponseCode());
+            Assert.assertEquals(encoding, conn.getHeaderField("Content-Encoding"));
+            InputStream in = "gzip".equals(encoding)? new GZIPInputStream(conn.getInputStream()) :
+                                                    new InflaterInputStream(conn.getInputStream());
+            String json = util.stream2str(in);
+            Map<String, Object> map = SimpleMapper.getInstance().getMapper().readValue(json, Map.class);
+            Assert.assertEquals("/api/hello/compress", map.get("url"));
+            conn.disconnect();
+        }
+        // no compression when the client does not accept it
+        URL url = new URL("http://127.0.0.1:" + port + "/api/hello/compress");
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setRequestProperty("Accept-Encoding", "identity");
+        Assert.assertEquals(200, conn.getResponseCode());
+        Assert.assertNull(conn.getHeaderField("Content-Encoding"));
+        conn.disconnect();
+    }
+
+    @Test
+    public void infoSnapshotTest() throws IOException {
+        // the first request may build the snapshot
+        URL url = new URL("http://127.0.0.1:" + port + "/info/lib");
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("Accept", "application/json");
+        Assert.assertEquals(200, conn.getResponseCode());
+        Utility.getInstance().stream2str(conn.getInputStream());
+        conn.disconnect();
+        conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("Accept", "application/json");
+        Assert.assertEquals(200, conn.getResponseCode());
+        String eTag = conn.getHeaderField("ETag");
+        Assert.assertNotNull(eTag);
+        Assert.assertTrue(conn.getContentType().startsWith("application/json"));
+        String json = Utility.getInstance().stream2str(conn.getInputStream());
+        Assert.assertTrue(json.startsWith("{"));
+        conn.disconnect();
+        // a client with the current version receives 304 without a body
+        conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setRequestProperty("If-None-Match", eTag);
+        Assert.assertEquals(304, conn.getResponseCode());
+        Assert.assertEquals(eTag, conn.getHeaderField("ETag"));
+        conn.disconnect();
+        // the snapshot is compressed when the client accepts it
+        conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        Assert.assertEquals(200, conn.getResponseCode());
+        Assert.assertEquals(eTag, conn.getHeaderField("ETag"));
+        Assert.assertEquals("gzip", conn.getHeaderField("Content-Encoding"));
+        Assert.assertEquals(json, Utility.getInstance().stream2str(new GZIPInputStream(conn.getInputStream())));
+        conn.disconnect();
+    }
+
+    @Test
+    public void encodingNegotiationTest() {
+        Assert.assertEquals("gzip", ResponseCompressor.negotiate("gzip, deflate"));
+        Assert.assertEquals("deflate", ResponseCompressor.negotiate("gzip;q=0.5, deflate"));
+        Assert.assertEquals("gzip", ResponseCompressor.negotiate("*"));
+        // the wildcard must not override a coding that is refused explicitly
+        Assert.assertEquals("deflate", ResponseCompressor.negotiate("gzip;q=0, *"));
+        Assert.assertNull(ResponseCompressor.negotiate("gzip;q=0, deflate;q=0, *"));
+        Assert.assertNull(ResponseCompressor.negotiate("identity, *;q=0"));
+        Assert.assertEquals("gzip", ResponseCompressor.negotiate("deflate;q=0.2, *;q=0.5"));
+        Assert.assertNull(ResponseCompressor.negotiate("br"));
+    }
+
+    @Test
+    public void requestTimeoutTest() throws IOException, InterruptedException {
+        // the route timeout of "/api/slow/service" in rest.yaml
+        final long TIMEOUT = 5000;
+        final long MARGIN = 1500;
+        BlockingQueue<Long> deadline = new ArrayBlockingQueue<>(1);
+        TypedLambdaFunction<EventEnvelope, Object> f = new TypedLambdaFunction<EventEnvelope, Object>() {
+            @Override
+            public Object handleEvent(Map<String, String> headers, EventEnvelope body, int instance)
+                    throws InterruptedException {
+                deadline.offer(body.getDeadline());
+                Thread.sleep(6000);
+                return true;
+            }
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate("slow.service", f, 1);
+        try {
+            long begin = System.currentTimeMillis();
+            URL url = new URL("http://127.0.0.1:" + port + "/api/slow/service");
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestProperty("Accept", "application/json");
+            Assert.assertEquals(408, conn.getResponseCode());
+            long elapsed = System.currentTimeMillis() - begin;
+            conn.disconnect();
+            // the request must time out neither early nor late
+            Assert.assertTrue("elapsed "+elapsed, elapsed >= TIMEOUT && elapsed < TIMEOUT + MARGIN);
+            Long d = deadline.poll(1, TimeUnit.SECONDS);
+            Assert.assertNotNull(d);
+            Assert.assertTrue(d >= begin + TIMEOUT && d < begin + TIMEOUT + MARGIN);
+        } finally {
+            platform.release("slow.service");
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void authRoutingTest2() throws IOException {
@@ -370,6 +492,40 @@ public class RestEndpointTests extends TestBase {
         Assert.assertEquals(data, received);
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void postXmlWithLeadingWhitespace() throws AppException, IOException, TimeoutException {
+        SimpleXmlWriter xmlWriter = new SimpleXmlWriter();
+        Platform platform = Platform.getInstance();
+        PostOffice po = PostOffice.getInstance();
+        LambdaFunction f = (headers, body, instance) -> {
+            po.annotateTrace("hello", "world");
+            return true;
+        };
+        if (!platform.hasRoute("v1.api.auth")) {
+            platform.registerPrivate("v1.api.auth", f, 1);
+        }
+        AsyncHttpRequest req = new AsyncHttpRequest();
+        req.setMethod("POST");
+        req.setUrl("/api/hello/world");
+        req.setTargetHost("http://127.0.0.1:"+port);
+        Map<String, Object> data = new HashMap<>();
+        data.put("hello", "world");
+        data.put("test", "message");
+        // whitespace before the XML declaration is ignored
+        String xml = "\r\n  \t" + xmlWriter.write(data);
+        Assert.assertTrue(xml.contains("<?xml"));
+        req.setBody(xml);
+        req.setHeader("accept", "application/json");
+        req.setHeader("content-type", "application/xml");
+        EventEnvelope res = po.request(HTTP_REQUEST, 5000, req.toMap());
+        Assert.assertTrue(res.getBody() instanceof Map);
+        MultiLevelMap map = new MultiLevelMap((Map<String, Object>) res.getBody());
+        Assert.assertTrue(map.getElement("body") instanceof Map);
+        Map<String, Object> received = (Map<String, Object>) map.getElement("body");
+        Assert.assertEquals(data, received);
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void postJsonMap() throws AppException, IOException, TimeoutException {
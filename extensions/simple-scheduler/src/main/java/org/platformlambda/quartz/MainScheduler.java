@@ -29,6 +29,7 @@ import org.platformlambda.core.util.ConfigReader;
 import org.platformlambda.core.util.Utility;
 import org.platformlambda.quartz.models.ScheduledJob;
 import org.platformlambda.quartz.services.JobExecutor;
+import org.platformlambda.quartz.services.JobSharding;
 import org.platformlambda.rest.RestServer;
 import org.quartz.*;
 import org.quartz.impl.StdSchedulerFactory;
@@ -52,6 +53,7 @@ public class MainScheduler implements EntryPoint {
     public static final String TYPE = "type";
     public static final String START = "start";
     public static final String STOP = "stop";
+    public static final String RELEASE = "release";
     public static final String ORIGIN = "origin";
     private static final String SCHEDULER = "scheduler";
     private static final ConcurrentMap<String, ScheduledJob> jobs = new ConcurrentHashMap<>();
@@ -84,16 +86,25 @@ public class MainScheduler implements EntryPoint {
         ScheduledJob j = getJob(id);
         if (j != null && j.startTime == null) {
             scheduler.addJob(j.job, true);
-            CronTrigger trigger = TriggerBuilder.newTrigger()
-                    .withSchedule(CronScheduleBuilder.cronSchedule(j.cronSchedule))
-                    .forJob(id, GLOBAL_GROUP).build();
+            CronTrigger trigger = getTrigger(id, j);
             j.startTime = new Date();
             j.stopTime = null;
             scheduler.scheduleJob(trigger);
-            log.info("Scheduled job={}, service={}, cron={}", id, j.service, j.cronSchedule);
+            log.info("Scheduled job={}, service={}, cron={}, misfire={}", id, j.service, j.cronSchedule, j.misfire);
         }
     }
 
+    private static CronTrigger getTrigger(String id, ScheduledJob j) {
+        CronScheduleBuilder schedule = CronScheduleBuilder.cronSchedule(j.cronSchedule);
+        // a misfired job is either skipped or fired once when the scheduler catches up
+        if (ScheduledJob.SKIP.equals(j.misfire)) {
+            schedule = schedule.withMisfireHandlingInstructionDoNothing();
+        } else {
+            schedule = schedule.withMisfireHandlingInstructionFireAndProceed();
+        }
+        return TriggerBuilder.newTrigger().withSchedule(schedule).forJob(id, GLOBAL_GROUP).build();
+    }
+
     public static void executeJobNow(String id) throws SchedulerException {
         ScheduledJob j = getJob(id);
         if (j != null && j.stopTime == null) {
@@ -116,9 +127,14 @@ public class MainScheduler implements EntryPoint {
     public void start(String[] args) throws Exception {
         Platform platform = Platform.getInstance();
         String origin = platform.getOrigin();
-        // create service for leader election and synchronization of job start/stop status
+        // start the clock of the startup grace period for job sharding
+        JobSharding sharding = JobSharding.getInstance();
+        // create service for job handoff and synchronization of job start/stop status
         LambdaFunction f = (headers, body, instance) -> {
             if (!origin.equals(headers.get(ORIGIN)) && headers.containsKey(JOB_ID)) {
+                if (RELEASE.equals(headers.get(TYPE))) {
+                    return sharding.hasReleased(headers.get(JOB_ID));
+                }
                 if (START.equals(headers.get(TYPE))) {
                     startJob(headers.get(JOB_ID));
                 }
@@ -142,10 +158,17 @@ public class MainScheduler implements EntryPoint {
                 String service = config.getProperty("jobs["+i+"].service");
                 String schedule = config.getProperty("jobs["+i+"].cron");
                 String desc = config.getProperty("jobs["+i+"].description");
+                String misfire = config.getProperty("jobs["+i+"].misfire", ScheduledJob.FIRE_ONCE);
                 Object parameters = config.get("jobs["+i+"].parameters");
                 if (name != null && schedule != null && service != null) {
                     ScheduledJob j = new ScheduledJob(name, service, schedule);
                     j.description = desc == null? name : desc;
+                    if (ScheduledJob.SKIP.equals(misfire) || ScheduledJob.FIRE_ONCE.equals(misfire)) {
+                        j.misfire = misfire;
+                    } else {
+                        log.error("Invalid misfire policy '{}' for job {} - using {}",
+                                    misfire, name, ScheduledJob.FIRE_ONCE);
+                    }
                     if (parameters instanceof Map) {
                         Map<String, Object> map = (Map<String, Object>) parameters;
                         for (String k: map.keySet()) {
@@ -169,12 +192,10 @@ public class MainScheduler implements EntryPoint {
             j.job = JobBuilder.newJob(JobExecutor.class).storeDurably(true)
                               .usingJobData(JOB_ID, id).withIdentity(id, GLOBAL_GROUP).build();
             scheduler.addJob(j.job, true);
-            CronTrigger trigger = TriggerBuilder.newTrigger()
-                    .withSchedule(CronScheduleBuilder.cronSchedule(j.cronSchedule))
-                    .forJob(id, GLOBAL_GROUP).build();
+            CronTrigger trigger = getTrigger(id, j);
             j.startTime = new Date();
             scheduler.scheduleJob(trigger);
-            log.info("Scheduled job={}, service={}, cron={}", id, j.service, j.cronSchedule);
+            log.info("Scheduled job={}, service={}, cron={}, misfire={}", id, j.service, j.cronSchedule, j.misfire);
         }
         scheduler.start();
         // shutdown schedule when app stops
@@ -26,6 +26,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class ScheduledJob {
+    public static final String SKIP = "skip";
+    public static final String FIRE_ONCE = "fire_once";
 
     public String name;
     public String description;
@@ -38,6 +40,10 @@ public class ScheduledJob {
     public Date stopTime;
     public Date lastExecution;
     public JobDetail job;
+    public String misfire = FIRE_ONCE;
+    private long skipped = 0, fired = 0;
+    private long lastDrift = 0, maxDrift = 0, totalDrift = 0;
+    private float lastLatency = 0, maxLatency = 0;
 
     public ScheduledJob(String name, String service, String cronSchedule) {
         this.created = new Date();
@@ -65,6 +71,38 @@ public class ScheduledJob {
         return this;
     }
 
+    /**
+     * Record execution metrics
+     *
+     * @param drift between the actual and scheduled fire time in milliseconds
+     * @param latency to dispatch the event in milliseconds
+     */
+    public synchronized void recordExecution(long drift, float latency) {
+        lastExecution = new Date();
+        count++;
+        fired++;
+        lastDrift = drift;
+        maxDrift = Math.max(maxDrift, drift);
+        totalDrift += drift;
+        lastLatency = latency;
+        maxLatency = Math.max(maxLatency, latency);
+    }
+
+    public synchronized void recordSkipped() {
+        skipped++;
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("skipped", skipped);
+        result.put("last_drift", lastDrift);
+        result.put("max_drift", maxDrift);
+        result.put("avg_drift", fired == 0? 0 : totalDrift / fired);
+        result.put("last_latency", lastLatency);
+        result.put("max_latency", maxLatency);
+        return result;
+    }
+
     public Map<String, Object> toMap() {
         Map<String, Object> result = new HashMap<>();
         result.put("name", name);
@@ -77,6 +115,8 @@ public class ScheduledJob {
         result.put("stop_time", stopTime);
         result.put("last_execution", lastExecution);
         result.put("iterations", count);
+        result.put("misfire", misfire);
+        result.put("metrics", getMetrics());
         return result;
     }
 
@@ -24,6 +24,8 @@ import org.platformlambda.core.system.Platform;
 import org.platformlambda.core.system.PostOffice;
 import org.platformlambda.quartz.MainScheduler;
 import org.platformlambda.quartz.models.ScheduledJob;
+import org.platformlambda.quartz.services.JobSharding;
+import org.platformlambda.quartz.services.LeaderElection;
 import org.quartz.SchedulerException;
 
 import javax.ws.rs.*;
@@ -51,7 +53,9 @@ public class AdminEndpoint {
         for (String id: all) {
             ScheduledJob job = MainScheduler.getJob(id);
             if (job != null) {
-                list.put(id, job.toMap());
+                Map<String, Object> map = job.toMap();
+                map.put("owner", JobSharding.getInstance().getOwner(id));
+                list.put(id, map);
                 n++;
             }
         }
@@ -65,6 +69,8 @@ public class AdminEndpoint {
         }
         result.put("jobs", jobList);
         result.put("total", n);
+        result.put("leader", LeaderElection.getInstance().getLeader());
+        result.put("members", JobSharding.getInstance().getMembers());
         result.put("time", new Date());
         return result;
     }
@@ -19,7 +19,6 @@
 package org.platformlambda.quartz.services;
 
 import org.platformlambda.core.models.EventEnvelope;
-import org.platformlambda.core.system.Platform;
 import org.platformlambda.core.system.PostOffice;
 import org.platformlambda.quartz.MainScheduler;
 import org.platformlambda.quartz.models.ScheduledJob;
@@ -30,15 +29,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.Date;
-import java.util.List;
 
 public class JobExecutor implements Job {
     private static final Logger log = LoggerFactory.getLogger(JobExecutor.class);
 
-    private static final String SCHEDULER_SERVICE = MainScheduler.SCHEDULER_SERVICE;
-
     /**
      * Quartz uses a thread pool to create a new instance of each job.
      * To alleviate this, we decouple it with the Mercury event driven service framework.
@@ -51,47 +45,58 @@ public class JobExecutor implements Job {
         JobDataMap parameters = context.getJobDetail().getJobDataMap();
         ScheduledJob job = MainScheduler.getJob(parameters.getString(MainScheduler.JOB_ID));
         if (job != null) {
-            EventEnvelope event = new EventEnvelope().setTo(job.service);
-            event.setTrace(event.getId(), "JOB /schedule/"+job.name);
-            event.setHeaders(job.parameters);
-            /*
-             * Leader election protocol
-             * ------------------------
-             *
-             * When there are more than one instance of the scheduler running,
-             * select the first one from a sorted list of app instance ID.
-             *
-             * This would avoid duplicated execution of a scheduled job.
-             */
-            String me = Platform.getInstance().getOrigin();
-            PostOffice po = PostOffice.getInstance();
-            List<String> peers = po.search(SCHEDULER_SERVICE, true);
-            final String selected;
-            if (peers.size() > 1) {
-                Collections.sort(peers);
-                selected = peers.get(0);
-            } else  {
-                selected = me;
-            }
-            if (me.equals(selected)) {
-                if (po.exists(job.service)) {
-                    try {
-                        po.send(event);
-                        job.lastExecution = new Date();
-                        job.count++;
-                        log.info("Execute service {} with parameters {}", job.service, job.parameters);
-                    } catch (IOException e) {
-                        log.error("Unable to execute service {} with parameters {} - {}",
-                                job.service, job.parameters, e.getMessage());
-                    }
+            // membership is cached so that a burst of jobs does not trigger any discovery request
+            JobSharding sharding = JobSharding.getInstance();
+            int ownership = sharding.checkOwnership(job.name);
+            if (ownership == JobSharding.NOT_OWNER) {
+                log.debug("Skip service {} with parameters {} because peer {} is handling it",
+                        job.service, job.parameters, sharding.getOwner(job.name));
+            } else if (ownership == JobSharding.HANDOFF) {
+                // wait for the previous owner to release the job to avoid double execution
+                if (ScheduledJob.FIRE_ONCE.equals(job.misfire)) {
+                    long scheduled = context.getScheduledFireTime().getTime();
+                    sharding.getHandoff(job.name).onSuccess(ready -> catchUp(job, scheduled, ready));
+                    log.info("Defer service {} during job handoff", job.service);
                 } else {
-                    log.error("Unable to execute service {} with parameters {} - route {} not found",
-                                job.service, job.parameters, job.service);
+                    job.recordSkipped();
+                    log.info("Skip service {} during job handoff", job.service);
                 }
             } else {
-                log.info("Skip service {} with parameters {} because peer {} is handling it",
-                        job.service, job.parameters, selected);
+                fire(job, context.getScheduledFireTime().getTime(), context.getFireTime().getTime());
+            }
+        }
+    }
+
+    private void catchUp(ScheduledJob job, long scheduled, boolean ready) {
+        if (!ready) {
+            job.recordSkipped();
+            log.info("Skip service {} because job has moved during handoff", job.service);
+        } else if (job.stopTime == null && JobSharding.getInstance().checkOwnership(job.name) == JobSharding.OWNER &&
+                (job.lastExecution == null || job.lastExecution.getTime() < scheduled)) {
+            // a deferred trigger is dropped silently if the job has been stopped or executed by a later trigger
+            fire(job, scheduled, System.currentTimeMillis());
+        }
+    }
+
+    private void fire(ScheduledJob job, long scheduled, long fired) {
+        long start = System.nanoTime();
+        PostOffice po = PostOffice.getInstance();
+        if (po.exists(job.service)) {
+            // each execution is a new event with its own ID and trace
+            EventEnvelope event = new EventEnvelope().setTo(job.service);
+            event.setTrace(event.getId(), "JOB /schedule/"+job.name);
+            event.setHeaders(job.parameters);
+            try {
+                po.send(event);
+                job.recordExecution(Math.max(0, fired - scheduled), (float) (System.nanoTime() - start) / 1000000);
+                log.info("Execute service {} with parameters {}", job.service, job.parameters);
+            } catch (IOException e) {
+                log.error("Unable to execute service {} with parameters {} - {}",
+                        job.service, job.parameters, e.getMessage());
             }
+        } else {
+            log.error("Unable to execute service {} with parameters {} - route {} not found",
+                        job.service, job.parameters, job.service);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,295 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.quartz.services;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.system.Platform;
+import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.core.util.AppConfigReader;
+import org.platformlambda.core.util.Utility;
+import org.platformlambda.quartz.MainScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Job sharding protocol
+ * ---------------------
+ * <p>
+ * Jobs are distributed to live scheduler instances using a consistent hash ring
+ * so that only a small portion of jobs move when an instance joins or leaves.
+ * <p>
+ * Membership is taken from the local copy of the cloud routing table that the service registry
+ * keeps up to date from presence and registry events. It is cached until the routing table
+ * changes or the lease expires so that a job can be fired without any RPC.
+ * <p>
+ * To avoid double execution when membership changes, an instance releases a job as soon as
+ * it sees the change. The new owner of a job does not fire it until the previous owner confirms
+ * that it has released the job. If the previous owner has left, the new owner waits for the lease
+ * period instead.
+ * <p>
+ * The local routing table may not list all peers right after startup. Therefore, the previous owner
+ * of a job during the startup grace period is the instance that would own it without this one, and
+ * a job without any other candidate is not fired until one lease after startup.
+ */
+public class JobSharding {
+    private static final Logger log = LoggerFactory.getLogger(JobSharding.class);
+
+    public static final int NOT_OWNER = -1;
+    public static final int OWNER = 0;
+    public static final int HANDOFF = 1;
+    private static final String SCHEDULER_SERVICE = MainScheduler.SCHEDULER_SERVICE;
+    private static final String LEADER_LEASE = "scheduler.leader.lease";
+    private static final long CONFIRM_INTERVAL = 1000;
+    private static final int VIRTUAL_NODES = 64;
+    private static final int FNV_32_INIT = 0x811c9dc5;
+    private static final int FNV_32_PRIME = 0x01000193;
+    private static final JobSharding instance = new JobSharding();
+    private final long lease;
+    private final long startupEnd;
+    private volatile Membership current;
+
+    private JobSharding() {
+        AppConfigReader config = AppConfigReader.getInstance();
+        lease = Math.max(1000, Utility.getInstance().str2long(config.getProperty(LEADER_LEASE, "5000")));
+        startupEnd = System.currentTimeMillis() + lease;
+    }
+
+    public static JobSharding getInstance() {
+        return instance;
+    }
+
+    /**
+     * Check if the startup grace period is over
+     *
+     * @return true if peers have had one lease to appear in the routing table
+     */
+    public boolean isReady() {
+        return System.currentTimeMillis() >= startupEnd;
+    }
+
+    /**
+     * Get live scheduler instances
+     *
+     * @return sorted list of app instance IDs
+     */
+    public List<String> getMembers() {
+        return getMembership().members;
+    }
+
+    public String getOwner(String job) {
+        return getOwner(getMembership().ring, job);
+    }
+
+    /**
+     * Check if this instance should fire a job
+     *
+     * @param job name
+     * @return NOT_OWNER if the job belongs to another instance, OWNER if it can be fired now
+     *         or HANDOFF if the previous owner has not released the job yet
+     */
+    public int checkOwnership(String job) {
+        Membership m = getMembership();
+        if (!Platform.getInstance().getOrigin().equals(getOwner(m.ring, job))) {
+            return NOT_OWNER;
+        }
+        Future<Boolean> handoff = getHandoff(m, job);
+        return handoff.succeeded() && handoff.result()? OWNER : HANDOFF;
+    }
+
+    /**
+     * Wait for the handoff of a job to this instance
+     *
+     * @param job name
+     * @return future of true when the job can be fired or false if it has moved again
+     */
+    public Future<Boolean> getHandoff(String job) {
+        return getHandoff(getMembership(), job);
+    }
+
+    /**
+     * Confirm to a new owner that this instance no longer fires a job
+     *
+     * @param job name
+     * @return true if released
+     */
+    public boolean hasReleased(String job) {
+        return !Platform.getInstance().getOrigin().equals(getOwner(job));
+    }
+
+    private Future<Boolean> getHandoff(Membership m, String job) {
+        Promise<Boolean> handoff = m.handoffs.get(job);
+        if (handoff == null) {
+            Promise<Boolean> promise = Promise.promise();
+            handoff = m.handoffs.putIfAbsent(job, promise);
+            if (handoff == null) {
+                handoff = promise;
+                startHandoff(m, job, promise);
+            }
+        }
+        return handoff.future();
+    }
+
+    private void startHandoff(Membership m, String job, Promise<Boolean> promise) {
+        String me = Platform.getInstance().getOrigin();
+        boolean startup = m.previous == null || m.since < startupEnd;
+        String previous = startup? getPreviousOwner(m.members, job) : getOwner(m.previous, job);
+        if (previous == null || previous.equals(me)) {
+            // nobody else could have fired the job
+            waitUntil(startup? startupEnd : 0, promise);
+        } else if (!m.members.contains(previous)) {
+            // the previous owner has left and it can be its last trigger within the lease period
+            waitUntil(Math.max(m.since + lease, startup? startupEnd : 0), promise);
+        } else {
+            log.info("Waiting for {} to release job {}", previous, job);
+            confirm(m, job, previous, promise);
+        }
+    }
+
+    private void waitUntil(long time, Promise<Boolean> promise) {
+        long delay = time - System.currentTimeMillis();
+        if (delay > 0) {
+            Platform.getInstance().getVertx().setTimer(delay, t -> promise.tryComplete(true));
+        } else {
+            promise.tryComplete(true);
+        }
+    }
+
+    private void confirm(Membership m, String job, String previous, Promise<Boolean> promise) {
+        if (current.handoffs != m.handoffs) {
+            // membership has changed so the job is re-evaluated by a new handoff
+            promise.tryComplete(false);
+            return;
+        }
+        EventEnvelope request = new EventEnvelope().setTo(SCHEDULER_SERVICE + "@" + previous)
+                .setHeader(MainScheduler.TYPE, MainScheduler.RELEASE)
+                .setHeader(MainScheduler.ORIGIN, Platform.getInstance().getOrigin())
+                .setHeader(MainScheduler.JOB_ID, job);
+        try {
+            PostOffice.getInstance().asyncRequest(request, lease)
+                .onSuccess(response -> {
+                    if (Boolean.TRUE.equals(response.getBody())) {
+                        log.info("Job {} released by {}", job, previous);
+                        promise.tryComplete(true);
+                    } else {
+                        retryConfirm(m, job, previous, promise);
+                    }
+                })
+                .onFailure(e -> retryConfirm(m, job, previous, promise));
+        } catch (IOException e) {
+            retryConfirm(m, job, previous, promise);
+        }
+    }
+
+    private void retryConfirm(Membership m, String job, String previous, Promise<Boolean> promise) {
+        // the previous owner has not seen the membership change yet or it is not reachable
+        Platform.getInstance().getVertx().setTimer(CONFIRM_INTERVAL, t -> confirm(m, job, previous, promise));
+    }
+
+    private String getPreviousOwner(List<String> members, String job) {
+        String me = Platform.getInstance().getOrigin();
+        List<String> others = new ArrayList<>(members);
+        others.remove(me);
+        return others.isEmpty()? null : getOwner(getRing(others), job);
+    }
+
+    private Membership getMembership() {
+        long version = PostOffice.getRouteVersion();
+        long now = System.currentTimeMillis();
+        Membership m = current;
+        if (m == null || m.version != version || now > m.expiry) {
+            synchronized (this) {
+                m = current;
+                if (m == null || m.version != version || now > m.expiry) {
+                    List<String> members = discover();
+                    if (m != null && m.members.equals(members)) {
+                        m = new Membership(members, m.ring, m.previous, version, now + lease, m.since, m.handoffs);
+                    } else {
+                        m = new Membership(members, getRing(members), m == null? null : m.ring,
+                                            version, now + lease, now, new ConcurrentHashMap<>());
+                        log.info("Scheduler members {}", members);
+                    }
+                    current = m;
+                }
+            }
+        }
+        return m;
+    }
+    private List<String> discover() {
+        TreeSet<String> members = new TreeSet<>();
+        members.add(Platform.getInstance().getOrigin());
+        Map<String, String> peers = PostOffice.getInstance().getCloudRoutes().get(SCHEDULER_SERVICE);
+        if (peers != null) {
+            members.addAll(peers.keySet());
+        }
+        return Collections.unmodifiableList(new ArrayList<>(members));
+    }
+
+    private TreeMap<Integer, String> getRing(List<String> members) {
+        TreeMap<Integer, String> ring = new TreeMap<>();
+        for (String origin: members) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(origin + "#" + i), origin);
+            }
+        }
+        return ring;
+    }
+
+    private String getOwner(TreeMap<Integer, String> ring, String job) {
+        Map.Entry<Integer, String> entry = ring.ceilingEntry(hash(job));
+        return entry == null? ring.firstEntry().getValue() : entry.getValue();
+    }
+
+    private int hash(String text) {
+        int h = FNV_32_INIT;
+        for (byte b: text.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= FNV_32_PRIME;
+        }
+        return h;
+    }
+
+    private static class Membership {
+        private final List<String> members;
+        private final TreeMap<Integer, String> ring;
+        private final TreeMap<Integer, String> previous;
+        private final long version;
+        private final long expiry;
+        private final long since;
+        private final Map<String, Promise<Boolean>> handoffs;
+
+        private Membership(List<String> members, TreeMap<Integer, String> ring, TreeMap<Integer, String> previous,
+                           long version, long expiry, long since, Map<String, Promise<Boolean>> handoffs) {
+            this.members = members;
+            this.ring = ring;
+            this.previous = previous;
+            this.version = version;
+            this.expiry = expiry;
+            this.since = since;
+            this.handoffs = handoffs;
+        }
+    }
+
+}
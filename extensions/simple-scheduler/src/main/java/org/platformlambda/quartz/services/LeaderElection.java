@@ -0,0 +1,58 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.quartz.services;
+
+import org.platformlambda.core.system.Platform;
+
+/**
+ * Leader election protocol
+ * ------------------------
+ * <p>
+ * When there are more than one instance of the scheduler running,
+ * the first one from a sorted list of app instance ID is the leader.
+ * <p>
+ * Since the routing table may not list all peers right after startup,
+ * an instance does not claim leadership until the startup grace period of
+ * JobSharding is over.
+ * <p>
+ * Scheduled jobs are distributed to all instances by JobSharding.
+ * The leader is reported by the admin endpoint for reference.
+ */
+public class LeaderElection {
+
+    private static final LeaderElection instance = new LeaderElection();
+
+    private LeaderElection() {
+        // singleton
+    }
+
+    public static LeaderElection getInstance() {
+        return instance;
+    }
+
+    public boolean isLeader() {
+        return JobSharding.getInstance().isReady() && Platform.getInstance().getOrigin().equals(getLeader());
+    }
+
+    public String getLeader() {
+        // membership is cached and sorted by app instance ID
+        return JobSharding.getInstance().getMembers().get(0);
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.system.Platform;
+import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.quartz.MainScheduler;
+import org.platformlambda.quartz.services.JobSharding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class JobShardingTest {
+
+    private static final int JOBS = 100;
+
+    @Test
+    public void handoffTest() throws InterruptedException {
+        PostOffice po = PostOffice.getInstance();
+        JobSharding sharding = JobSharding.getInstance();
+        String me = Platform.getInstance().getOrigin();
+        // a standalone scheduler owns all jobs
+        for (int i=0; i < JOBS; i++) {
+            Assert.assertEquals(me, sharding.getOwner("job"+i));
+        }
+        // jobs are not fired until peers have had one lease to appear in the routing table
+        if (!sharding.isReady()) {
+            Assert.assertEquals(JobSharding.HANDOFF, sharding.checkOwnership("job0"));
+        }
+        Assert.assertEquals(JobSharding.OWNER, waitForHandoff(sharding, "job0"));
+        Assert.assertTrue(sharding.isReady());
+        List<String> moved = new ArrayList<>();
+        List<String> stayed = new ArrayList<>();
+        ConcurrentMap<String, String> peers = new ConcurrentHashMap<>();
+        peers.put("0000", "APP");
+        po.getCloudRoutes().put(MainScheduler.SCHEDULER_SERVICE, peers);
+        PostOffice.invalidateRoutes();
+        try {
+            Assert.assertEquals(2, sharding.getMembers().size());
+            for (int i=0; i < JOBS; i++) {
+                String job = "job"+i;
+                if (me.equals(sharding.getOwner(job))) {
+                    // a job that stays with this instance can be fired immediately
+                    Assert.assertEquals(JobSharding.OWNER, sharding.checkOwnership(job));
+                    stayed.add(job);
+                } else {
+                    // a job that moves to the new peer is released immediately
+                    Assert.assertEquals(JobSharding.NOT_OWNER, sharding.checkOwnership(job));
+                    Assert.assertTrue(sharding.hasReleased(job));
+                    moved.add(job);
+                }
+            }
+        } finally {
+            po.getCloudRoutes().remove(MainScheduler.SCHEDULER_SERVICE);
+            PostOffice.invalidateRoutes();
+        }
+        // jobs are distributed to both instances
+        Assert.assertFalse(moved.isEmpty());
+        Assert.assertFalse(stayed.isEmpty());
+        // jobs taken over from the departed peer are fired after the lease period
+        Assert.assertEquals(1, sharding.getMembers().size());
+        for (String job: moved) {
+            Assert.assertEquals(JobSharding.HANDOFF, sharding.checkOwnership(job));
+            Assert.assertFalse(sharding.hasReleased(job));
+        }
+        for (String job: stayed) {
+            Assert.assertEquals(JobSharding.OWNER, sharding.checkOwnership(job));
+        }
+        for (String job: moved) {
+            Assert.assertEquals(JobSharding.OWNER, waitForHandoff(sharding, job));
+        }
+    }
+
+    private int waitForHandoff(JobSharding sharding, String job) throws InterruptedException {
+        for (int i=0; i < 50 && sharding.checkOwnership(job) == JobSharding.HANDOFF; i++) {
+            Thread.sleep(100);
+        }
+        return sharding.checkOwnership(job);
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.system.Platform;
+import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.quartz.MainScheduler;
+import org.platformlambda.quartz.services.JobSharding;
+import org.platformlambda.quartz.services.LeaderElection;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class LeaderElectionTest {
+
+    @Test
+    public void electionTest() throws InterruptedException {
+        PostOffice po = PostOffice.getInstance();
+        LeaderElection election = LeaderElection.getInstance();
+        JobSharding sharding = JobSharding.getInstance();
+        String me = Platform.getInstance().getOrigin();
+        // leadership is not claimed until peers have had one lease to appear in the routing table
+        Assert.assertEquals(me, election.getLeader());
+        Assert.assertTrue(!election.isLeader() || sharding.isReady());
+        for (int i=0; i < 50 && !sharding.isReady(); i++) {
+            Thread.sleep(100);
+        }
+        // a standalone scheduler is the leader
+        Assert.assertTrue(election.isLeader());
+        // a peer with a lower instance ID takes over when the routing table changes
+        ConcurrentMap<String, String> peers = new ConcurrentHashMap<>();
+        peers.put("0000", "APP");
+        po.getCloudRoutes().put(MainScheduler.SCHEDULER_SERVICE, peers);
+        PostOffice.invalidateRoutes();
+        try {
+            Assert.assertEquals("0000", election.getLeader());
+            Assert.assertFalse(election.isLeader());
+        } finally {
+            po.getCloudRoutes().remove(MainScheduler.SCHEDULER_SERVICE);
+            PostOffice.invalidateRoutes();
+        }
+        // leadership fails over when the peer leaves
+        Assert.assertEquals(me, election.getLeader());
+    }
+
+}
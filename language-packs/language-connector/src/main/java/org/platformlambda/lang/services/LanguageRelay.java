@@ -22,19 +22,10 @@ import org.platformlambda.core.annotations.EventInterceptor;
 import org.platformlambda.core.annotations.ZeroTracing;
 import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.LambdaFunction;
-import org.platformlambda.core.serializers.MsgPack;
-import org.platformlambda.core.system.PostOffice;
-import org.platformlambda.core.util.CryptoApi;
-import org.platformlambda.core.websocket.common.MultipartPayload;
-import org.platformlambda.core.websocket.common.WsConfigurator;
 import org.platformlambda.lang.websocket.server.LanguageConnector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -42,16 +33,7 @@ import java.util.Map;
 @ZeroTracing
 public class LanguageRelay implements LambdaFunction {
     private static final Logger log = LoggerFactory.getLogger(LanguageRelay.class);
-    private static final MsgPack msgPack = new MsgPack();
-    private static final CryptoApi crypto = new CryptoApi();
-
-    private static final String TYPE = LanguageConnector.TYPE;
-    private static final String EVENT = LanguageConnector.EVENT;
-    private static final String BLOCK = LanguageConnector.BLOCK;
-    private static final String ID = MultipartPayload.ID;
-    private static final String COUNT = MultipartPayload.COUNT;
-    private static final String TOTAL = MultipartPayload.TOTAL;
-    private static final int OVERHEAD = MultipartPayload.OVERHEAD;
+
     private static final LanguageRelay instance = new LanguageRelay();
 
     private LanguageRelay() {
@@ -70,14 +52,16 @@ public class LanguageRelay implements LambdaFunction {
             // Avoid looping by disabling broadcast after delivery
             List<String> targets = LanguageConnector.getDestinations(to);
             if (!targets.isEmpty()) {
+                // encode and segment the event once for all targets
+                List<byte[]> frames = LanguageConnector.getFrames(event);
                 if (event.getBroadcastLevel() > 0) {
                     // broadcast to multiple clients that serve the route
                     for (String token: targets) {
-                        send(token, event.setBroadcastLevel(0));
+                        send(token, frames, null);
                     }
                 } else {
-                    String token = getNextAvailable(targets);
-                    send(token, event.setBroadcastLevel(0));
+                    String token = targets.size() == 1? targets.get(0) : LanguageConnector.getLeastBusy(targets);
+                    send(token, frames, event);
                 }
 
             } else {
@@ -87,48 +71,10 @@ public class LanguageRelay implements LambdaFunction {
         return null;
     }
 
-    private void send(String token, EventEnvelope event) throws IOException {
-        String txPath = LanguageConnector.getTxPathFromToken(token);
-        if (txPath != null) {
-            if (event.getBroadcastLevel() == 2) {
-                event.setBroadcastLevel(3);
-            }
-            // relay the event
-            Map<String, Object> response = new HashMap<>();
-            response.put(TYPE, EVENT);
-            response.put(EVENT, LanguageConnector.mapFromEvent(event));
-            byte[] payload = msgPack.pack(response);
-            int maxPayload = WsConfigurator.getInstance().getMaxBinaryPayload() - OVERHEAD;
-            if (payload.length > maxPayload) {
-                int total = (payload.length / maxPayload) + (payload.length % maxPayload == 0 ? 0 : 1);
-                ByteArrayInputStream in = new ByteArrayInputStream(payload);
-                for (int i = 0; i < total; i++) {
-                    // To distinguish from a normal payload, the segmented block MUST not have a "TO" value.
-                    Map<String, Object> block = new HashMap<>();
-                    block.put(TYPE, BLOCK);
-                    EventEnvelope inner = new EventEnvelope();
-                    inner.setHeader(ID, event.getId());
-                    inner.setHeader(COUNT, i + 1);
-                    inner.setHeader(TOTAL, total);
-                    byte[] segment = new byte[maxPayload];
-                    int size = in.read(segment);
-                    inner.setBody(size == maxPayload ? segment : Arrays.copyOfRange(segment, 0, size));
-                    block.put(BLOCK, LanguageConnector.mapFromEvent(inner));
-                    PostOffice.getInstance().send(txPath, msgPack.pack(block));
-                    log.debug("Sending block {} of {} to {} via {}", i + 1, total, event.getTo(), txPath);
-                }
-            } else {
-                PostOffice.getInstance().send(txPath, payload);
-            }
-
-        } else {
+    private void send(String token, List<byte[]> frames, EventEnvelope request) throws Exception {
+        if (!LanguageConnector.send(token, frames, request)) {
             log.warn("Event dropped because {} not present", token);
         }
     }
 
-    private String getNextAvailable(List<String> targets) {
-        int i = targets.size() == 1? 0 : crypto.nextInt(targets.size());
-        return targets.get(i);
-    }
-
 }
@@ -43,6 +43,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @WebSocketService("lang")
 public class LanguageConnector implements LambdaFunction {
@@ -85,12 +86,17 @@ public class LanguageConnector implements LambdaFunction {
     private static final String SYSTEM_ALERT = "system.alerts";
     private static final String SYSTEM_CONFIG = "system.config";
     private static final String MAX_PAYLOAD = "max.payload";
+    private static final String RELAY_INSTANCES = "language.relay.instances";
+    private static final String INBOX_INSTANCES = "language.inbox.instances";
+    private static final long PENDING_EXPIRY = 60000;
     private static final String COUNT = MultipartPayload.COUNT;
     private static final String TOTAL = MultipartPayload.TOTAL;
     private static final int OVERHEAD = MultipartPayload.OVERHEAD;
+    private static final String MSG_ID = MultipartPayload.ID;
 
     private static final SimpleCache cache = SimpleCache.createCache("payload.segmentation", 60000);
     private static String apiKey, inboxRoute;
+    private static int relayInstances = 1;
 
     private enum State {
         OPEN, AUTHENTICATED
@@ -109,7 +115,89 @@ public class LanguageConnector implements LambdaFunction {
 
     public static List<String> getDestinations(String route) {
         List<String> result = routingTable.get(route);
-        return result == null? new ArrayList<>() : new ArrayList<>(result);
+        // the copy-on-write list is a consistent snapshot so it can be returned as is
+        return result == null? Collections.emptyList() : result;
+    }
+
+    /**
+     * Select the connection with the least number of outstanding requests
+     *
+     * @param targets tokens of connections that serve a route
+     * @return token
+     */
+    public static String getLeastBusy(List<String> targets) {
+        String selected = null;
+        int min = Integer.MAX_VALUE;
+        for (String token: targets) {
+            ConnectionStatus client = connections.get(token);
+            if (client != null) {
+                int n = client.getOutstanding();
+                if (n < min) {
+                    min = n;
+                    selected = token;
+                }
+            }
+        }
+        return selected == null? targets.get(0) : selected;
+    }
+
+    /**
+     * Encode an event for delivery to a language pack.
+     * A large event is segmented into blocks so that it can be sent to one or more connections
+     * without encoding it again.
+     *
+     * @param event to be delivered
+     * @return one or more websocket frames
+     * @throws IOException in case of encoding error
+     */
+    public static List<byte[]> getFrames(EventEnvelope event) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        response.put(TYPE, EVENT);
+        response.put(EVENT, mapFromEvent(event));
+        byte[] payload = msgPack.pack(response);
+        int maxPayload = WsConfigurator.getInstance().getMaxBinaryPayload() - OVERHEAD;
+        if (payload.length <= maxPayload) {
+            return Collections.singletonList(payload);
+        }
+        int total = (payload.length / maxPayload) + (payload.length % maxPayload == 0 ? 0 : 1);
+        List<byte[]> frames = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            // To distinguish from a normal payload, the segmented block MUST not have a "TO" value.
+            int start = i * maxPayload;
+            int end = Math.min(start + maxPayload, payload.length);
+            EventEnvelope inner = new EventEnvelope();
+            inner.setId(event.getId());
+            inner.setHeader(MSG_ID, event.getId());
+            inner.setHeader(COUNT, i + 1);
+            inner.setHeader(TOTAL, total);
+            inner.setBody(Arrays.copyOfRange(payload, start, end));
+            Map<String, Object> block = new HashMap<>();
+            block.put(TYPE, BLOCK);
+            block.put(BLOCK, mapFromEvent(inner));
+            frames.add(msgPack.pack(block));
+        }
+        return frames;
+    }
+
+    /**
+     * Send websocket frames to a language pack connection in order
+     *
+     * @param token of the connection
+     * @param frames of an encoded event
+     * @param request to be tracked as outstanding until the client replies, or null
+     * @return true if the connection is present
+     * @throws IOException in case of delivery error
+     */
+    public static boolean send(String token, List<byte[]> frames, EventEnvelope request) throws IOException {
+        ConnectionStatus client = connections.get(token);
+        if (client == null) {
+            return false;
+        }
+        if (request != null && request.getReplyTo() != null) {
+            client.addPending(request.getReplyTo(), request.getCorrelationId(), request.getId());
+        }
+        client.send(frames);
+        return true;
     }
 
     public static boolean hasRoute(String route) {
@@ -178,7 +266,11 @@ public class LanguageConnector implements LambdaFunction {
     public static void initialize() throws IOException {
         if (apiKey == null) {
             apiKey = getApiKey();
-            log.info("Started");
+            Utility util = Utility.getInstance();
+            AppConfigReader config = AppConfigReader.getInstance();
+            relayInstances = Math.max(1, util.str2int(config.getProperty(RELAY_INSTANCES, "1")));
+            int inboxInstances = Math.max(1, util.str2int(config.getProperty(INBOX_INSTANCES, "1")));
+            log.info("Started with {} relay and {} inbox instances", relayInstances, inboxInstances);
             LambdaFunction registry = (headers, body, instance) -> {
                 if (headers.containsKey(TYPE)) {
                     String type = headers.get(TYPE);
@@ -192,8 +284,9 @@ public class LanguageConnector implements LambdaFunction {
                                         "Unable to advertise " + route + " because route is reserved");
                             } else {
                                 if (!routingTable.containsKey(route)) {
-                                    routingTable.put(route, new ArrayList<>());
-                                    Platform.getInstance().register(route, LanguageRelay.getInstance(), 1);
+                                    routingTable.put(route, new CopyOnWriteArrayList<>());
+                                    Platform.getInstance().register(route, LanguageRelay.getInstance(),
+                                                                    relayInstances);
                                 }
                                 List<String> clients = routingTable.get(route);
                                 clients.add(token);
@@ -227,13 +320,13 @@ public class LanguageConnector implements LambdaFunction {
                 return null;
             };
             Platform platform = Platform.getInstance();
+            // the registry updates the routing table so it must run as a single instance
             platform.registerPrivate(LANGUAGE_REGISTRY, registry, 1);
-            platform.registerPrivate(LANGUAGE_INBOX, new LanguageInbox(), 1);
+            platform.registerPrivate(LANGUAGE_INBOX, new LanguageInbox(), inboxInstances);
             platform.registerPrivate(PUB_SUB_CONTROLLER, new PubSubController(), 1);
             platform.registerPrivate(DEFERRED_DELIVERY, new DeferredDelivery(), 1);
             LanguageConnector.inboxRoute = LANGUAGE_INBOX + "@" + platform.getOrigin();
             // setup stream manager
-            Utility util = Utility.getInstance();
             LambdaFunction streamManager = (headers, body, instance) -> {
                 if (CREATE_STREAM.equals(headers.get(TYPE)) && headers.containsKey(EXPIRY)) {
                     int expiry = Math.max(1, util.str2int(headers.get(EXPIRY)));
@@ -246,7 +339,7 @@ public class LanguageConnector implements LambdaFunction {
                 }
                 return null;
             };
-            platform.registerPrivate(STREAM_MANAGER, streamManager, 1);
+            platform.registerPrivate(STREAM_MANAGER, streamManager, inboxInstances);
         }
     }
 
@@ -356,6 +449,7 @@ public class LanguageConnector implements LambdaFunction {
                                                     cache.remove(id);
                                                     Map<String, Object> evt = (Map<String, Object>) msgPack.unpack(buffer.toByteArray());
                                                     EventEnvelope request = eventFromMap((Map<String, Object>) evt.get(EVENT));
+                                                    client.removePending(request.getTo(), request.getCorrelationId());
                                                     po.send(mapReplyTo(token, request));
                                                 }
                                             }
@@ -364,6 +458,7 @@ public class LanguageConnector implements LambdaFunction {
                                     // regular events
                                     if (EVENT.equals(type) && event.containsKey(EVENT)) {
                                         EventEnvelope request = eventFromMap((Map<String, Object>) event.get(EVENT));
+                                        client.removePending(request.getTo(), request.getCorrelationId());
                                         po.send(mapReplyTo(token, request));
                                     }
                                 }
@@ -373,11 +468,16 @@ public class LanguageConnector implements LambdaFunction {
                     break;
                 case WsEnvelope.STRING:
                     // this is likely a keep-alive message from the language pack client
-                    // rxPath is not used as we just want to echo back the keep-alive message.
-                    // rxPath = headers.get(WsEnvelope.ROUTE);
+                    rxPath = headers.get(WsEnvelope.ROUTE);
                     txPath = headers.get(WsEnvelope.TX_PATH);
                     String message = (String) body;
                     po.send(txPath, message);
+                    // clear outstanding requests that the client has not responded to
+                    token = tokens.get(rxPath);
+                    ConnectionStatus client = token == null? null : connections.get(token);
+                    if (client != null) {
+                        client.expirePending(PENDING_EXPIRY);
+                    }
                     break;
                 default:
                     // this should not happen
@@ -501,6 +601,8 @@ public class LanguageConnector implements LambdaFunction {
         private final String txPath;
         private final String token;
         private final Date created;
+        // reply address and correlation ID of outstanding requests -> time sent
+        private final ConcurrentMap<String, Long> pending = new ConcurrentHashMap<>();
 
         public ConnectionStatus(String rxPath, String txPath, String token) {
             this.created = new Date();
@@ -533,6 +635,51 @@ public class LanguageConnector implements LambdaFunction {
             return created;
         }
 
+        public int getOutstanding() {
+            return pending.size();
+        }
+
+        /**
+         * Track a request until the client replies.
+         * Requests that share a reply address are told apart by their correlation IDs.
+         * A request without correlation ID is tracked by its event ID and is cleared by expiry.
+         *
+         * @param replyTo of the request
+         * @param cid correlation ID or null
+         * @param id of the request event
+         */
+        public void addPending(String replyTo, String cid, String id) {
+            pending.put(replyTo + "/" + (cid == null? "#" + id : cid), System.currentTimeMillis());
+        }
+
+        public void removePending(String replyTo, String cid) {
+            if (replyTo != null && cid != null) {
+                pending.remove(replyTo + "/" + cid);
+            }
+        }
+
+        public void expirePending(long expiry) {
+            long now = System.currentTimeMillis();
+            pending.values().removeIf(sent -> now - sent > expiry);
+        }
+
+        /**
+         * Frames of an event are sent together so that the blocks of a segmented event
+         * are not interleaved with other events to this connection.
+         * <p>
+         * This does not order events across relay instances. Events for a route keep their order
+         * only when the relay runs with a single instance.
+         *
+         * @param frames of an encoded event
+         * @throws IOException in case of delivery error
+         */
+        public synchronized void send(List<byte[]> frames) throws IOException {
+            PostOffice po = PostOffice.getInstance();
+            for (byte[] b: frames) {
+                po.send(txPath, b);
+            }
+        }
+
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.actuator;
+
+import org.platformlambda.core.serializers.SimpleMapper;
+import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.core.util.CryptoApi;
+import org.platformlambda.core.util.Utility;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cached actuator views
+ * <p>
+ * A snapshot holds the result of an actuator query together with its serialized JSON and ETag.
+ * Views that depend on the routing table are tagged with the route version so that they are
+ * rebuilt only after a service is registered or released or the cloud routing table changes.
+ * Static views never expire.
+ * <p>
+ * This allows frequent polling by probes and dashboards without querying the service registry.
+ */
+public class ActuatorSnapshot {
+    public static final long STATIC = -1;
+    private static final long MAX_AGE = 60000;
+    private static final CryptoApi crypto = new CryptoApi();
+    private static final ActuatorSnapshot instance = new ActuatorSnapshot();
+    private final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    private ActuatorSnapshot() {
+        // singleton
+    }
+
+    public static ActuatorSnapshot getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get a current snapshot
+     *
+     * @param type of actuator view
+     * @return snapshot or null if it is not available or outdated
+     */
+    public Snapshot get(String type) {
+        Snapshot s = snapshots.get(type);
+        if (s == null) {
+            return null;
+        }
+        if (s.version == STATIC) {
+            return s;
+        }
+        return s.version == PostOffice.getRouteVersion() &&
+                System.currentTimeMillis() - s.created < MAX_AGE? s : null;
+    }
+
+    /**
+     * Save a snapshot
+     *
+     * @param type of actuator view
+     * @param version of the routing table when the view was built or STATIC
+     * @param body of the view
+     * @return snapshot
+     */
+    public Snapshot put(String type, long version, Map<String, Object> body) {
+        Snapshot s = new Snapshot(version, body);
+        snapshots.put(type, s);
+        return s;
+    }
+
+    public static class Snapshot {
+        private final long version;
+        private final long created = System.currentTimeMillis();
+        private final Map<String, Object> body;
+        private final byte[] json;
+        private final String eTag;
+
+        private Snapshot(long version, Map<String, Object> body) {
+            this.version = version;
+            this.body = body;
+            this.json = SimpleMapper.getInstance().getMapper().writeValueAsBytes(body);
+            this.eTag = "\"" + Utility.getInstance().bytes2hex(crypto.getSHA1(json)) + "\"";
+        }
+
+        public Map<String, Object> getBody() {
+            return body;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+    }
+
+}
@@ -72,6 +72,9 @@ public class InfoService implements LambdaFunction {
     private static final String APP_PROPS = "properties";
     private static final String MISSING = "missing";
     private static final String JOURNAL = "journal";
+    private static final String ADMISSION = "admission";
+    private static final String MULTICAST = "multicast";
+    private static final String QUEUES = "queues";
     private static final Date START_TIME = new Date();
     private final String description;
     private final Boolean isServiceMonitor;
@@ -86,6 +89,20 @@ public class InfoService implements LambdaFunction {
     public Object handleEvent(Map<String, String> headers, Object body, int instance)
             throws AppException, TimeoutException {
         String type = headers.getOrDefault(TYPE, INFO);
+        if (ROUTES.equals(type) && isServiceMonitor) {
+            throw new IllegalArgumentException("Routing table is not visible from a presence monitor - " +
+                    "please try it from a regular application instance");
+        }
+        // routing table and library list are served from snapshots until they change
+        ActuatorSnapshot snapshots = ActuatorSnapshot.getInstance();
+        if (ROUTES.equals(type) || LIB.equals(type)) {
+            ActuatorSnapshot.Snapshot cached = snapshots.get(type);
+            if (cached != null) {
+                return cached.getBody();
+            }
+        }
+        // take the version before building the view so that any concurrent change triggers a rebuild
+        long version = PostOffice.getRouteVersion();
         Platform platform = Platform.getInstance();
         Map<String, Object> result = new HashMap<>();
         Map<String, Object> app = new HashMap<>();
@@ -104,30 +121,36 @@ public class InfoService implements LambdaFunction {
             app.put(INSTANCE, appId);
         }
         if (ROUTES.equals(type)) {
-            if (isServiceMonitor) {
-                throw new IllegalArgumentException("Routing table is not visible from a presence monitor - " +
-                        "please try it from a regular application instance");
-            } else {
-                PostOffice po = PostOffice.getInstance();
-                List<String> journaledRoutes = po.getJournaledRoutes();
-                if (journaledRoutes.size() > 1) {
-                    Collections.sort(journaledRoutes);
-                }
-                result.put(ROUTING, getRoutingTable());
-                result.put(JOURNAL, journaledRoutes);
-                // add route substitution list if any
-                Map<String, String> substitutions = po.getRouteSubstitutionList();
-                if (!substitutions.isEmpty()) {
-                    result.put(ROUTE_SUBSTITUTION, substitutions);
-                }
+            PostOffice po = PostOffice.getInstance();
+            List<String> journaledRoutes = po.getJournaledRoutes();
+            if (journaledRoutes.size() > 1) {
+                Collections.sort(journaledRoutes);
+            }
+            result.put(ROUTING, getRoutingTable());
+            result.put(JOURNAL, journaledRoutes);
+            // add route substitution list if any
+            Map<String, String> substitutions = po.getRouteSubstitutionList();
+            if (!substitutions.isEmpty()) {
+                result.put(ROUTE_SUBSTITUTION, substitutions);
             }
+            return snapshots.put(ROUTES, version, result).getBody();
 
         } else if (LIB.equals(type)) {
             result.put(LIBRARY, util.getLibraryList());
+            return snapshots.put(LIB, ActuatorSnapshot.STATIC, result).getBody();
 
         } else if (ENV.equals(type)) {
             result.put(ENV, getEnv());
             result.put(ROUTING, getRegisteredServices());
+            result.put(QUEUES, getQueueMetrics());
+            Map<String, Object> admission = getAdmissionMetrics();
+            if (!admission.isEmpty()) {
+                result.put(ADMISSION, admission);
+            }
+            Map<String, Object> multicast = PostOffice.getInstance().getMulticastMetrics();
+            if (!multicast.isEmpty()) {
+                result.put(MULTICAST, multicast);
+            }
 
         } else {
             // java VM information
@@ -237,6 +260,38 @@ public class InfoService implements LambdaFunction {
         return result;
     }
 
+    private Map<String, Object> getQueueMetrics() {
+        Map<String, Object> result = new HashMap<>();
+        Map<String, ServiceDef> map = Platform.getInstance().getLocalRoutingTable();
+        for (String route: map.keySet()) {
+            ServiceDef service = map.get(route);
+            ServiceQueue queue = service.getManager();
+            if (queue != null) {
+                Map<String, Object> metrics = new HashMap<>();
+                metrics.put("depth", queue.getBacklog());
+                metrics.put("free_workers", queue.getFreeWorkers());
+                metrics.put("concurrency", service.getConcurrency());
+                metrics.put("read", queue.getReadCounter());
+                metrics.put("write", queue.getWriteCounter());
+                result.put(route, metrics);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Object> getAdmissionMetrics() {
+        Map<String, Object> result = new HashMap<>();
+        Map<String, ServiceDef> map = Platform.getInstance().getLocalRoutingTable();
+        for (String route: map.keySet()) {
+            ServiceQueue queue = map.get(route).getManager();
+            if (queue != null && (queue.getAdmissionPolicy() != null ||
+                    queue.getRejectedCounter() > 0 || queue.getExpiredCounter() > 0)) {
+                result.put(route, queue.getAdmissionMetrics());
+            }
+        }
+        return result;
+    }
+
     private Map<String, Object> getEnv() {
         Map<String, Object> result = new HashMap<>();
         Utility util = Utility.getInstance();
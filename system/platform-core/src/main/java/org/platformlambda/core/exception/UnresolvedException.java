@@ -0,0 +1,40 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.exception;
+
+/**
+ * Received in place of an exception whose class is not allowed to be instantiated by the receiver.
+ * The original class name is retained for logging and error handling.
+ */
+public class UnresolvedException extends AppException {
+
+    private static final long serialVersionUID = 4217803592317042815L;
+
+    private final String originalClass;
+
+    public UnresolvedException(int status, String message, String originalClass) {
+        super(status, message);
+        this.originalClass = originalClass;
+    }
+
+    public String getOriginalClass() {
+        return originalClass;
+    }
+
+}
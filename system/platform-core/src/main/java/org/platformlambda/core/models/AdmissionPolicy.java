@@ -0,0 +1,115 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+package org.platformlambda.core.models;
+
+/**
+ * Admission policy for a service route
+ * <p>
+ * An admission policy protects an overloaded service by limiting the backlog of events
+ * waiting for a free worker. A value of zero means no limit.
+ * <p>
+ * Shed modes when the backlog limit is reached:
+ * REJECT - the incoming event is rejected with status 503 to its replyTo address
+ * DROP_OLDEST - the oldest queued event is rejected with status 503 to make room for the incoming event
+ * SPILL - the incoming event is accepted into the disk-backed elastic queue and counted as overflow
+ * <p>
+ * Independent of the shed mode, queued events waiting longer than the max queue delay are rejected
+ * with status 503 and, if deadline is honored, a request is discarded when its caller has timed out.
+ */
+public class AdmissionPolicy {
+
+    public enum ShedMode {
+        REJECT, DROP_OLDEST, SPILL
+    }
+
+    private int maxBacklog = 0;
+    private long maxBacklogBytes = 0;
+    private long maxQueueDelay = 0;
+    private boolean honorDeadline = false;
+    private ShedMode shedMode = ShedMode.REJECT;
+
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    public AdmissionPolicy setMaxBacklog(int maxBacklog) {
+        this.maxBacklog = Math.max(0, maxBacklog);
+        return this;
+    }
+
+    public long getMaxBacklogBytes() {
+        return maxBacklogBytes;
+    }
+
+    public AdmissionPolicy setMaxBacklogBytes(long maxBacklogBytes) {
+        this.maxBacklogBytes = Math.max(0, maxBacklogBytes);
+        return this;
+    }
+
+    /**
+     * Maximum time an event may wait in the queue
+     *
+     * @return milliseconds
+     */
+    public long getMaxQueueDelay() {
+        return maxQueueDelay;
+    }
+
+    public AdmissionPolicy setMaxQueueDelay(long maxQueueDelay) {
+        this.maxQueueDelay = Math.max(0, maxQueueDelay);
+        return this;
+    }
+
+    public boolean isHonorDeadline() {
+        return honorDeadline;
+    }
+
+    public AdmissionPolicy setHonorDeadline(boolean honorDeadline) {
+        this.honorDeadline = honorDeadline;
+        return this;
+    }
+
+    public ShedMode getShedMode() {
+        return shedMode;
+    }
+
+    public AdmissionPolicy setShedMode(ShedMode shedMode) {
+        this.shedMode = shedMode == null? ShedMode.REJECT : shedMode;
+        return this;
+    }
+
+    /**
+     * Check if an incoming event would exceed the backlog limits
+     *
+     * @param backlog number of queued events
+     * @param backlogBytes size of queued events
+     * @param incomingBytes size of the incoming event
+     * @return true if the event cannot be queued without shedding
+     */
+    public boolean isOverLimit(long backlog, long backlogBytes, int incomingBytes) {
+        return (maxBacklog > 0 && backlog >= maxBacklog) ||
+                (maxBacklogBytes > 0 && backlogBytes + incomingBytes > maxBacklogBytes);
+    }
+
+    public String toString() {
+        return "max_backlog=" + maxBacklog + ", max_backlog_bytes=" + maxBacklogBytes +
+                ", max_queue_delay=" + maxQueueDelay + ", deadline=" + honorDeadline +
+                ", shed=" + shedMode.name().toLowerCase();
+    }
+
+}
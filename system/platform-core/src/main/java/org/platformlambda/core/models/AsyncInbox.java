@@ -30,14 +30,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
 
 public class AsyncInbox extends InboxBase {
     private static final Logger log = LoggerFactory.getLogger(AsyncInbox.class);
 
-    private static final ExecutorService executor = Executors.newCachedThreadPool();
     private final long begin = System.nanoTime();
     private final Future<EventEnvelope> future;
     private final long timeout;
@@ -52,7 +49,7 @@ public class AsyncInbox extends InboxBase {
         this.timeout = Math.max(100, timeout);
         this.future = Future.future(promise -> {
             this.promise = promise;
-            this.id = "r."+ Utility.getInstance().getUuid();
+            this.id = "r."+ Utility.getInstance().getRandomId();
             this.listener = platform.getEventSystem().localConsumer(this.id, new InboxHandler());
             inboxes.put(id, this);
             timer = platform.getVertx().setTimer(timeout, t -> {
@@ -0,0 +1,43 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.models;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An asynchronous function returns a completion stage instead of a result.
+ * <p>
+ * The worker instance is released as soon as the function returns so that it can serve the next event
+ * while the function waits for downstream services. The response is sent to the replyTo address
+ * when the completion stage completes. If it completes exceptionally, an error response is sent.
+ * <p>
+ * The number of outstanding completions per route is limited by "max.async.completions"
+ * in application.properties. Beyond the limit, the worker instance is held until its stage completes.
+ * <p>
+ * An asynchronous function is registered like any other typed lambda function.
+ *
+ * @param <I> input type
+ * @param <O> output type
+ */
+public interface AsyncLambdaFunction<I, O> extends TypedLambdaFunction<I, CompletionStage<O>> {
+
+    @Override
+    CompletionStage<O> handleEvent(Map<String, String> headers, I body, int instance) throws Exception;
+}
@@ -0,0 +1,38 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+package org.platformlambda.core.models;
+
+import java.util.List;
+
+/**
+ * A batch function receives up to a maximum number of events, or whatever has arrived
+ * within a batch window, as a list.
+ * <p>
+ * The function returns a list of results in the same order as the incoming events.
+ * Each result is sent to the replyTo address of the corresponding event if any.
+ * A result may be an EventEnvelope to return status and headers.
+ * The function may return null when none of the events require a reply.
+ * <p>
+ * If the function throws an exception, an error response is sent to the replyTo address of every event.
+ */
+@FunctionalInterface
+public interface BatchLambdaFunction {
+
+    List<Object> handleEvents(List<EventEnvelope> events, int instance) throws Exception;
+
+}
@@ -17,18 +17,71 @@
  */
 package org.platformlambda.core.models;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.*;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Reassembly buffer for a segmented event
+ * <p>
+ * The buffer is allocated once when the block size is known. Each block is copied
+ * directly into its slot on arrival so that the event can be decoded from the buffer
+ * without sorting or concatenation.
+ * <p>
+ * The total number of bytes held by all reassembly buffers in this JVM is capped.
+ * A buffer that cannot be allocated within the cap is rejected and subsequent blocks
+ * of the same event are ignored.
+ */
 public class EventBlocks {
-    private final Map<Integer, byte[]> buffer = new HashMap<>();
+    private static final AtomicLong reservedBytes = new AtomicLong(0);
+    private static long maxReservedBytes = Long.MAX_VALUE;
+    private final BitSet received = new BitSet();
     private final String id;
-    private final int expectedSize;
+    private final int expectedSize, totalBytes;
+    private int blocks = 0, blockSize = -1, length = 0;
+    private long reserved = 0;
+    private byte[] buffer, lastBlock;
+    private boolean rejected = false, released = false;
 
+    /**
+     * Create a reassembly buffer
+     *
+     * @param id of the segmented event
+     * @param expectedSize number of blocks
+     */
     public EventBlocks(String id, int expectedSize) {
+        this(id, expectedSize, -1);
+    }
+
+    /**
+     * Create a reassembly buffer
+     *
+     * @param id of the segmented event
+     * @param expectedSize number of blocks
+     * @param totalBytes size of the event if known or -1 if unknown
+     */
+    public EventBlocks(String id, int expectedSize, int totalBytes) {
         this.id = id;
         this.expectedSize = expectedSize;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Set the maximum number of bytes that may be held by all reassembly buffers in this JVM
+     *
+     * @param maxBytes limit
+     */
+    public static void setMaxReservedBytes(long maxBytes) {
+        maxReservedBytes = maxBytes > 0? maxBytes : Long.MAX_VALUE;
+    }
+
+    public static long getMaxReservedBytes() {
+        return maxReservedBytes;
+    }
+
+    public static long getReservedBytes() {
+        return reservedBytes.get();
     }
 
     public String getId() {
@@ -39,27 +92,183 @@ public class EventBlocks {
         return expectedSize;
     }
 
-    public void put(int n, byte[] block) {
-        buffer.put(n, block);
+    /**
+     * Copy a block into its slot
+     *
+     * @param n block number starting from 1
+     * @param block of bytes
+     * @return true if accepted
+     */
+    public synchronized boolean put(int n, byte[] block) {
+        if (rejected || released || block == null || n < 1 || n > expectedSize || received.get(n)) {
+            return false;
+        }
+        boolean last = n == expectedSize;
+        if (buffer == null) {
+            if (last && expectedSize > 1 && totalBytes <= 0) {
+                // block size is unknown until a regular block arrives
+                lastBlock = block;
+                accept(n);
+                return true;
+            }
+            if (!allocate(last? -1 : block.length, last? block.length : -1)) {
+                return false;
+            }
+        }
+        if (!last && block.length != blockSize) {
+            reject();
+            return false;
+        }
+        if (!write(n, block)) {
+            return false;
+        }
+        if (lastBlock != null) {
+            byte[] pending = lastBlock;
+            lastBlock = null;
+            if (!write(expectedSize, pending)) {
+                return false;
+            }
+        }
+        accept(n);
+        return true;
+    }
+
+    private boolean allocate(int regularSize, int lastSize) {
+        final long capacity;
+        if (expectedSize == 1) {
+            blockSize = lastSize;
+            capacity = lastSize;
+        } else if (regularSize > 0) {
+            blockSize = regularSize;
+            capacity = totalBytes > 0? totalBytes : (long) regularSize * expectedSize;
+        } else {
+            // the last block arrives first and the total size is known
+            long remainder = (long) totalBytes - lastSize;
+            if (remainder <= 0 || remainder % (expectedSize - 1) != 0) {
+                reject();
+                return false;
+            }
+            blockSize = (int) (remainder / (expectedSize - 1));
+            capacity = totalBytes;
+        }
+        if (capacity > Integer.MAX_VALUE - 8 || !reserve(capacity)) {
+            reject();
+            return false;
+        }
+        buffer = new byte[(int) capacity];
+        return true;
+    }
+
+    private boolean write(int n, byte[] block) {
+        long offset = (long) (n - 1) * blockSize;
+        if (offset + block.length > buffer.length) {
+            reject();
+            return false;
+        }
+        System.arraycopy(block, 0, buffer, (int) offset, block.length);
+        if (n == expectedSize) {
+            length = (int) offset + block.length;
+        }
+        return true;
+    }
+
+    private void accept(int n) {
+        received.set(n);
+        blocks++;
+    }
+
+    private boolean reserve(long capacity) {
+        while (true) {
+            long current = reservedBytes.get();
+            if (current + capacity > maxReservedBytes) {
+                return false;
+            }
+            if (reservedBytes.compareAndSet(current, current + capacity)) {
+                reserved = capacity;
+                return true;
+            }
+        }
+    }
+
+    private void reject() {
+        rejected = true;
+        release();
+    }
+
+    /**
+     * Return the reserved bytes to the JVM-wide quota and drop the buffer
+     * <p>
+     * This method is idempotent.
+     */
+    public synchronized void release() {
+        if (!released) {
+            released = true;
+            reservedBytes.addAndGet(-reserved);
+            reserved = 0;
+            buffer = null;
+            lastBlock = null;
+        }
+    }
+
+    public synchronized boolean exists(Integer n) {
+        return n != null && received.get(n);
+    }
+
+    public synchronized int size() {
+        return blocks;
+    }
+
+    /**
+     * The event cannot be reassembled when it exceeds the reassembly quota
+     * or when its blocks are inconsistent.
+     *
+     * @return true if rejected
+     */
+    public synchronized boolean isRejected() {
+        return rejected;
+    }
+
+    public synchronized boolean isComplete() {
+        return !rejected && !released && blocks == expectedSize;
+    }
+
+    /**
+     * Estimated memory held by this buffer
+     *
+     * @return number of bytes
+     */
+    public synchronized int getBytes() {
+        return (int) reserved + (lastBlock == null? 0 : lastBlock.length);
     }
 
-    public boolean exists(Integer n) {
-        return buffer.containsKey(n);
+    /**
+     * Reassembled buffer
+     * <p>
+     * Valid bytes are from zero to getLength(). The buffer must not be modified.
+     *
+     * @return buffer or null if the event is not complete
+     */
+    public synchronized byte[] getBuffer() {
+        return isComplete()? buffer : null;
     }
 
-    public int size() {
-        return buffer.size();
+    public synchronized int getLength() {
+        return isComplete()? length : 0;
     }
 
-    public byte[] toBytes() throws IOException {
-        List<Integer> indexes = new ArrayList<>(buffer.keySet());
-        Collections.sort(indexes);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        for (Integer i: indexes) {
-            out.write(buffer.get(i));
+    /**
+     * Return reassembled event as an exact-size byte array
+     * <p>
+     * Prefer getBuffer() and getLength() to avoid a copy.
+     *
+     * @return bytes or empty array if the event is not complete
+     * @throws IOException reserved for compatibility
+     */
+    public synchronized byte[] toBytes() throws IOException {
+        if (!isComplete()) {
+            return new byte[0];
         }
-        buffer.clear();
-        return out.toByteArray();
+        return length == buffer.length? buffer : Arrays.copyOf(buffer, length);
     }
 
 }
@@ -14,7 +14,9 @@
 package org.platformlambda.core.models;
 
 import org.platformlambda.core.exception.AppException;
+import org.platformlambda.core.serializers.ExceptionCodec;
 import org.platformlambda.core.serializers.MsgPack;
+import org.platformlambda.core.serializers.PackedValue;
 import org.platformlambda.core.serializers.PayloadMapper;
 import org.platformlambda.core.serializers.SimpleMapper;
 import org.platformlambda.core.util.Utility;
@@ -22,8 +24,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.*;
 
 public class EventEnvelope {
@@ -31,6 +31,7 @@ public class EventEnvelope {
 
     private static final MsgPack msgPack = new MsgPack();
     private static final PayloadMapper converter = PayloadMapper.getInstance();
+    private static final ExceptionCodec exceptionCodec = ExceptionCodec.getInstance();
 
     // message-ID
     private static final String ID = "0";
@@ -63,8 +64,12 @@ public class EventEnvelope {
     // optional
     private static final String OPTIONAL = "+";
     private static final String JSON_TRANSPORT = "j";
-    // serialized exception object
+    // serialized exception object (legacy Java serialization)
     private static final String EXCEPTION = "4";
+    // compact exception (class name, message, status, truncated stack frames and cause chain)
+    private static final String EXCEPTION_MAP = "5";
+    // absolute deadline (epoch milliseconds) after which the caller no longer waits for a response
+    private static final String DEADLINE = "D";
     // special header for setting HTTP cookie for rest-automation
     private static final String SET_COOKIE = "set-cookie";
 
@@ -73,14 +78,17 @@ public class EventEnvelope {
     private Integer status;
     private Object body;
     private Object encodedBody;
+    private PackedValue packedBody;
     private byte[] exceptionBytes;
+    private Map<String, Object> exceptionMap;
     private Throwable exception;
     private Float executionTime, roundTrip;
     private boolean endOfRoute = false, binary = true, optional = false, encoded = false, exRestored = false;
     private int broadcastLevel = 0;
+    private long deadline = 0;
 
     public EventEnvelope() {
-        this.id = Utility.getInstance().getUuid();
+        // the event ID is generated when it is first used
     }
 
     public EventEnvelope(byte[] event) throws IOException {
@@ -88,6 +96,9 @@ public class EventEnvelope {
     }
 
     public String getId() {
+        if (id == null) {
+            id = Utility.getInstance().getUniqueId();
+        }
         return id;
     }
 
@@ -135,6 +146,24 @@ public class EventEnvelope {
         return broadcastLevel;
     }
 
+    /**
+     * Deadline of a request in epoch milliseconds
+     *
+     * @return deadline or zero if not set
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Check if the caller has stopped waiting for a response
+     *
+     * @return true if the deadline has passed
+     */
+    public boolean isExpired() {
+        return deadline > 0 && System.currentTimeMillis() > deadline;
+    }
+
     public boolean isEndOfRoute() {
         return endOfRoute;
     }
@@ -221,7 +250,9 @@ public class EventEnvelope {
      */
     public Throwable getException() {
         if (!exRestored) {
-            if (exceptionBytes != null) {
+            if (exceptionMap != null) {
+                exception = exceptionCodec.decode(exceptionMap);
+            } else if (exceptionBytes != null) {
                 try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(exceptionBytes))) {
                     exception = (Throwable) in.readObject();
                 } catch (IOException | ClassNotFoundException e) {
@@ -449,6 +480,7 @@ public class EventEnvelope {
             payload = body;
         }
         // encode body and save object type
+        this.packedBody = null;
         this.encoded = true;
         this.encodedBody = payload instanceof Date? Utility.getInstance().date2str((Date) payload) : payload;
         TypedPayload typed = converter.encode(payload, binary);
@@ -458,6 +490,22 @@ public class EventEnvelope {
         return this;
     }
 
+    /**
+     * IMPORTANT: This method is reserved by the system. User application MUST NOT access this.
+     * <p>
+     * Encode the body once so that copies of this event share the encoded body when they are serialized.
+     * The encoded body is discarded when the body is changed.
+     *
+     * @return event envelope
+     * @throws IOException in case of encoding error
+     */
+    public EventEnvelope packBody() throws IOException {
+        if (body != null && packedBody == null) {
+            packedBody = new PackedValue(msgPack.packValue(body));
+        }
+        return this;
+    }
+
     /**
      * Set exception cause
      *
@@ -466,12 +514,18 @@ public class EventEnvelope {
      */
     public EventEnvelope setException(Throwable cause) {
         if (cause != null) {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            try (ObjectOutputStream stream = new ObjectOutputStream(out)) {
-                stream.writeObject(cause);
-                exceptionBytes = out.toByteArray();
-            } catch (IOException e) {
-                // this won't happen
+            exception = cause;
+            exRestored = true;
+            exceptionMap = null;
+            exceptionBytes = null;
+            if (exceptionCodec.isLegacy()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (ObjectOutputStream stream = new ObjectOutputStream(out)) {
+                    stream.writeObject(cause);
+                    exceptionBytes = out.toByteArray();
+                } catch (IOException e) {
+                    // this won't happen
+                }
             }
         }
         return this;
@@ -484,8 +538,8 @@ public class EventEnvelope {
      * @return event envelope
      */
     public EventEnvelope setExecutionTime(float milliseconds) {
-        BigDecimal number = new BigDecimal(milliseconds).setScale(3, RoundingMode.HALF_EVEN);
-        this.executionTime = number.floatValue();
+        // adjust precision to 3 decimal points
+        this.executionTime = (float) (Math.round(milliseconds * 1000d) / 1000d);
         return this;
     }
 
@@ -496,8 +550,8 @@ public class EventEnvelope {
      * @return event envelope
      */
     public EventEnvelope setRoundTrip(float milliseconds) {
-        BigDecimal number = new BigDecimal(milliseconds).setScale(3, RoundingMode.HALF_EVEN);
-        this.roundTrip = number.floatValue();
+        // adjust precision to 3 decimal points
+        this.roundTrip = (float) (Math.round(milliseconds * 1000d) / 1000d);
         return this;
     }
 
@@ -512,6 +566,17 @@ public class EventEnvelope {
         return this;
     }
 
+    /**
+     * DO NOT set this manually. The system will set it from the timeout of a request.
+     *
+     * @param deadline in epoch milliseconds
+     * @return event envelope
+     */
+    public EventEnvelope setDeadline(long deadline) {
+        this.deadline = Math.max(0, deadline);
+        return this;
+    }
+
     /**
      * DO NOT set this manually. The system will set it when needed.
      *
@@ -587,6 +652,7 @@ public class EventEnvelope {
         EventEnvelope event = new EventEnvelope();
         event.encodedBody = this.encodedBody;
         event.body = this.body;
+        event.packedBody = this.packedBody;
         event.setTo(this.getTo());
         event.setHeaders(this.getHeaders());
         event.setType(this.getType());
@@ -603,6 +669,7 @@ public class EventEnvelope {
         event.setReplyTo(this.getReplyTo());
         event.setTraceId(this.getTraceId());
         event.setTracePath(this.getTracePath());
+        event.setDeadline(this.getDeadline());
         return event;
     }
 
@@ -612,9 +679,21 @@ public class EventEnvelope {
      * @param bytes encoded payload
      * @throws IOException in case of decoding errors
      */
-    @SuppressWarnings("unchecked")
     public void load(byte[] bytes) throws IOException {
-        Object o = msgPack.unpack(bytes);
+        load(bytes, 0, bytes.length);
+    }
+
+    /**
+     * DeSerialize the EventEnvelope from a region of a byte array without copying
+     *
+     * @param bytes buffer
+     * @param offset of the encoded payload
+     * @param length of the encoded payload
+     * @throws IOException in case of decoding errors
+     */
+    @SuppressWarnings("unchecked")
+    public void load(byte[] bytes, int offset, int length) throws IOException {
+        Object o = msgPack.unpack(bytes, offset, length);
         if (o instanceof Map) {
             Map<String, Object> message = (Map<String, Object>) o;
             if (message.containsKey(ID)) {
@@ -663,7 +742,9 @@ public class EventEnvelope {
             if (message.containsKey(BODY)) {
                 body = message.get(BODY);
             }
-            if (message.containsKey(EXCEPTION)) {
+            if (message.containsKey(EXCEPTION_MAP) && message.get(EXCEPTION_MAP) instanceof Map) {
+                exceptionMap = (Map<String, Object>) message.get(EXCEPTION_MAP);
+            } else if (message.containsKey(EXCEPTION)) {
                 exceptionBytes = (byte[]) message.get(EXCEPTION);
             }
             if (message.containsKey(OBJ_TYPE)) {
@@ -689,6 +770,9 @@ public class EventEnvelope {
             if (message.containsKey(JSON_TRANSPORT)) {
                 binary = false;
             }
+            if (message.containsKey(DEADLINE) && message.get(DEADLINE) instanceof Number) {
+                deadline = ((Number) message.get(DEADLINE)).longValue();
+            }
         }
     }
 
@@ -713,9 +797,7 @@ public class EventEnvelope {
      */
     public byte[] toBytes() throws IOException {
         Map<String, Object> message = new HashMap<>();
-        if (id != null) {
-            message.put(ID, id);
-        }
+        message.put(ID, getId());
         if (to != null) {
             message.put(TO, to);
         }
@@ -753,10 +835,15 @@ public class EventEnvelope {
             message.put(OPTIONAL, true);
         }
         if (body != null) {
-            message.put(BODY, body);
+            message.put(BODY, packedBody != null? packedBody : body);
         }
         if (exceptionBytes != null) {
             message.put(EXCEPTION, exceptionBytes);
+        } else if (exceptionMap != null) {
+            message.put(EXCEPTION_MAP, exceptionMap);
+        } else if (exception != null) {
+            exceptionMap = exceptionCodec.encode(exception);
+            message.put(EXCEPTION_MAP, exceptionMap);
         }
         if (type != null) {
             message.put(OBJ_TYPE, type);
@@ -773,6 +860,9 @@ public class EventEnvelope {
         if (!binary) {
             message.put(JSON_TRANSPORT, true);
         }
+        if (deadline > 0) {
+            message.put(DEADLINE, deadline);
+        }
         return msgPack.pack(message);
     }
 
@@ -56,7 +56,7 @@ public class Inbox extends InboxBase implements AutoCloseable {
         } else {
             this.n = 1;
         }
-        this.id = "r."+ Utility.getInstance().getUuid();
+        this.id = "r."+ Utility.getInstance().getRandomId();
         this.listener = Platform.getInstance().getEventSystem().localConsumer(this.id, new InboxHandler());
         inboxes.put(id, this);
     }
@@ -2,12 +2,16 @@ package org.platformlambda.core.models;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public abstract class InboxBase {
 
     protected String id;
 
     protected static final ConcurrentMap<String, InboxBase> inboxes = new ConcurrentHashMap<>();
+    // futures are completed outside the event loop using a pool shared by all inboxes
+    protected static final ExecutorService executor = Executors.newCachedThreadPool();
 
     public static InboxBase getHolder(String inboxId) {
         return inboxes.get(inboxId);
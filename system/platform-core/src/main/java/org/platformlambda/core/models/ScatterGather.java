@@ -0,0 +1,252 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.models;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import org.platformlambda.core.system.Platform;
+import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.core.util.Utility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Inbox for a scatter-gather request
+ * <p>
+ * Responses are delivered as they arrive using poll() or the iterator.
+ * The future completes with all responses received when the completion policy is met,
+ * when the policy can no longer be met or when the overall timeout expires.
+ * Closing it cancels the outstanding requests so that late responses are discarded.
+ * If it is closed before completion, the future fails with a CancellationException.
+ */
+public class ScatterGather extends InboxBase implements Iterable<EventEnvelope>, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ScatterGather.class);
+
+    private static final EventEnvelope END = new EventEnvelope();
+    private final long begin = System.nanoTime();
+    private final long deadline;
+    private final int required;
+    private final ScatterGatherPolicy policy;
+    private final MessageConsumer<byte[]> listener;
+    private final ConcurrentMap<String, EventEnvelope> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<EventEnvelope> arrivals = new LinkedBlockingQueue<>();
+    private final List<EventEnvelope> results = new ArrayList<>();
+    private final List<Long> timers = new ArrayList<>();
+    private final Promise<List<EventEnvelope>> promise = Promise.promise();
+    private int successes = 0;
+    private boolean done = false;
+
+    /**
+     * Create an inbox for a list of requests
+     * <p>
+     * IMPORTANT: This is reserved by the system. Please use PostOffice.scatterGather to make the requests.
+     *
+     * @param events with unique correlation IDs
+     * @param timeout overall timeout in milliseconds
+     * @param policy for completion, target timeout and hedging
+     */
+    public ScatterGather(List<EventEnvelope> events, long timeout, ScatterGatherPolicy policy) {
+        Platform platform = Platform.getInstance();
+        this.policy = policy == null? ScatterGatherPolicy.all() : policy;
+        this.required = this.policy.getRequired(events.size());
+        this.deadline = System.currentTimeMillis() + timeout;
+        this.id = "r."+ Utility.getInstance().getRandomId();
+        String replyTo = id + "@" + platform.getOrigin();
+        for (EventEnvelope event: events) {
+            event.setReplyTo(replyTo).setBroadcastLevel(0);
+            if (pending.put(event.getCorrelationId(), event) != null) {
+                throw new IllegalArgumentException("Duplicated correlation ID "+event.getCorrelationId());
+            }
+        }
+        this.listener = platform.getEventSystem().localConsumer(this.id, new InboxHandler());
+        inboxes.put(id, this);
+        Vertx vertx = platform.getVertx();
+        synchronized (this) {
+            timers.add(vertx.setTimer(timeout, t -> finish(false)));
+            long targetTimeout = this.policy.getTargetTimeout();
+            if (targetTimeout > 0 && targetTimeout < timeout) {
+                timers.add(vertx.setTimer(targetTimeout, t -> expireTargets()));
+            }
+            long hedgeDelay = this.policy.getHedgeDelay();
+            if (hedgeDelay > 0 && hedgeDelay < Math.min(timeout, targetTimeout > 0? targetTimeout : timeout)) {
+                timers.add(vertx.setTimer(hedgeDelay, t -> hedge()));
+            }
+        }
+    }
+
+    public Future<List<EventEnvelope>> getFuture() {
+        return promise.future();
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Retrieve the next response
+     *
+     * @param timeout in milliseconds
+     * @return response or null if there is no more response or the wait has timed out
+     */
+    public EventEnvelope poll(long timeout) {
+        try {
+            EventEnvelope reply = arrivals.poll(timeout, TimeUnit.MILLISECONDS);
+            if (reply == END) {
+                // keep the end marker for subsequent calls
+                arrivals.offer(END);
+                return null;
+            }
+            return reply;
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Iterate the responses as they arrive until the scatter-gather request completes
+     *
+     * @return iterator
+     */
+    @Override
+    public Iterator<EventEnvelope> iterator() {
+        return new Iterator<EventEnvelope>() {
+            private EventEnvelope nextReply;
+
+            @Override
+            public boolean hasNext() {
+                if (nextReply == null) {
+                    // the end marker is inserted when the overall timeout expires
+                    nextReply = poll(Math.max(0, deadline - System.currentTimeMillis()) + 1000);
+                }
+                return nextReply != null;
+            }
+
+            @Override
+            public EventEnvelope next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                EventEnvelope result = nextReply;
+                nextReply = null;
+                return result;
+            }
+        };
+    }
+
+    private void saveResponse(EventEnvelope reply) {
+        boolean completed;
+        synchronized (this) {
+            String cid = reply.getCorrelationId();
+            // ignore duplicated response from a hedged request
+            if (done || cid == null || pending.remove(cid) == null) {
+                return;
+            }
+            float diff = System.nanoTime() - begin;
+            reply.setRoundTrip(diff / PostOffice.ONE_MILLISECOND);
+            results.add(reply);
+            arrivals.offer(reply);
+            if (!reply.hasError()) {
+                successes++;
+            }
+            completed = successes >= required || successes + pending.size() < required;
+        }
+        if (completed) {
+            finish(false);
+        }
+    }
+
+    private void expireTargets() {
+        for (EventEnvelope event: new ArrayList<>(pending.values())) {
+            saveResponse(new EventEnvelope().setStatus(408).setFrom(event.getTo())
+                    .setCorrelationId(event.getCorrelationId())
+                    .setBody(event.getTo() + " timeout for " + policy.getTargetTimeout() + " ms"));
+        }
+    }
+
+    private void hedge() {
+        PostOffice po = PostOffice.getInstance();
+        for (EventEnvelope event: new ArrayList<>(pending.values())) {
+            if (isDone()) {
+                break;
+            }
+            try {
+                po.send(event);
+            } catch (IOException e) {
+                log.warn("Unable to send hedged request to {} - {}", event.getTo(), e.getMessage());
+            }
+        }
+    }
+
+    private void finish(boolean cancel) {
+        List<EventEnvelope> completed;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            pending.clear();
+            Vertx vertx = Platform.getInstance().getVertx();
+            for (Long t: timers) {
+                vertx.cancelTimer(t);
+            }
+            completed = new ArrayList<>(results);
+        }
+        inboxes.remove(id);
+        if (listener.isRegistered()) {
+            listener.unregister();
+        }
+        arrivals.offer(END);
+        if (cancel) {
+            executor.submit(() -> promise.fail(new CancellationException("Scatter-gather request "+id+" cancelled")));
+        } else {
+            executor.submit(() -> promise.complete(completed));
+        }
+    }
+
+    /**
+     * Cancel the outstanding requests if the scatter-gather request has not completed
+     */
+    @Override
+    public void close() {
+        finish(true);
+    }
+
+    private class InboxHandler implements Handler<Message<byte[]>> {
+
+        @Override
+        public void handle(Message<byte[]> message) {
+            try {
+                EventEnvelope event = new EventEnvelope(message.body());
+                if (event.getReplyTo() != null) {
+                    saveResponse(event);
+                }
+            } catch (IOException e) {
+                log.error("Unable to decode event - {}", e.getMessage());
+            }
+        }
+    }
+}
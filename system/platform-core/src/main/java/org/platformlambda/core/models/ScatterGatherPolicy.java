@@ -0,0 +1,129 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.models;
+
+/**
+ * Completion policy for a scatter-gather request
+ * <p>
+ * ALL - wait for a response from every target
+ * FIRST_N - complete when the first N successful responses have arrived
+ * QUORUM - complete when a majority of the targets have responded successfully
+ * <p>
+ * A scatter-gather request also completes when the policy can no longer be met
+ * or when its overall timeout expires.
+ * <p>
+ * Target timeout - a target that does not respond within this period is reported with status 408
+ * so that the caller does not wait for the slowest target until the overall timeout.
+ * <p>
+ * Hedge delay - a request that has no response after this period is sent again once.
+ * The first response wins. For a cloud route, the hedged request may be served by another instance.
+ */
+public class ScatterGatherPolicy {
+
+    public enum Completion {
+        ALL, FIRST_N, QUORUM
+    }
+
+    private Completion completion = Completion.ALL;
+    private int first = 1;
+    private long targetTimeout = 0;
+    private long hedgeDelay = 0;
+
+    public static ScatterGatherPolicy all() {
+        return new ScatterGatherPolicy();
+    }
+
+    public static ScatterGatherPolicy first(int n) {
+        return new ScatterGatherPolicy().setCompletion(Completion.FIRST_N).setFirst(n);
+    }
+
+    public static ScatterGatherPolicy quorum() {
+        return new ScatterGatherPolicy().setCompletion(Completion.QUORUM);
+    }
+
+    public Completion getCompletion() {
+        return completion;
+    }
+
+    public ScatterGatherPolicy setCompletion(Completion completion) {
+        this.completion = completion == null? Completion.ALL : completion;
+        return this;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public ScatterGatherPolicy setFirst(int first) {
+        this.first = Math.max(1, first);
+        return this;
+    }
+
+    /**
+     * Timeout for each target
+     *
+     * @return milliseconds or zero if not set
+     */
+    public long getTargetTimeout() {
+        return targetTimeout;
+    }
+
+    public ScatterGatherPolicy setTargetTimeout(long targetTimeout) {
+        this.targetTimeout = Math.max(0, targetTimeout);
+        return this;
+    }
+
+    /**
+     * Delay before a request without response is sent again
+     *
+     * @return milliseconds or zero if hedging is disabled
+     */
+    public long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    public ScatterGatherPolicy setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = Math.max(0, hedgeDelay);
+        return this;
+    }
+
+    /**
+     * Number of successful responses required to complete
+     *
+     * @param targets number of targets
+     * @return required responses
+     */
+    public int getRequired(int targets) {
+        switch (completion) {
+            case FIRST_N:
+                return Math.min(targets, first);
+            case QUORUM:
+                return targets / 2 + 1;
+            default:
+                return targets;
+        }
+    }
+
+    public String toString() {
+        return "completion=" + completion.name().toLowerCase() +
+                (completion == Completion.FIRST_N? ", first=" + first : "") +
+                ", target_timeout=" + targetTimeout + ", hedge_delay=" + hedgeDelay;
+    }
+
+}
@@ -20,6 +20,7 @@ package org.platformlambda.core.models;
 
 import org.platformlambda.core.util.Utility;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -28,21 +29,27 @@ public class TraceInfo {
 
     public String route, id, path;
     public String startTime;
-    public Map<String, String> annotations = new HashMap<>();
+    public long deadline = 0;
+    // the map is created when the first annotation is added
+    public Map<String, String> annotations = Collections.emptyMap();
 
     public TraceInfo(String route, String id, String path) {
         this.route = route;
-        this.startTime = Utility.getInstance().date2str(new Date());
         if (id == null) {
+            // start time is only reported for a traced transaction
             this.id = null;
             this.path = null;
         } else {
             this.id = id;
             this.path = path == null ? "?" : path;
+            this.startTime = Utility.getInstance().date2str(new Date());
         }
     }
 
     public void annotate(String key, String value) {
+        if (annotations.isEmpty()) {
+            annotations = new HashMap<>();
+        }
         annotations.put(key, value);
     }
 
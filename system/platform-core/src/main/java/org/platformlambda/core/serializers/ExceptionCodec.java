@@ -0,0 +1,222 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.serializers;
+
+import org.platformlambda.core.exception.AppException;
+import org.platformlambda.core.exception.UnresolvedException;
+import org.platformlambda.core.util.AppConfigReader;
+import org.platformlambda.core.util.Utility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Constructor;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact transport of exceptions in an event envelope.
+ * <p>
+ * An exception is encoded as a map of class name, message, optional status,
+ * truncated stack frames and cause chain so that it can be packed by MsgPack
+ * without Java serialization. The receiver rebuilds an equivalent exception.
+ * <p>
+ * Only exceptions of the java.lang, java.io, java.net, java.sql, java.util and java.util.concurrent packages
+ * and application exceptions registered with this codec are instantiated by class name.
+ * Others are received as UnresolvedException with the original status, message and class name
+ * and a warning is logged once for each of these class names.
+ * <p>
+ * To migrate, register the application exceptions that callers catch by type or
+ * set exception.transport.legacy=true to keep using Java serialization.
+ */
+public class ExceptionCodec {
+    private static final Logger log = LoggerFactory.getLogger(ExceptionCodec.class);
+
+    private static final String CLASS = "c";
+    private static final String MESSAGE = "m";
+    private static final String STATUS = "s";
+    private static final String FRAMES = "f";
+    private static final String CAUSE = "x";
+    private static final String MAX_FRAMES = "exception.transport.max.frames";
+    private static final String MAX_CAUSES = "exception.transport.max.causes";
+    private static final String LEGACY = "exception.transport.legacy";
+    private static final Class<?>[] STRING_PARAM = {String.class};
+    private static final Set<String> ALLOWED_PACKAGES = new HashSet<>(
+            Arrays.asList("java.lang", "java.io", "java.net", "java.sql", "java.util", "java.util.concurrent"));
+    private final Map<String, Class<? extends Throwable>> registered = new ConcurrentHashMap<>();
+    private final Set<String> unresolved = ConcurrentHashMap.newKeySet();
+    private final int maxFrames, maxCauses;
+    private final boolean legacy;
+    private static final ExceptionCodec instance = new ExceptionCodec();
+
+    private ExceptionCodec() {
+        AppConfigReader config = AppConfigReader.getInstance();
+        Utility util = Utility.getInstance();
+        maxFrames = Math.max(0, util.str2int(config.getProperty(MAX_FRAMES, "10")));
+        maxCauses = Math.max(0, util.str2int(config.getProperty(MAX_CAUSES, "5")));
+        legacy = "true".equals(config.getProperty(LEGACY, "false"));
+        if (legacy) {
+            log.info("{} enabled", LEGACY);
+        }
+    }
+
+    public static ExceptionCodec getInstance() {
+        return instance;
+    }
+
+    /**
+     * When legacy mode is enabled, exceptions are sent using Java serialization
+     * so that application instances running an older version can read them.
+     *
+     * @return true if legacy mode
+     */
+    public boolean isLegacy() {
+        return legacy;
+    }
+
+    /**
+     * Allow an application exception to be rebuilt by the receiver.
+     * The exception class must have a public constructor that takes a message.
+     *
+     * @param cls exception class
+     */
+    public void register(Class<? extends Throwable> cls) {
+        try {
+            cls.getConstructor(STRING_PARAM);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(cls.getName()+" does not have a constructor for a message");
+        }
+        registered.put(cls.getName(), cls);
+    }
+
+    /**
+     * Encode an exception and its cause chain
+     *
+     * @param ex exception
+     * @return map of primitive values
+     */
+    public Map<String, Object> encode(Throwable ex) {
+        return encode(ex, 0);
+    }
+
+    private Map<String, Object> encode(Throwable ex, int depth) {
+        Map<String, Object> result = new HashMap<>();
+        // relay the original class name of an exception that this instance cannot rebuild
+        result.put(CLASS, ex instanceof UnresolvedException?
+                ((UnresolvedException) ex).getOriginalClass() : ex.getClass().getName());
+        if (ex.getMessage() != null) {
+            result.put(MESSAGE, ex.getMessage());
+        }
+        if (ex instanceof AppException) {
+            result.put(STATUS, ((AppException) ex).getStatus());
+        }
+        StackTraceElement[] elements = ex.getStackTrace();
+        int n = Math.min(elements.length, maxFrames);
+        if (n > 0) {
+            List<List<Object>> frames = new ArrayList<>();
+            for (int i=0; i < n; i++) {
+                StackTraceElement e = elements[i];
+                List<Object> frame = new ArrayList<>();
+                frame.add(e.getClassName());
+                frame.add(e.getMethodName());
+                frame.add(e.getFileName());
+                frame.add(e.getLineNumber());
+                frames.add(frame);
+            }
+            result.put(FRAMES, frames);
+        }
+        Throwable cause = ex.getCause();
+        if (cause != null && cause != ex && depth < maxCauses) {
+            result.put(CAUSE, encode(cause, depth+1));
+        }
+        return result;
+    }
+
+    /**
+     * Rebuild an exception from its encoded form.
+     * <p>
+     * If the original exception class is not allowed, not available or cannot be constructed
+     * with a message, an UnresolvedException carrying the status, message and original class name
+     * is returned.
+     *
+     * @param map encoded exception
+     * @return exception
+     */
+    @SuppressWarnings("unchecked")
+    public Throwable decode(Map<String, Object> map) {
+        String className = (String) map.get(CLASS);
+        String message = (String) map.get(MESSAGE);
+        int status = map.get(STATUS) instanceof Number? ((Number) map.get(STATUS)).intValue() : 500;
+        Throwable ex = className == null? null : create(className, status, message);
+        if (ex == null) {
+            if (className != null && unresolved.add(className)) {
+                log.warn("{} is received as {}. To keep its type, call ExceptionCodec.getInstance().register({}.class) " +
+                                "or set {}=true", className, UnresolvedException.class.getSimpleName(),
+                        className.substring(className.lastIndexOf('.') + 1), LEGACY);
+            }
+            ex = new UnresolvedException(status, message == null? className : message, className);
+        }
+        Object frames = map.get(FRAMES);
+        if (frames instanceof List) {
+            List<StackTraceElement> elements = new ArrayList<>();
+            for (Object f: (List<Object>) frames) {
+                if (f instanceof List && ((List<Object>) f).size() == 4) {
+                    List<Object> frame = (List<Object>) f;
+                    int line = frame.get(3) instanceof Number? ((Number) frame.get(3)).intValue() : -1;
+                    elements.add(new StackTraceElement(String.valueOf(frame.get(0)), String.valueOf(frame.get(1)),
+                                    (String) frame.get(2), line));
+                }
+            }
+            ex.setStackTrace(elements.toArray(new StackTraceElement[0]));
+        }
+        Object cause = map.get(CAUSE);
+        if (cause instanceof Map && ex.getCause() == null) {
+            try {
+                ex.initCause(decode((Map<String, Object>) cause));
+            } catch (IllegalStateException e) {
+                // cause already set by the constructor
+            }
+        }
+        return ex;
+    }
+
+    private Throwable create(String className, int status, String message) {
+        if (AppException.class.getName().equals(className)) {
+            return new AppException(status, message);
+        }
+        try {
+            Class<?> cls = registered.get(className);
+            if (cls == null) {
+                // the class name comes from the network so only exceptions of the JDK core packages are loaded
+                int dot = className.lastIndexOf('.');
+                if (dot < 0 || !ALLOWED_PACKAGES.contains(className.substring(0, dot))) {
+                    return null;
+                }
+                cls = Class.forName(className, false, ExceptionCodec.class.getClassLoader());
+                if (!Throwable.class.isAssignableFrom(cls)) {
+                    return null;
+                }
+            }
+            Constructor<?> c = cls.getConstructor(STRING_PARAM);
+            return (Throwable) c.newInstance(message);
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+    }
+
+}
@@ -35,6 +35,30 @@ public class MsgPack {
 
     private static final String DATA = "_D";
     private static final String TYPE = "_T";
+    private static final int INITIAL_BUFFER = 8 * 1024;
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+    private static final ThreadLocal<PackBuffer> packBuffers = ThreadLocal.withInitial(PackBuffer::new);
+
+    /**
+     * Per-thread scratch buffer and packer that are reused across pack calls
+     * so that encoding an event does not allocate a new stream and packer each time.
+     * The packed bytes are copied out once because ownership of the result
+     * is handed over to the event bus or a messaging client.
+     */
+    private static class PackBuffer extends ByteArrayOutputStream {
+        private final MessagePacker packer;
+        private boolean busy = false;
+
+        private PackBuffer() {
+            super(INITIAL_BUFFER);
+            packer = MessagePack.newDefaultPacker(this);
+        }
+
+        private boolean isOversized() {
+            return buf.length > MAX_RETAINED_BUFFER;
+        }
+    }
+
     /**
      * Unpack method for generic map or list object
      *
@@ -206,18 +230,26 @@ public class MsgPack {
     public byte[] pack(Object obj) throws IOException {
         if (obj instanceof Map || obj instanceof List) {
             // select low level processing for faster performance
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            MessagePacker packer = null;
+            PackBuffer buffer = packBuffers.get();
+            if (buffer.busy) {
+                // re-entrant call from the same thread
+                return packValue(obj);
+            }
+            boolean completed = false;
+            buffer.busy = true;
             try {
-                packer = MessagePack.newDefaultPacker(out);
-                pack(packer, obj).close();
-                packer = null;
+                buffer.reset();
+                pack(buffer.packer, obj).flush();
+                byte[] result = buffer.toByteArray();
+                completed = true;
+                return result;
             } finally {
-                if (packer != null) {
-                    packer.close();
+                buffer.busy = false;
+                // discard a buffer that has grown too large or holds partial output
+                if (!completed || buffer.isOversized()) {
+                    packBuffers.remove();
                 }
             }
-            return out.toByteArray();
         } else {
             // PoJo
             TypedPayload typed = converter.encode(obj, true);
@@ -228,11 +260,37 @@ public class MsgPack {
         }
     }
 
+    /**
+     * Pack a single value of any supported type.
+     * The result can be embedded in other messages using a PackedValue.
+     *
+     * @param value to be packed
+     * @return packed byte array
+     * @throws IOException for msgpack object mapping exception
+     */
+    public byte[] packValue(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessagePacker packer = null;
+        try {
+            packer = MessagePack.newDefaultPacker(out);
+            pack(packer, value).close();
+            packer = null;
+        } finally {
+            if (packer != null) {
+                packer.close();
+            }
+        }
+        return out.toByteArray();
+    }
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     private MessagePacker pack(MessagePacker packer, Object o) throws IOException {
         if (o == null) {
             // preserving null element in an array list
             packer.packNil();
+        } else if (o instanceof PackedValue) {
+            // already encoded
+            packer.writePayload(((PackedValue) o).getBytes());
         } else if (o instanceof Map) {
             // In json, the key may not be a string
             Map<Object, Object> map = (Map<Object, Object>) o;
@@ -0,0 +1,39 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.serializers;
+
+/**
+ * A value that has already been encoded in MsgPack format.
+ * <p>
+ * When it is part of a map or list, MsgPack writes the encoded bytes as is
+ * so that the same value can be shared by many messages without encoding it again.
+ */
+public class PackedValue {
+
+    private final byte[] bytes;
+
+    public PackedValue(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+}
@@ -18,15 +18,13 @@
 
 package org.platformlambda.core.serializers;
 
-import org.platformlambda.core.util.MultiLevelMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.*;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -46,6 +44,8 @@ import java.util.*;
  *
  * Element attributes are rendered as a regular key-value under the element.
  *
+ * For mixed content, child elements take precedence over text.
+ *
  * Purpose
  * -------
  * The FasterXml Jackson implementation "XmlMapper" is a general purpose Xml Parser.
@@ -53,6 +53,9 @@ import java.util.*;
  *
  * Since Mercury is using Google Guava as JSON serializer, we develop this simple Xml Parser
  * as an alternative.
+ *
+ * The parser uses the streaming StAX API so that the resultant map is built
+ * in a single pass without an intermediate document object model.
  */
 public class SimpleXmlParser {
     private static final Logger log = LoggerFactory.getLogger(SimpleXmlParser.class);
@@ -61,17 +64,10 @@ public class SimpleXmlParser {
      * The solution to avoid XML external entity (XXE) injection attack was contributed by Sajeeb Lohani
      * (github handles @prodigysml and @n33dle) on 1/6/2020.
      *
-     * The corresponding Unit test is org.platformlambda.core.util.XmlParserFeatureTest
+     * DOCTYPE declaration is rejected and external entities are not supported.
+     * The factory is configured once because it is thread safe after configuration.
      */
-    private static final String[] FEATURES_TO_ENABLE = {
-            "http://apache.org/xml/features/disallow-doctype-decl"
-    };
-    private static final String[] FEATURES_TO_DISABLE = {
-            "http://xml.org/sax/features/external-general-entities",
-            "http://xml.org/sax/features/external-parameter-entities",
-            "http://apache.org/xml/features/nonvalidating/load-external-dtd"
-    };
-    private static final String INDEX = "index";
+    private static final XMLInputFactory factory = getFactory();
     private static List<String> defaultDrop = new ArrayList<>();
     private List<String> drop = new ArrayList<>();
 
@@ -93,155 +89,142 @@ public class SimpleXmlParser {
         return parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
     }
 
-    @SuppressWarnings("unchecked")
     public Map<String, Object> parse(InputStream res) throws IOException {
-        Map<String, Object> result = new HashMap<>();
-        Document doc;
+        XMLStreamReader reader = null;
         try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            for (String feature: FEATURES_TO_ENABLE) {
-                setFeature(dbf, feature, true);
-            }
-            for (String feature: FEATURES_TO_DISABLE) {
-                setFeature(dbf, feature, false);
-            }
-            dbf.setXIncludeAware(false);
-            dbf.setExpandEntityReferences(false);
-            DocumentBuilder dBuilder = dbf.newDocumentBuilder();
-            dBuilder.setErrorHandler(null);
-            doc = dBuilder.parse(res);
-            doc.getDocumentElement().normalize();
-        } catch (ParserConfigurationException | SAXException e) {
+            reader = factory.createXMLStreamReader(res);
+            return parse(reader);
+        } catch (XMLStreamException e) {
             // Simplify by converting to IOException
             throw new IOException(e);
-        }
-        Element root = doc.getDocumentElement();
-        Map<String, Object> seed = new HashMap<>();
-        result.put(root.getNodeName(), seed);
-        NamedNodeMap attributes = root.getAttributes();
-        int count = attributes.getLength();
-        for (int i=0; i < count; i++) {
-            String attributeName = attributes.item(i).getNodeName();
-            if (!canIgnore(attributeName)) {
-                seed.put(attributeName, attributes.item(i).getNodeValue());
-            }
-        }
-        // childMap is used to keep track of array elements in the Xml
-        Map<String, Map<String, Integer>> childMap = new HashMap<>();
-        List<List<String>> kvList = new ArrayList<>();
-        NodeList nodes = root.getChildNodes();
-        if (nodes != null && nodes.getLength() > 0) {
-            int len = nodes.getLength();
-            for (int i=0; i < len; i++) {
-                parseXML(childMap, kvList, nodes.item(i), root.getNodeName());
-            }
-        }
-        MultiLevelMap multi = new MultiLevelMap(result);
-        for (List<String> kv: kvList) {
-            String composite = kv.get(0);
-            String value = kv.get(1);
-            multi.setElement(composite, value);
-        }
-        result = multi.getMap();
-        /*
-         * Extract root node if any
-         */
-        if (result.size() == 1) {
-            for (String key : result.keySet()) {
-                Object rootNode = result.get(key);
-                if (rootNode instanceof Map) {
-                    return (Map<String, Object>) rootNode;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // ok to ignore
                 }
             }
         }
-        return result;
     }
 
-    private String normalizeParentPath(String parent) {
-        if (parent.endsWith("]")) {
-            int sep = parent.lastIndexOf('[');
-            return sep == -1? parent : parent.substring(0, sep);
-        } else {
-            return parent;
-        }
-    }
-
-    private void parseXML(Map<String, Map<String, Integer>> childMap,
-                          List<List<String>> kvList, Node node, String parent) {
-
-        String parentPath = normalizeParentPath(parent);
-        if (node.getNodeType() == Node.TEXT_NODE) {
-            String value = node.getTextContent().trim();
-            if (value.length() > 0) {
-                saveKv(kvList, parent, value);
+    private Map<String, Object> parse(XMLStreamReader reader) throws XMLStreamException, IOException {
+        Deque<Element> stack = new ArrayDeque<>();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.DTD) {
+                throw new IOException("DOCTYPE is not allowed");
             }
-        }
-        if (node.getNodeType() == Node.ELEMENT_NODE) {
-            NamedNodeMap attributes = node.getAttributes();
-            if (attributes != null) {
-                int count = attributes.getLength();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                Element parent = stack.peek();
+                Element current = new Element(getName(reader.getPrefix(), reader.getLocalName()));
+                // attributes of the root element belong to itself and the rest are rendered under the parent
+                Element target = parent == null? current : parent;
+                if (parent != null) {
+                    parent.flushText();
+                }
+                int count = reader.getAttributeCount();
                 for (int i=0; i < count; i++) {
-                    String attributeName = attributes.item(i).getNodeName();
+                    String attributeName = getName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
                     if (!canIgnore(attributeName)) {
-                        saveKv(kvList, parent+"."+attributeName, attributes.item(i).getNodeValue());
+                        target.map.put(attributeName, reader.getAttributeValue(i));
                     }
                 }
-            }
-            if (!childMap.containsKey(parentPath)) {
-                Map<String, Integer> childCounts = new HashMap<>();
-                NodeList peers = node.getParentNode().getChildNodes();
-                if (peers != null && peers.getLength() > 0) {
-                    int len = peers.getLength();
-                    for (int i = 0; i < len; i++) {
-                        Node current = peers.item(i);
-                        if (current.getNodeType() == Node.ELEMENT_NODE) {
-                            String nodeName = current.getNodeName();
-                            int counter = childCounts.getOrDefault(nodeName, 0);
-                            current.setUserData(INDEX, counter, null);
-                            childCounts.put(nodeName, ++counter);
-                        }
-                    }
+                stack.push(current);
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA ||
+                        event == XMLStreamConstants.SPACE) {
+                Element current = stack.peek();
+                if (current != null) {
+                    current.text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
                 }
-                childMap.put(parentPath, childCounts);
-            }
-            Map<String, Integer> childCounts = childMap.get(parentPath);
-            NodeList nodes = node.getChildNodes();
-            if (nodes != null && nodes.getLength() > 0) {
-                int len = nodes.getLength();
-                for (int i=0; i < len; i++) {
-                    Node current = nodes.item(i);
-                    String nodeName = node.getNodeName();
-                    Object index = node.getUserData(INDEX);
-                    String path = parent + "." + node.getNodeName();
-                    int counter = childCounts.getOrDefault(nodeName, 0);
-                    if (counter > 1 && index instanceof Integer) {
-                        parseXML(childMap, kvList, current, path + "["+index+"]");
-                    } else {
-                        parseXML(childMap, kvList, current, path);
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                Element current = stack.pop();
+                Object value = current.getValue();
+                Element parent = stack.peek();
+                if (parent == null) {
+                    // extract root node
+                    if (value instanceof Map || value == null) {
+                        return current.map;
                     }
+                    Map<String, Object> result = new HashMap<>();
+                    result.put(current.name, value);
+                    return result;
                 }
+                parent.addChild(current.name, value);
             }
         }
+        throw new IOException("Missing root element");
     }
 
-    private void saveKv(List<List<String>> kvList, String key, String value) {
-        List<String> kv = new ArrayList<>();
-        kv.add(key);
-        kv.add(value);
-        kvList.add(kv);
+    private String getName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty()? localName : prefix + ":" + localName;
     }
 
     private boolean canIgnore(String attributeName) {
         return !drop.isEmpty() ? drop.contains(attributeName) : SimpleXmlParser.defaultDrop.contains(attributeName);
     }
 
-    private boolean setFeature(DocumentBuilderFactory dbf, String feature, boolean enable) {
-        try {
-            dbf.setFeature(feature, enable);
-            return dbf.getFeature(feature) == enable;
-        } catch (ParserConfigurationException e) {
-            log.error("Unable to {} feature - {}", enable? "enable" : "disable", e.getMessage());
-            return false;
+    private static XMLInputFactory getFactory() {
+        XMLInputFactory f = XMLInputFactory.newInstance();
+        f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        return f;
+    }
+
+    private static class Element {
+        private final String name;
+        private final Map<String, Object> map = new HashMap<>();
+        private final StringBuilder text = new StringBuilder();
+        private Map<String, List<Object>> children;
+        private String value;
+
+        private Element(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Text segments between child elements are trimmed and the last non-empty one is kept
+         */
+        private void flushText() {
+            if (text.length() > 0) {
+                String v = text.toString().trim();
+                if (v.length() > 0) {
+                    value = v;
+                }
+                text.setLength(0);
+            }
+        }
+
+        private void addChild(String childName, Object childValue) {
+            if (children == null) {
+                children = new LinkedHashMap<>();
+            }
+            children.computeIfAbsent(childName, k -> new ArrayList<>()).add(childValue);
+        }
+
+        private Object getValue() {
+            flushText();
+            if (children != null) {
+                for (Map.Entry<String, List<Object>> kv: children.entrySet()) {
+                    List<Object> list = kv.getValue();
+                    if (list.size() == 1) {
+                        if (list.get(0) != null) {
+                            map.put(kv.getKey(), list.get(0));
+                        }
+                    } else {
+                        // empty elements at the end of an array are dropped
+                        int n = list.size();
+                        while (n > 0 && list.get(n-1) == null) {
+                            n--;
+                        }
+                        if (n > 0) {
+                            map.put(kv.getKey(), n == list.size()? list : new ArrayList<>(list.subList(0, n)));
+                        }
+                    }
+                }
+            }
+            return map.isEmpty()? value : map;
         }
     }
 
@@ -18,7 +18,11 @@
 
 package org.platformlambda.core.serializers;
 
+import io.vertx.core.buffer.Buffer;
+
+import java.io.*;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -35,37 +39,83 @@ public class SimpleXmlWriter {
     }
 
     public String write(Object map) {
+        return write(getRootName(map), map);
+    }
+
+    public void write(Object map, OutputStream out) throws IOException {
+        write(getRootName(map), map, out);
+    }
+
+    private String getRootName(Object map) {
         String className = map.getClass().getSimpleName();
         // className hierarchy filtering: dot for subclass and dollar-sign for nested class
         String root = className.equals("HashMap") ? "root" : className;
-        return write(root.toLowerCase(), map);
+        return root.toLowerCase();
     }
 
-    @SuppressWarnings("unchecked")
     public String write(String rootName, Object map) {
+        StringWriter buffer = new StringWriter();
+        try {
+            write(rootName, map, buffer);
+        } catch (IOException e) {
+            // StringWriter does not throw exception
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Stream the XML document to an output stream in UTF-8
+     *
+     * @param rootName of the XML document
+     * @param map of key-values
+     * @param out stream that remains open after writing
+     * @throws IOException in case of write error
+     */
+    public void write(String rootName, Object map, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        write(rootName, map, writer);
+        writer.flush();
+    }
+
+    /**
+     * Stream the XML document to a Vert.x buffer in UTF-8
+     *
+     * @param rootName of the XML document
+     * @param map of key-values
+     * @param buffer to be appended
+     */
+    public void write(String rootName, Object map, Buffer buffer) {
+        try {
+            write(rootName, map, new BufferOutputStream(buffer));
+        } catch (IOException e) {
+            // Buffer does not throw exception
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write(String rootName, Object map, Writer buffer) throws IOException {
         if (map instanceof Map) {
-            StringBuilder buffer = new StringBuilder();
-            buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            buffer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
             write(buffer, rootName, (Map<String, Object>) map, 0);
-            return buffer.toString();
-
         } else {
             throw new IllegalArgumentException("Input should be a Map object");
         }
     }
 
-    private void write(StringBuilder buffer, String nodeName, Map<String, Object> map, int indent) {
+    private void write(Writer buffer, String nodeName, Map<String, Object> map, int indent) throws IOException {
         int currentIndent = indent;
         if (nodeName != null) {
             // Add one indent unit for the startTag
             indentBlock(buffer, currentIndent);
-            buffer.append('<');
-            buffer.append(escapeXml(nodeName, TagType.START));
-            buffer.append('>');
+            buffer.write('<');
+            buffer.write(escapeXml(nodeName, TagType.START));
+            buffer.write('>');
             indent++;
         }
         // Next line after a startTag of a map or after a block of elements
-        buffer.append('\n');
+        buffer.write('\n');
         List<String> keys = new ArrayList<>(map.keySet());
         // Arrange the map element in ascending order
         if (keys.size() > 1) {
@@ -79,14 +129,14 @@ public class SimpleXmlWriter {
         // No need to add new line as the element block has already added one.
         indentBlock(buffer, currentIndent-1);
         if (nodeName != null) {
-            buffer.append("</");
-            buffer.append(escapeXml(nodeName, TagType.END));
-            buffer.append('>');
+            buffer.write("</");
+            buffer.write(escapeXml(nodeName, TagType.END));
+            buffer.write('>');
         }
     }
 
     @SuppressWarnings("unchecked")
-    private void appendNode(StringBuilder buffer, String nodeName, Object value, int indent) {
+    private void appendNode(Writer buffer, String nodeName, Object value, int indent) throws IOException {
         // Skip null value
         if (value == null) {
             return;
@@ -100,33 +150,33 @@ public class SimpleXmlWriter {
         } else {
             // Add one indent unit for the startTag
             indentBlock(buffer, indent);
-            buffer.append('<');
-            buffer.append(escapeXml(nodeName, TagType.START));
-            buffer.append('>');
+            buffer.write('<');
+            buffer.write(escapeXml(nodeName, TagType.START));
+            buffer.write('>');
             if (value instanceof Date) {
                 long ms = ((Date) value).getTime();
                 ZonedDateTime zdt = ZonedDateTime.ofInstant(Instant.ofEpochMilli(ms), ZoneId.of("UTC"));
-                buffer.append(zdt.format(ISO_DATE));
+                buffer.write(zdt.format(ISO_DATE));
             } else if (value instanceof Map) {
                 write(buffer, null, (Map<String, Object>) value, indent+1);
             } else if (value instanceof String) {
-                buffer.append(escapeXml((String) value, TagType.BODY));
+                buffer.write(escapeXml((String) value, TagType.BODY));
             } else if (value instanceof BigDecimal) {
-                buffer.append(((BigDecimal) value).toPlainString());
+                buffer.write(((BigDecimal) value).toPlainString());
             } else {
-                buffer.append(escapeXml(value.toString(), TagType.BODY));
+                buffer.write(escapeXml(value.toString(), TagType.BODY));
             }
-            buffer.append("</");
-            buffer.append(escapeXml(nodeName, TagType.END));
-            buffer.append('>');
+            buffer.write("</");
+            buffer.write(escapeXml(nodeName, TagType.END));
+            buffer.write('>');
             // Next line after the endTag
-            buffer.append('\n');
+            buffer.write('\n');
         }
     }
 
-    private void indentBlock(StringBuilder buffer, int indent) {
+    private void indentBlock(Writer buffer, int indent) throws IOException {
         for (int i=0; i < indent; i++) {
-            buffer.append(SPACES);
+            buffer.write(SPACES);
         }
     }
 
@@ -202,4 +252,22 @@ public class SimpleXmlWriter {
         return sb.toString();
     }
 
+    private static class BufferOutputStream extends OutputStream {
+        private final Buffer buffer;
+
+        private BufferOutputStream(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.appendByte((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buffer.appendBytes(b, off, len);
+        }
+    }
+
 }
@@ -0,0 +1,183 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.services;
+
+import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.core.util.Utility;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A multicast target may be a route name or a map with the following optional conditions:
+ * <p>
+ * route: target route name
+ * when: header values that an event must match for delivery
+ * weight: percentage of events to be delivered (1 to 100)
+ */
+public class MulticastTarget {
+
+    private static final String ROUTE = "route";
+    private static final String WHEN = "when";
+    private static final String WEIGHT = "weight";
+    private static final String DELIVERED = "delivered";
+    private static final String FAILED = "failed";
+    private static final String UNREACHABLE = "unreachable";
+    private static final String SKIPPED = "skipped";
+
+    private final String route;
+    private final Map<String, String> conditions = new HashMap<>();
+    private final int weight;
+    private final AtomicLong matched = new AtomicLong(0);
+    private final AtomicLong delivered = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong unreachable = new AtomicLong(0);
+    private final AtomicLong skipped = new AtomicLong(0);
+    private volatile long routeVersion = -1;
+    private volatile boolean reachable = false;
+
+    public MulticastTarget(String route) {
+        this(route, null, 100);
+    }
+
+    public MulticastTarget(String route, Map<String, String> conditions, int weight) {
+        if (route == null || route.isEmpty()) {
+            throw new IllegalArgumentException("Missing target route");
+        }
+        if (weight < 1 || weight > 100) {
+            throw new IllegalArgumentException("Weight of "+route+" must be 1 to 100");
+        }
+        this.route = route;
+        this.weight = weight;
+        if (conditions != null) {
+            this.conditions.putAll(conditions);
+        }
+    }
+
+    /**
+     * Create a target from multicast YAML
+     *
+     * @param config of a target
+     * @return target
+     */
+    @SuppressWarnings("unchecked")
+    public static MulticastTarget fromConfig(Object config) {
+        if (config instanceof String) {
+            return new MulticastTarget((String) config);
+        }
+        if (config instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) config;
+            Object route = map.get(ROUTE);
+            Object when = map.get(WHEN);
+            if (when != null && !(when instanceof Map)) {
+                throw new IllegalArgumentException("'when' of "+route+" must be a map of header values");
+            }
+            Map<String, String> conditions = new HashMap<>();
+            if (when != null) {
+                Map<String, Object> headers = (Map<String, Object>) when;
+                for (String h: headers.keySet()) {
+                    conditions.put(h, String.valueOf(headers.get(h)));
+                }
+            }
+            Object weight = map.get(WEIGHT);
+            return new MulticastTarget(route == null? null : route.toString(), conditions,
+                        weight == null? 100 : Utility.getInstance().str2int(weight.toString()));
+        }
+        throw new IllegalArgumentException("Target must be a route name or a map of route, when and weight");
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * Check if an event should be delivered to this target
+     *
+     * @param headers of the event
+     * @return true if the event matches the conditions and falls within the weight
+     */
+    public boolean accept(Map<String, String> headers) {
+        for (Map.Entry<String, String> kv: conditions.entrySet()) {
+            if (!kv.getValue().equals(headers.get(kv.getKey()))) {
+                skipped.incrementAndGet();
+                return false;
+            }
+        }
+        if (weight < 100) {
+            // deliver exactly "weight" out of every 100 matching events, evenly spread
+            long n = matched.incrementAndGet();
+            if ((n * weight) / 100 == ((n - 1) * weight) / 100) {
+                skipped.incrementAndGet();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reachability is evaluated again only when the routing table has changed
+     *
+     * @return true if the target route is reachable
+     */
+    public boolean isReachable() {
+        long version = PostOffice.getRouteVersion();
+        if (version != routeVersion) {
+            reachable = PostOffice.getInstance().exists(route);
+            routeVersion = version;
+        }
+        if (!reachable) {
+            unreachable.incrementAndGet();
+        }
+        return reachable;
+    }
+
+    public void delivered() {
+        delivered.incrementAndGet();
+    }
+
+    public void failed() {
+        failed.incrementAndGet();
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put(DELIVERED, delivered.get());
+        result.put(FAILED, failed.get());
+        result.put(UNREACHABLE, unreachable.get());
+        result.put(SKIPPED, skipped.get());
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (conditions.isEmpty() && weight == 100) {
+            return route;
+        }
+        StringBuilder sb = new StringBuilder(route);
+        if (!conditions.isEmpty()) {
+            sb.append(" when ").append(conditions);
+        }
+        if (weight < 100) {
+            sb.append(" weight ").append(weight).append('%');
+        }
+        return sb.toString();
+    }
+
+}
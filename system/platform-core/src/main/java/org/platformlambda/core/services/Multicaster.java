@@ -7,6 +7,7 @@ import org.platformlambda.core.system.PostOffice;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,9 +16,9 @@ public class Multicaster implements LambdaFunction {
     private static final Logger log = LoggerFactory.getLogger(Multicaster.class);
 
     private final String source;
-    private final List<String> targets;
+    private final List<MulticastTarget> targets;
 
-    public Multicaster(String source, List<String> targets) {
+    public Multicaster(String source, List<MulticastTarget> targets) {
         this.source = source;
         this.targets = targets;
         log.info("Multicast routing - {} -> {}", source, targets);
@@ -27,17 +28,42 @@ public class Multicaster implements LambdaFunction {
     public Object handleEvent(Map<String, String> headers, Object body, int instance) {
         PostOffice po = PostOffice.getInstance();
         EventEnvelope event = (EventEnvelope) body;
-        for (String service: targets) {
-            if (po.exists(service)) {
-                try {
-                    po.send(event.copy().setTo(service));
-                } catch (Exception e) {
-                    log.warn("Unable to relay {} -> {} - {}", source, service, e.getMessage());
+        boolean packed = targets.size() == 1;
+        for (MulticastTarget target: targets) {
+            if (target.accept(event.getHeaders())) {
+                String service = target.getRoute();
+                if (target.isReachable()) {
+                    try {
+                        if (!packed) {
+                            // encode the body once and share it with all target events
+                            event.packBody();
+                            packed = true;
+                        }
+                        po.send(event.copy().setTo(service));
+                        target.delivered();
+                    } catch (Exception e) {
+                        target.failed();
+                        log.warn("Unable to relay {} -> {} - {}", source, service, e.getMessage());
+                    }
+                } else {
+                    log.warn("Unable to relay {} -> {} - target not reachable", source, service);
                 }
-            } else {
-                log.warn("Unable to relay {} -> {} - target not reachable", source, service);
             }
         }
         return null;
     }
+
+    /**
+     * Delivery metrics
+     *
+     * @return target route to delivery counters
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> result = new HashMap<>();
+        for (MulticastTarget target: targets) {
+            result.put(target.getRoute(), target.getMetrics());
+        }
+        return result;
+    }
+
 }
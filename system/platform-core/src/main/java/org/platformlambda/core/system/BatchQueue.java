@@ -0,0 +1,169 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+package org.platformlambda.core.system;
+
+import org.platformlambda.core.exception.AppException;
+import org.platformlambda.core.models.AdmissionPolicy;
+import org.platformlambda.core.models.BatchLambdaFunction;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.util.Utility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class BatchQueue extends WorkerQueues {
+    private static final Logger log = LoggerFactory.getLogger(BatchQueue.class);
+    private static final Utility util = Utility.getInstance();
+    private final int instance;
+
+    public BatchQueue(ServiceDef def, String route, int instance) {
+        super(def, route);
+        this.instance = instance;
+        this.started();
+    }
+
+    /**
+     * Called by the service manager to deliver a batch of events
+     *
+     * @param batch of encoded events
+     */
+    public void dispatch(List<byte[]> batch) {
+        if (!stopped) {
+            // decode and execute function as a future task
+            executor.submit(()->{
+                List<EventEnvelope> events = decode(batch);
+                if (!events.isEmpty()) {
+                    processEvents(events);
+                }
+                // return the worker slot to inform the system this worker is ready for next batch
+                ready(instance);
+            });
+        }
+    }
+
+    private List<EventEnvelope> decode(List<byte[]> batch) {
+        ServiceQueue manager = def.getManager();
+        AdmissionPolicy policy = manager == null? null : manager.getAdmissionPolicy();
+        boolean honorDeadline = policy != null && policy.isHonorDeadline();
+        List<EventEnvelope> events = new ArrayList<>(batch.size());
+        for (byte[] b: batch) {
+            try {
+                EventEnvelope event = new EventEnvelope(b);
+                if (honorDeadline && event.isExpired()) {
+                    // the caller has timed out so there is no need to execute the request
+                    manager.expired();
+                } else {
+                    events.add(event);
+                }
+            } catch (IOException e) {
+                log.error("Unable to decode event - {}", e.getMessage());
+            }
+        }
+        return events;
+    }
+
+    private void processEvents(List<EventEnvelope> events) {
+        PostOffice po = PostOffice.getInstance();
+        BatchLambdaFunction f = def.getBatchFunction();
+        List<Object> results = null;
+        Exception error = null;
+        long begin = System.nanoTime();
+        try {
+            results = f.handleEvents(Collections.unmodifiableList(events), instance);
+        } catch (Exception e) {
+            error = e;
+        }
+        float diff = ((float) (System.nanoTime() - begin)) / PostOffice.ONE_MILLISECOND;
+        if (error == null && results != null && results.size() != events.size()) {
+            log.warn("{} returned {} results for {} events", route, results.size(), events.size());
+        }
+        Throwable ex = error == null? null : util.getRootCause(error);
+        int status = ex == null? 200 : getStatus(ex);
+        boolean replied = false;
+        for (int i=0; i < events.size(); i++) {
+            EventEnvelope event = events.get(i);
+            String replyTo = event.getReplyTo();
+            if (replyTo == null) {
+                continue;
+            }
+            replied = true;
+            EventEnvelope response = new EventEnvelope();
+            response.setTo(replyTo);
+            response.setFrom(def.getRoute());
+            if (event.getCorrelationId() != null) {
+                response.setCorrelationId(event.getCorrelationId());
+            }
+            if (event.getExtra() != null) {
+                response.setExtra(event.getExtra());
+            }
+            // propagate the trace to the next service if any
+            if (event.getTraceId() != null) {
+                response.setTrace(event.getTraceId(), event.getTracePath());
+            }
+            if (ex != null) {
+                response.setStatus(status).setBody(ex.getMessage());
+                response.setException(error);
+            } else {
+                Object result = results != null && i < results.size()? results.get(i) : null;
+                if (result instanceof EventEnvelope) {
+                    EventEnvelope resultEvent = (EventEnvelope) result;
+                    Map<String, String> headers = resultEvent.getHeaders();
+                    response.setBody(resultEvent.getBody());
+                    for (String h : headers.keySet()) {
+                        response.setHeader(h, headers.get(h));
+                    }
+                    response.setStatus(resultEvent.getStatus());
+                    if (resultEvent.getParametricType() != null) {
+                        response.setParametricType(resultEvent.getParametricType());
+                    }
+                } else {
+                    response.setBody(result);
+                }
+                response.setExecutionTime(diff);
+            }
+            try {
+                po.send(response);
+            } catch (Exception nested) {
+                log.warn("Unhandled exception when sending reply from {} - {}", route, nested.getMessage());
+            }
+        }
+        if (ex != null && !replied) {
+            if (status >= 500) {
+                log.error("Unhandled exception for "+route, ex);
+            } else {
+                log.warn("Unhandled exception for {} - {}", route, ex.getMessage());
+            }
+        }
+    }
+
+    private int getStatus(Throwable ex) {
+        if (ex instanceof AppException) {
+            return ((AppException) ex).getStatus();
+        } else if (ex instanceof IllegalArgumentException || ex instanceof IOException) {
+            return 400;
+        } else {
+            return 500;
+        }
+    }
+
+}
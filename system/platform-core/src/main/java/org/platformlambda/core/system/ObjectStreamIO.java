@@ -75,7 +75,7 @@ public class ObjectStreamIO {
             HouseKeeper houseKeeper = new HouseKeeper();
             houseKeeper.start();
         }
-        String id = util.getUuid();
+        String id = util.getRandomId();
         String in = STREAM_PREFIX+".in."+id;
         String out = STREAM_PREFIX+".out."+id;
         this.inputStreamId = in + "@" + platform.getOrigin();
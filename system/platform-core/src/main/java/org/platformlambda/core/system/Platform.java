@@ -305,19 +305,30 @@ public class Platform {
             throw new IOException("Missing lambda function");
         }
         String path = getValidatedRoute(route);
+        activate(route, new ServiceDef(path, lambda).setConcurrency(instances).setPrivate(isPrivate));
+    }
+
+    /**
+     * Start the service queue of a function, wait for its initialization and add it to the routing table
+     *
+     * @param route as given by the caller
+     * @param service definition with a validated route
+     * @throws IOException in case the route cannot be advertised
+     */
+    private void activate(String route, ServiceDef service) throws IOException {
+        String path = service.getRoute();
         if (registry.containsKey(path)) {
             log.warn("{} will be reloaded", path);
             release(path);
         }
         String uuid = UUID.randomUUID().toString();
         BlockingQueue<Boolean> signal = new ArrayBlockingQueue<>(1);
-        ServiceDef service = new ServiceDef(path, lambda).setConcurrency(instances).setPrivate(isPrivate);
         ServiceQueue manager = new ServiceQueue(service);
         service.setManager(manager);
         // wait for service initialization
         try {
             serviceTokens.put(uuid, signal);
-            system.send(service.getRoute(), INIT+uuid);
+            system.send(path, INIT+uuid);
             signal.poll(2, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             log.error("{} took longer to initialize - the event system may be unhealthy", path);
@@ -326,7 +337,8 @@ public class Platform {
         }
         // save into local registry
         registry.put(path, service);
-        if (!isPrivate) {
+        PostOffice.invalidateRoutes();
+        if (!service.isPrivate()) {
             advertiseRoute(route);
         }
     }
@@ -344,28 +356,50 @@ public class Platform {
             throw new IOException("Missing lambda function");
         }
         String path = getValidatedRoute(route);
-        if (registry.containsKey(path)) {
-            log.warn("{} will be reloaded", path);
-            release(path);
-        }
-        String uuid = UUID.randomUUID().toString();
-        BlockingQueue<Boolean> signal = new ArrayBlockingQueue<>(1);
-        ServiceDef service = new ServiceDef(path, lambda).setConcurrency(1).setPrivate(isPrivate).setStream(true);
-        ServiceQueue manager = new ServiceQueue(service);
-        service.setManager(manager);
-        try {
-            serviceTokens.put(uuid, signal);
-            system.send(service.getRoute(), INIT+uuid);
-            signal.poll(2, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            log.error("{} took longer to initialize - the event system may be unhealthy", path);
-        } finally {
-            serviceTokens.remove(uuid);
-        }
-        registry.put(path, service);
-        if (!isPrivate) {
-            advertiseRoute(route);
+        activate(route, new ServiceDef(path, lambda).setConcurrency(1).setPrivate(isPrivate).setStream(true));
+    }
+
+    /**
+     * Register a public batch function with one or more concurrent instances.
+     * Events are delivered as a list of up to "batchSize" events or whatever
+     * has arrived when the batch window expires.
+     *
+     * @param route path
+     * @param lambda batch function
+     * @param instances for concurrent processing of batches
+     * @param batchSize maximum number of events in a batch
+     * @param batchWindow maximum time in milliseconds to wait for a batch to fill up
+     * @throws IOException in case of duplicated registration
+     */
+    public void registerBatch(String route, BatchLambdaFunction lambda, int instances,
+                              int batchSize, long batchWindow) throws IOException {
+        registerBatch(route, lambda, false, instances, batchSize, batchWindow);
+    }
+
+    /**
+     * Register a private batch function with one or more concurrent instances.
+     * Its routing path will not be published to the global service registry.
+     *
+     * @param route path
+     * @param lambda batch function
+     * @param instances for concurrent processing of batches
+     * @param batchSize maximum number of events in a batch
+     * @param batchWindow maximum time in milliseconds to wait for a batch to fill up
+     * @throws IOException in case of duplicated registration
+     */
+    public void registerPrivateBatch(String route, BatchLambdaFunction lambda, int instances,
+                                     int batchSize, long batchWindow) throws IOException {
+        registerBatch(route, lambda, true, instances, batchSize, batchWindow);
+    }
+
+    private void registerBatch(String route, BatchLambdaFunction lambda, boolean isPrivate, int instances,
+                               int batchSize, long batchWindow) throws IOException {
+        if (lambda == null) {
+            throw new IOException("Missing lambda function");
         }
+        String path = getValidatedRoute(route);
+        activate(route, new ServiceDef(path, lambda).setConcurrency(instances).setPrivate(isPrivate)
+                            .setBatch(batchSize, batchWindow));
     }
 
     private String getValidatedRoute(String route) throws IOException {
@@ -420,6 +454,7 @@ public class Platform {
             ServiceQueue manager = getManager(route);
             if (manager != null) {
                 registry.remove(route);
+                PostOffice.invalidateRoutes();
                 manager.stop();
             }
 
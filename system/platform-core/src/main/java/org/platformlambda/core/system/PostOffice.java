@@ -25,6 +25,7 @@ import org.platformlambda.core.actuator.ActuatorServices;
 import org.platformlambda.core.exception.AppException;
 import org.platformlambda.core.models.*;
 import org.platformlambda.core.services.DistributedTrace;
+import org.platformlambda.core.services.MulticastTarget;
 import org.platformlambda.core.services.Multicaster;
 import org.platformlambda.core.util.AppConfigReader;
 import org.platformlambda.core.util.ConfigReader;
@@ -37,6 +38,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PostOffice {
     private static final Logger log = LoggerFactory.getLogger(PostOffice.class);
@@ -53,18 +55,27 @@ public class PostOffice {
     private static final String MULTICAST_YAML = "multicast.yaml";
     private static final String JOURNAL_YAML = "journal.yaml";
     private static final String APP_GROUP_PREFIX = "monitor-";
+    private static final String ROUTE_NEGATIVE_CACHE = "route.negative.cache.ttl";
+    private static final int MAX_RESOLVED_ROUTES = 10000;
     private static final ConcurrentMap<String, FutureEvent> futureEvents = new ConcurrentHashMap<>();
     private static final ConcurrentMap<String, String> reRoutes = new ConcurrentHashMap<>();
     private static final ConcurrentMap<Long, TraceInfo> traces = new ConcurrentHashMap<>();
     private static final ConcurrentMap<String, ConcurrentMap<String, String>> cloudRoutes = new ConcurrentHashMap<>();
     private static final ConcurrentMap<String, String> cloudOrigins = new ConcurrentHashMap<>();
     private static final ConcurrentMap<String, Boolean> journaledRoutes = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Multicaster> multicasters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, ResolvedRoute> resolvedRoutes = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, ResolvedRoute> searchResults = new ConcurrentHashMap<>();
+    private static final AtomicLong routeVersion = new AtomicLong(0);
+    private static volatile ResolvedRoute cloudRoute;
+    private final long negativeCacheTtl;
     private final String traceLogHeader;
     private static final PostOffice instance = new PostOffice();
 
     private PostOffice() {
         AppConfigReader config = AppConfigReader.getInstance();
         traceLogHeader = config.getProperty("trace.log.header", "X-Trace-Id");
+        negativeCacheTtl = Math.max(0, Utility.getInstance().str2long(config.getProperty(ROUTE_NEGATIVE_CACHE, "2000")));
         Platform platform = Platform.getInstance();
         try {
             // start built-in services
@@ -108,6 +119,40 @@ public class PostOffice {
         return cloudOrigins;
     }
 
+    /**
+     * IMPORTANT: This method is reserved by the system. User application MUST NOT access this.
+     * <p>
+     * Invalidate resolved routes when the local or cloud routing table changes
+     */
+    public static void invalidateRoutes() {
+        routeVersion.incrementAndGet();
+        resolvedRoutes.clear();
+        searchResults.clear();
+        cloudRoute = null;
+    }
+
+    /**
+     * IMPORTANT: This method is reserved by the system. User application MUST NOT access this.
+     *
+     * @return version of the routing table that changes when routes are added or removed
+     */
+    public static long getRouteVersion() {
+        return routeVersion.get();
+    }
+
+    /**
+     * Delivery metrics of multicast routes
+     *
+     * @return source route to target delivery counters
+     */
+    public Map<String, Object> getMulticastMetrics() {
+        Map<String, Object> result = new HashMap<>();
+        for (Map.Entry<String, Multicaster> kv: multicasters.entrySet()) {
+            result.put(kv.getKey(), kv.getValue().getMetrics());
+        }
+        return result;
+    }
+
     public boolean isJournaled(String route) {
         return journaledRoutes.getOrDefault(route, false);
     }
@@ -146,12 +191,22 @@ public class PostOffice {
         int n = 0;
         while (true) {
             String source = (String) multi.getElement("multicast["+n+"].source");
-            List<String> targets = (List<String>) multi.getElement("multicast["+n+"].targets");
-            if (source == null || targets == null) {
+            List<Object> entries = (List<Object>) multi.getElement("multicast["+n+"].targets");
+            Object instances = multi.getElement("multicast["+n+"].instances");
+            if (source == null || entries == null) {
                 break;
             }
             n++;
-            if (targets.contains(source)) {
+            List<MulticastTarget> targets = new ArrayList<>();
+            try {
+                for (Object entry: entries) {
+                    targets.add(MulticastTarget.fromConfig(entry));
+                }
+            } catch (IllegalArgumentException e) {
+                log.error("Invalid multicast {} ignored - {}", source, e.getMessage());
+                continue;
+            }
+            if (targets.stream().anyMatch(t -> t.getRoute().equals(source))) {
                 log.error("Cyclic multicast ignored ({} exists in {})", source, targets);
                 continue;
             }
@@ -161,7 +216,10 @@ public class PostOffice {
             }
             list.add(source);
             try {
-                platform.registerPrivate(source, new Multicaster(source, targets), 1);
+                Multicaster multicaster = new Multicaster(source, targets);
+                int count = instances == null? 1 : Math.max(1, Utility.getInstance().str2int(instances.toString()));
+                platform.registerPrivate(source, multicaster, count);
+                multicasters.put(source, multicaster);
             } catch (IOException e) {
                 log.error("Unable to register multicast {} - {}", source, e.getMessage());
             }
@@ -300,7 +358,20 @@ public class PostOffice {
      * @param tracePath for the transaction
      */
     public void startTracing(String route, String traceId, String tracePath) {
-        traces.put(Thread.currentThread().getId(), new TraceInfo(route, traceId, tracePath));
+        startTracing(route, traceId, tracePath, 0);
+    }
+
+    /**
+     * IMPORTANT: This method is reserved by the system. User application MUST NOT access this.
+     * @param route name
+     * @param traceId to identify a transaction
+     * @param tracePath for the transaction
+     * @param deadline of the incoming request in epoch milliseconds or zero
+     */
+    public void startTracing(String route, String traceId, String tracePath, long deadline) {
+        TraceInfo trace = new TraceInfo(route, traceId, tracePath);
+        trace.deadline = deadline;
+        traces.put(Thread.currentThread().getId(), trace);
     }
 
     /**
@@ -313,6 +384,17 @@ public class PostOffice {
         traces.put(Thread.currentThread().getId(), new TraceInfo(getRoute(), traceId, tracePath));
     }
 
+    /**
+     * Resume the trace of a function on the current thread when its completion stage completes
+     *
+     * @param trace of the function or null to clear the trace of the current thread
+     * @return the trace that was active on the current thread if any
+     */
+    TraceInfo resumeTracing(TraceInfo trace) {
+        long threadId = Thread.currentThread().getId();
+        return trace == null? traces.remove(threadId) : traces.put(threadId, trace);
+    }
+
     /**
      * IMPORTANT: This method is reserved by the system. User application MUST NOT access this.
      * @return current trace info before it is stopped
@@ -338,30 +420,43 @@ public class PostOffice {
      */
     public TargetRoute discover(String to, boolean endOfRoute) throws IOException {
         boolean checkCloud = !endOfRoute && !to.equals(CLOUD_CONNECTOR);
-        Platform platform = Platform.getInstance();
-        if (to.contains("@")) {
-            int at = to.indexOf('@');
-            String origin = to.substring(at+1);
-            String target = to.substring(0, at);
-            if (origin.equals(platform.getOrigin())) {
-                if (platform.hasRoute(target)) {
-                    return new TargetRoute(platform.getManager(target), false);
-                }
-            } else if (checkCloud) {
-                TargetRoute cloud = getCloudRoute();
-                if (cloud != null) {
-                    if (origin.startsWith(APP_GROUP_PREFIX) || cloudOrigins.containsKey(origin)) {
-                        return cloud;
+        int at = to.indexOf('@');
+        if (at == -1) {
+            // resolved routes are valid until the routing table changes
+            long version = routeVersion.get();
+            ResolvedRoute resolved = resolvedRoutes.get(to);
+            if (resolved != null && resolved.isValid(version)) {
+                if (resolved.target != null) {
+                    if (checkCloud || !resolved.target.isCloud()) {
+                        return resolved.target;
                     }
+                } else if (checkCloud) {
+                    throw new IOException("Route "+to+" not found");
                 }
             }
-
-        } else {
-            if (platform.hasRoute(to)) {
-                return new TargetRoute(platform.getManager(to), false);
-            } else if (checkCloud) {
-                TargetRoute cloud = getCloudRoute();
-                if (cloud != null && exists(to)) {
+            try {
+                TargetRoute target = resolve(to, checkCloud);
+                saveResolvedRoute(resolvedRoutes, to, new ResolvedRoute(version, 0, target, null));
+                return target;
+            } catch (IOException e) {
+                if (checkCloud && negativeCacheTtl > 0) {
+                    saveResolvedRoute(resolvedRoutes, to, new ResolvedRoute(version,
+                            System.currentTimeMillis() + negativeCacheTtl, null, null));
+                }
+                throw e;
+            }
+        }
+        Platform platform = Platform.getInstance();
+        String origin = to.substring(at+1);
+        if (origin.equals(platform.getOrigin())) {
+            String target = to.substring(0, at);
+            if (platform.hasRoute(target)) {
+                return discover(target, true);
+            }
+        } else if (checkCloud) {
+            TargetRoute cloud = getCloudRoute();
+            if (cloud != null) {
+                if (origin.startsWith(APP_GROUP_PREFIX) || cloudOrigins.containsKey(origin)) {
                     return cloud;
                 }
             }
@@ -369,12 +464,38 @@ public class PostOffice {
         throw new IOException("Route "+to+" not found");
     }
 
-    public TargetRoute getCloudRoute() {
+    private TargetRoute resolve(String to, boolean checkCloud) throws IOException {
         Platform platform = Platform.getInstance();
-        if (platform.hasRoute(CLOUD_CONNECTOR)) {
-            return new TargetRoute(platform.getManager(CLOUD_CONNECTOR), true);
+        ServiceQueue manager = platform.getManager(to);
+        if (manager != null) {
+            return new TargetRoute(manager, false);
+        } else if (checkCloud) {
+            TargetRoute cloud = getCloudRoute();
+            if (cloud != null && exists(to)) {
+                return cloud;
+            }
         }
-        return null;
+        throw new IOException("Route "+to+" not found");
+    }
+
+    private void saveResolvedRoute(ConcurrentMap<String, ResolvedRoute> cache, String route, ResolvedRoute resolved) {
+        // unknown routes are not bounded so the cache is reset when it is too large
+        if (cache.size() >= MAX_RESOLVED_ROUTES) {
+            cache.clear();
+        }
+        cache.put(route, resolved);
+    }
+
+    public TargetRoute getCloudRoute() {
+        long version = routeVersion.get();
+        ResolvedRoute resolved = cloudRoute;
+        if (resolved != null && resolved.isValid(version)) {
+            return resolved.target;
+        }
+        ServiceQueue manager = Platform.getInstance().getManager(CLOUD_CONNECTOR);
+        TargetRoute target = manager == null? null : new TargetRoute(manager, true);
+        cloudRoute = new ResolvedRoute(version, 0, target, null);
+        return target;
     }
 
     /**
@@ -605,6 +726,9 @@ public class PostOffice {
 
     public String substituteRouteIfAny(String to) {
         if (to != null) {
+            if (reRoutes.isEmpty()) {
+                return to;
+            }
             int slash = to.indexOf('@');
             if (slash > 0) {
                 String replacement = reRoutes.get(to.substring(0, slash));
@@ -691,6 +815,25 @@ public class PostOffice {
         }
     }
 
+    /**
+     * Set the deadline of a request from its timeout.
+     * A nested request inherits the deadline of the request being processed if it is earlier.
+     *
+     * @param event outgoing request
+     * @param timeout in milliseconds
+     * @param trace of the current function if any
+     */
+    private void setDeadline(EventEnvelope event, long timeout, TraceInfo trace) {
+        long deadline = System.currentTimeMillis() + Math.max(10, timeout);
+        if (trace != null && trace.deadline > 0) {
+            deadline = Math.min(deadline, trace.deadline);
+        }
+        if (event.getDeadline() > 0) {
+            deadline = Math.min(deadline, event.getDeadline());
+        }
+        event.setDeadline(deadline);
+    }
+
     /**
      * Ping a target service to check for availability and network latency
      *
@@ -807,6 +950,7 @@ public class PostOffice {
                 event.setTrace(trace.id, trace.path);
             }
         }
+        setDeadline(event, timeout, trace);
         Platform platform = Platform.getInstance();
         TargetRoute target = discover(to, event.isEndOfRoute());
         try (Inbox inbox = new Inbox(1)) {
@@ -878,6 +1022,7 @@ public class PostOffice {
             if (event.getCorrelationId() == null) {
                 event.setCorrelationId(String.valueOf(seq));
             }
+            setDeadline(event, timeout, trace);
             destinations.add(discover(to, event.isEndOfRoute()));
         }
         Platform platform = Platform.getInstance();
@@ -902,6 +1047,67 @@ public class PostOffice {
         }
     }
 
+    /**
+     * Make a request to multiple target services in parallel and receive the responses as they arrive.
+     * <p>
+     * The returned scatter-gather inbox delivers responses with its poll method or iterator
+     * and its future completes according to the completion policy.
+     * Please close it when you no longer need the outstanding responses.
+     *
+     * @param events of multiple requests
+     * @param timeout overall timeout in milliseconds
+     * @param policy for completion, target timeout and hedging
+     * @return scatter-gather inbox
+     * @throws IOException in case of error
+     */
+    public ScatterGather scatterGather(List<EventEnvelope> events, long timeout, ScatterGatherPolicy policy)
+            throws IOException {
+        if (events == null || events.isEmpty()) {
+            throw new IllegalArgumentException("Missing outgoing events");
+        }
+        long targetTimeout = policy == null? 0 : policy.getTargetTimeout();
+        long eventTimeout = targetTimeout > 0? Math.min(targetTimeout, timeout) : timeout;
+        List<TargetRoute> destinations = new ArrayList<>();
+        int seq = 0;
+        for (EventEnvelope event: events) {
+            seq++;
+            String dest = event.getTo();
+            if (dest == null) {
+                throw new IllegalArgumentException("Missing routing path");
+            }
+            String to = substituteRouteIfAny(dest);
+            event.setTo(to);
+            // propagate trace info
+            TraceInfo trace = getTrace();
+            if (trace != null) {
+                if (trace.route != null && event.getFrom() == null) {
+                    event.setFrom(trace.route);
+                }
+                if (trace.id != null && trace.path != null) {
+                    event.setTrace(trace.id, trace.path);
+                }
+            }
+            if (event.getCorrelationId() == null) {
+                event.setCorrelationId(String.valueOf(seq));
+            }
+            setDeadline(event, eventTimeout, trace);
+            destinations.add(discover(to, event.isEndOfRoute()));
+        }
+        EventBus system = Platform.getInstance().getEventSystem();
+        ScatterGather inbox = new ScatterGather(events, Math.max(10, timeout), policy);
+        int n = 0;
+        for (EventEnvelope event : events) {
+            TargetRoute target = destinations.get(n);
+            if (target.isCloud()) {
+                MultipartPayload.getInstance().outgoing(target.getManager(), event);
+            } else {
+                system.send(target.getManager().getRoute(), event.toBytes());
+            }
+            n++;
+        }
+        return inbox;
+    }
+
     /**
      * Send a request asynchronously with a future result
      * <p>
@@ -936,6 +1142,7 @@ public class PostOffice {
                 event.setTrace(trace.id, trace.path);
             }
         }
+        setDeadline(event, timeout, trace);
         Platform platform = Platform.getInstance();
         TargetRoute target = discover(to, event.isEndOfRoute());
         AsyncInbox inbox = new AsyncInbox(to, timeout);
@@ -1025,13 +1232,24 @@ public class PostOffice {
             return Collections.singletonList(platform.getOrigin());
         }
         if (Platform.isCloudSelected()) {
+            long version = routeVersion.get();
+            ResolvedRoute resolved = searchResults.get(actualRoute);
+            if (resolved != null && resolved.isValid(version)) {
+                return new ArrayList<>(resolved.origins);
+            }
             try {
                 if (platform.hasRoute(ServiceDiscovery.SERVICE_QUERY) || platform.hasRoute(CLOUD_CONNECTOR)) {
                     EventEnvelope response = request(ServiceDiscovery.SERVICE_QUERY, 3000,
                             new Kv(ServiceDiscovery.TYPE, ServiceDiscovery.SEARCH),
                             new Kv(ServiceDiscovery.ROUTE, actualRoute));
                     if (response.getBody() instanceof List) {
-                        return (List<String>) response.getBody();
+                        List<String> origins = (List<String>) response.getBody();
+                        if (!origins.isEmpty() || negativeCacheTtl > 0) {
+                            long expiry = origins.isEmpty()? System.currentTimeMillis() + negativeCacheTtl : 0;
+                            saveResolvedRoute(searchResults, actualRoute,
+                                    new ResolvedRoute(version, expiry, null, new ArrayList<>(origins)));
+                        }
+                        return origins;
                     }
                 }
             } catch (IOException | TimeoutException e) {
@@ -1044,4 +1262,22 @@ public class PostOffice {
         return Collections.emptyList();
     }
 
+    private static class ResolvedRoute {
+        private final long version;
+        private final long expiry;
+        private final TargetRoute target;
+        private final List<String> origins;
+
+        private ResolvedRoute(long version, long expiry, TargetRoute target, List<String> origins) {
+            this.version = version;
+            this.expiry = expiry;
+            this.target = target;
+            this.origins = origins;
+        }
+
+        private boolean isValid(long currentVersion) {
+            return version == currentVersion && (expiry == 0 || System.currentTimeMillis() < expiry);
+        }
+    }
+
 }
@@ -18,6 +18,7 @@
 
 package org.platformlambda.core.system;
 
+import org.platformlambda.core.models.BatchLambdaFunction;
 import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.StreamFunction;
 import org.platformlambda.core.models.TypedLambdaFunction;
@@ -30,11 +31,13 @@ public class ServiceDef {
 
     private static final String HANDLE_EVENT = "handleEvent";
     private static final int MAX_INSTANCES = 1000;
+    private static final int MAX_BATCH_SIZE = 10000;
 
     private final String route;
     @SuppressWarnings("rawtypes")
     private final TypedLambdaFunction lambda;
     private final StreamFunction stream;
+    private final BatchLambdaFunction batch;
     private final String id;
     private ServiceQueue manager;
     private final Date created = new Date();
@@ -42,13 +45,16 @@ public class ServiceDef {
     private boolean isStreamFunction = false;
     private boolean useEnvelope = false;
     private int instances = 1;
+    private int batchSize = 1;
+    private long batchWindow = 0;
 
     @SuppressWarnings("rawtypes")
     public ServiceDef(String route, TypedLambdaFunction lambda) {
-        this.id = Utility.getInstance().getUuid();
+        this.id = Utility.getInstance().getUniqueId();
         this.route = route;
         this.lambda = lambda;
         this.stream = null;
+        this.batch = null;
         Method[] methods = lambda.getClass().getDeclaredMethods();
         for (Method m: methods) {
             Class<?>[] arguments = m.getParameterTypes();
@@ -61,10 +67,19 @@ public class ServiceDef {
     }
 
     public ServiceDef(String route, StreamFunction stream) {
-        this.id = Utility.getInstance().getUuid();
+        this.id = Utility.getInstance().getUniqueId();
         this.route = route;
         this.stream = stream;
         this.lambda = null;
+        this.batch = null;
+    }
+
+    public ServiceDef(String route, BatchLambdaFunction batch) {
+        this.id = Utility.getInstance().getUniqueId();
+        this.route = route;
+        this.batch = batch;
+        this.lambda = null;
+        this.stream = null;
     }
 
     public String getId() {
@@ -88,6 +103,33 @@ public class ServiceDef {
         return stream;
     }
 
+    public BatchLambdaFunction getBatchFunction() {
+        return batch;
+    }
+
+    public boolean isBatch() {
+        return batch != null;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Batch window in milliseconds
+     *
+     * @return maximum time to wait for a batch to fill up
+     */
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+
+    public ServiceDef setBatch(int batchSize, long batchWindow) {
+        this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        this.batchWindow = Math.max(0, batchWindow);
+        return this;
+    }
+
     public boolean isPrivate() {
         return isPrivateFunction;
     }
@@ -18,55 +18,121 @@
 
 package org.platformlambda.core.system;
 
+import io.vertx.core.Context;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.eventbus.MessageConsumer;
+import org.platformlambda.core.models.AdmissionPolicy;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.util.AppConfigReader;
+import org.platformlambda.core.util.ConfigReader;
 import org.platformlambda.core.util.ElasticQueue;
+import org.platformlambda.core.util.MultiLevelMap;
+import org.platformlambda.core.util.Utility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.*;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ServiceQueue {
     private static final Logger log = LoggerFactory.getLogger(ServiceQueue.class);
     private static final String INIT = "init:";
     private static final String READY = "ready";
     private static final String HASH = "#";
+    private static final String ADMISSION_YAML = "admission.yaml";
+    private static final String ADMISSION = "admission";
+    private static final ConcurrentMap<String, AdmissionPolicy> policies = loadAdmissionPolicies();
+    private static final int maxAsync = Math.max(1, Utility.getInstance().str2int(
+            AppConfigReader.getInstance().getProperty("max.async.completions", "1000")));
     private final ElasticQueue elasticQueue;
     private final String route;
-    private final String readyPrefix;
     private final String streamRoute;
     private final EventBus system;
-    private final ConcurrentLinkedQueue<String> pool = new ConcurrentLinkedQueue<>();
     private final List<WorkerQueues> workers = new ArrayList<>();
+    private final WorkerQueue[] eventWorkers;
+    private final BatchQueue[] batchWorkers;
+    private final WorkerSlots slots;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final List<byte[]> staging = new ArrayList<>();
+    private final int batchSize;
+    private final long batchWindow;
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong expired = new AtomicLong(0);
+    private final AtomicLong overflow = new AtomicLong(0);
+    private final AtomicLong totalQueueDelay = new AtomicLong(0);
+    private final AtomicLong dequeued = new AtomicLong(0);
+    private final AtomicInteger asyncPending = new AtomicInteger(0);
     private MessageConsumer<Object> consumer;
-    private boolean buffering = true;
-    private boolean stopped = false;
+    private volatile Context context;
+    private volatile AdmissionPolicy policy;
+    private volatile long backlog = 0, backlogBytes = 0, maxQueueDelay = 0;
+    private long stagedSince = 0;
+    private final EnqueueTimes enqueueTimes = new EnqueueTimes();
+    private boolean flushPending = false;
+    private boolean streamReady = false;
+    private volatile boolean buffering;
+    private volatile boolean stopped = false;
 
     public ServiceQueue(ServiceDef service) {
         this.route = service.getRoute();
-        this.readyPrefix = READY+":" + service.getRoute() + HASH;
         this.elasticQueue = new ElasticQueue(route);
+        this.policy = policies.get(route);
+        if (this.policy != null) {
+            log.info("Admission policy for {} - {}", route, this.policy);
+        }
         // create consumer
         system = Platform.getInstance().getEventSystem();
         consumer = system.localConsumer(service.getRoute(), new ServiceHandler());
-        if (service.isStream()) {
+        this.batchSize = service.getBatchSize();
+        this.batchWindow = service.getBatchWindow();
+        // a stream function pulls events so the queue starts buffering until its first ready signal
+        this.buffering = service.isStream();
+        if (service.isBatch()) {
+            streamRoute = null;
+            eventWorkers = null;
+            int instances = service.getConcurrency();
+            batchWorkers = new BatchQueue[instances];
+            slots = new WorkerSlots(instances);
+            for (int i = 0; i < instances; i++) {
+                int n = i + 1;
+                BatchQueue worker = new BatchQueue(service, route + HASH + n, n);
+                batchWorkers[i] = worker;
+                workers.add(worker);
+                slots.release(i);
+            }
+            log.info("{} {} with {} instance{} started, batch size {}, window {} ms",
+                    service.isPrivate() ? "PRIVATE" : "PUBLIC", route, instances, instances == 1 ? "" : "s",
+                    batchSize, batchWindow);
+        } else if (service.isStream()) {
             streamRoute = route + HASH + 1;
+            eventWorkers = null;
+            batchWorkers = null;
+            slots = null;
             StreamQueue worker = new StreamQueue(service, streamRoute);
             workers.add(worker);
             log.info("{} {} started", "PRIVATE", route);
         } else {
             // create workers
             streamRoute = null;
+            batchWorkers = null;
             int instances = service.getConcurrency();
+            eventWorkers = new WorkerQueue[instances];
+            slots = new WorkerSlots(instances);
             for (int i = 0; i < instances; i++) {
                 int n = i + 1;
                 WorkerQueue worker = new WorkerQueue(service, route + HASH + n, n);
+                eventWorkers[i] = worker;
                 workers.add(worker);
+                slots.release(i);
             }
             log.info("{} {} with {} instance{} started", service.isPrivate() ? "PRIVATE" : "PUBLIC",
                     route, instances, instances == 1 ? "" : "s");
@@ -78,7 +144,10 @@ public class ServiceQueue {
     }
 
     public int getFreeWorkers() {
-        return pool.size();
+        if (slots == null) {
+            return streamReady? 1 : 0;
+        }
+        return slots.available();
     }
 
     public long getReadCounter() {
@@ -89,6 +158,117 @@ public class ServiceQueue {
         return elasticQueue.getWriteCounter();
     }
 
+    public AdmissionPolicy getAdmissionPolicy() {
+        return policy;
+    }
+
+    /**
+     * Set or remove the admission policy of this route
+     *
+     * @param policy or null to accept events without limit
+     */
+    public void setAdmissionPolicy(AdmissionPolicy policy) {
+        this.policy = policy;
+        log.info("Admission policy for {} - {}", route, policy == null? "none" : policy);
+    }
+
+    public long getBacklog() {
+        return backlog;
+    }
+
+    public long getBacklogBytes() {
+        return backlogBytes;
+    }
+
+    /**
+     * Number of events rejected with status 503 by the admission policy
+     *
+     * @return count
+     */
+    public long getRejectedCounter() {
+        return rejected.get();
+    }
+
+    /**
+     * Number of events discarded because they have waited too long or their callers have timed out
+     *
+     * @return count
+     */
+    public long getExpiredCounter() {
+        return expired.get();
+    }
+
+    /**
+     * Number of events accepted beyond the backlog limit in SPILL mode
+     *
+     * @return count
+     */
+    public long getOverflowCounter() {
+        return overflow.get();
+    }
+
+    public Map<String, Object> getAdmissionMetrics() {
+        Map<String, Object> result = new HashMap<>();
+        long n = dequeued.get();
+        result.put("backlog", backlog);
+        result.put("backlog_bytes", backlogBytes);
+        result.put("rejected", rejected.get());
+        result.put("expired", expired.get());
+        result.put("overflow", overflow.get());
+        result.put("max_queue_delay_ms", maxQueueDelay);
+        result.put("avg_queue_delay_ms", n == 0? 0 : totalQueueDelay.get() / n);
+        result.put("async_pending", asyncPending.get());
+        AdmissionPolicy current = policy;
+        if (current != null) {
+            result.put("policy", current.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Called by a worker when an asynchronous function has returned a completion stage
+     *
+     * @return true if the worker can be released before the stage completes
+     */
+    protected boolean startAsync() {
+        return asyncPending.incrementAndGet() <= maxAsync;
+    }
+
+    /**
+     * Called by a worker when the completion stage of an asynchronous function has completed
+     */
+    protected void endAsync() {
+        asyncPending.decrementAndGet();
+    }
+
+    /**
+     * Called by a worker when it discards a request whose caller has timed out
+     */
+    protected void expired() {
+        expired.incrementAndGet();
+    }
+
+    /**
+     * Called by a worker when it has finished processing an event or a batch.
+     * <p>
+     * The slot is returned to the lock-free pool so that the next incoming event is handed over
+     * directly without any signaling. If events are waiting in the elastic queue or the staging area,
+     * a drain task is scheduled on the event loop of this service.
+     *
+     * @param slot index of the worker
+     */
+    protected void ready(int slot) {
+        if (slots != null) {
+            slots.release(slot);
+            if (!stopped && (buffering || batchWorkers != null)) {
+                Context ctx = context;
+                if (ctx != null && drainScheduled.compareAndSet(false, true)) {
+                    ctx.runOnContext(v -> drain());
+                }
+            }
+        }
+    }
+
     public void stop() {
         if (consumer != null && consumer.isRegistered()) {
             // closing consumer
@@ -99,6 +279,10 @@ public class ServiceQueue {
             }
             // completely close the associated elastic queue
             elasticQueue.destroy();
+            enqueueTimes.clear();
+            backlog = 0;
+            backlogBytes = 0;
+            staging.clear();
             consumer = null;
             stopped = true;
             log.info("{} stopped", route);
@@ -109,6 +293,9 @@ public class ServiceQueue {
 
         @Override
         public void handle(Message<Object> message) {
+            if (context == null) {
+                context = Vertx.currentContext();
+            }
             Object body = message.body();
             if (body instanceof String) {
                 String text = (String) body;
@@ -118,23 +305,17 @@ public class ServiceQueue {
                     if (signal != null) {
                         signal.offer(true);
                     }
-                } else {
-                    String sender = getWorker(text);
-                    if (sender != null && !stopped) {
-                        pool.offer(sender);
-                        if (buffering) {
-                            byte[] event = elasticQueue.read();
-                            if (event == null) {
-                                // Close elastic queue when all messages are cleared
-                                buffering = false;
-                                elasticQueue.close();
-                            } else {
-                                // Guarantees that there is an available worker
-                                String next = pool.poll();
-                                if (next != null) {
-                                    system.send(next, event);
-                                }
-                            }
+                } else if (READY.equals(text) && streamRoute != null && !stopped) {
+                    streamReady = true;
+                    if (buffering) {
+                        byte[] event = dequeue();
+                        if (event == null) {
+                            // Close elastic queue when all messages are cleared
+                            buffering = false;
+                            elasticQueue.close();
+                        } else {
+                            streamReady = false;
+                            system.send(streamRoute, event);
                         }
                     }
                 }
@@ -142,21 +323,30 @@ public class ServiceQueue {
             if (body instanceof byte[]) {
                 byte[] event = (byte[]) body;
                 if (!stopped) {
-                    if (buffering) {
+                    if (batchWorkers != null) {
+                        stage(event);
+                    } else if (buffering) {
                         // Once elastic queue is started, we will continue buffering.
-                        elasticQueue.write(event);
+                        enqueue(event);
+                    } else if (streamRoute != null) {
+                        if (streamReady) {
+                            streamReady = false;
+                            system.send(streamRoute, event);
+                        } else {
+                            // Start persistent queue when the stream function has not asked for more
+                            buffering = true;
+                            enqueue(event);
+                        }
                     } else {
-                        String next = pool.peek();
-                        if (next == null) {
+                        int slot = slots.acquire();
+                        if (slot < 0) {
                             // Start persistent queue when no workers are available
                             buffering = true;
-                            elasticQueue.write(event);
+                            enqueue(event);
+                            // a worker may have returned its slot before it could see the buffering flag
+                            drain();
                         } else {
-                            // Guarantees that there is an available worker
-                            next = pool.poll();
-                            if (next != null) {
-                                system.send(next, event);
-                            }
+                            eventWorkers[slot].dispatch(event);
                         }
                     }
                 }
@@ -164,13 +354,302 @@ public class ServiceQueue {
         }
     }
 
-    private String getWorker(String input) {
-        if (input.startsWith(readyPrefix)) {
-            return input.substring(READY.length()+1);
-        } else if (READY.equals(input) && streamRoute != null) {
-            return streamRoute;
+    /**
+     * Hand over buffered events to free workers. This must run in the event loop of this service.
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        if (stopped) {
+            return;
+        }
+        if (batchWorkers != null) {
+            refill();
+            dispatchBatches();
+            return;
+        }
+        while (buffering) {
+            int slot = slots.acquire();
+            if (slot < 0) {
+                return;
+            }
+            byte[] event = dequeue();
+            if (event == null) {
+                // Close elastic queue when all messages are cleared
+                slots.release(slot);
+                buffering = false;
+                elasticQueue.close();
+                return;
+            }
+            eventWorkers[slot].dispatch(event);
+        }
+    }
+
+    /**
+     * Hold an incoming event in the staging area of a batch function.
+     * Events overflow into the elastic queue when the staging area is full.
+     *
+     * @param event to be delivered
+     */
+    private void stage(byte[] event) {
+        if (!buffering && staging.size() < batchSize) {
+            if (staging.isEmpty()) {
+                stagedSince = System.currentTimeMillis();
+            }
+            staging.add(event);
+        } else {
+            // Once elastic queue is started, we will continue buffering.
+            buffering = true;
+            enqueue(event);
+        }
+        dispatchBatches();
+    }
+
+    /**
+     * Move buffered events from the elastic queue into the staging area
+     */
+    private void refill() {
+        while (buffering && staging.size() < batchSize) {
+            byte[] event = dequeue();
+            if (event == null) {
+                // Close elastic queue when all messages are cleared
+                buffering = false;
+                elasticQueue.close();
+            } else {
+                if (staging.isEmpty()) {
+                    stagedSince = System.currentTimeMillis();
+                }
+                staging.add(event);
+            }
+        }
+    }
+
+    /**
+     * Deliver staged events to available batch workers when a batch is full or its window has elapsed.
+     * Otherwise, schedule a flush signal when the batch window expires.
+     */
+    private void dispatchBatches() {
+        while (!staging.isEmpty() && !slots.isEmpty()) {
+            long waited = System.currentTimeMillis() - stagedSince;
+            if (staging.size() < batchSize && waited < batchWindow) {
+                if (!flushPending) {
+                    flushPending = true;
+                    // the timer fires in the event loop of this service
+                    Platform.getInstance().getVertx().setTimer(batchWindow - waited, t -> {
+                        flushPending = false;
+                        if (!stopped) {
+                            dispatchBatches();
+                        }
+                    });
+                }
+                return;
+            }
+            int slot = slots.acquire();
+            if (slot < 0) {
+                return;
+            }
+            batchWorkers[slot].dispatch(new ArrayList<>(staging));
+            staging.clear();
+            refill();
+        }
+    }
+
+    private void enqueue(byte[] event) {
+        AdmissionPolicy current = policy;
+        if (current != null && current.isOverLimit(backlog, backlogBytes, event.length)) {
+            if (current.getShedMode() == AdmissionPolicy.ShedMode.REJECT) {
+                reject(event, "Service " + route + " is overloaded");
+                return;
+            }
+            if (current.getShedMode() == AdmissionPolicy.ShedMode.DROP_OLDEST) {
+                while (backlog > 0 && current.isOverLimit(backlog, backlogBytes, event.length)) {
+                    byte[] oldest = take();
+                    if (oldest == null) {
+                        break;
+                    }
+                    reject(oldest, "Service " + route + " is overloaded");
+                }
+                if (current.isOverLimit(backlog, backlogBytes, event.length)) {
+                    // the incoming event alone exceeds the byte limit
+                    reject(event, "Service " + route + " is overloaded");
+                    return;
+                }
+            } else {
+                overflow.incrementAndGet();
+            }
+        }
+        elasticQueue.write(event);
+        enqueueTimes.add(System.currentTimeMillis());
+        backlog++;
+        backlogBytes += event.length;
+    }
+
+    private byte[] dequeue() {
+        while (true) {
+            long queued = enqueueTimes.first();
+            byte[] event = take();
+            if (event == null) {
+                return null;
+            }
+            long delay = queued < 0? 0 : System.currentTimeMillis() - queued;
+            dequeued.incrementAndGet();
+            totalQueueDelay.addAndGet(delay);
+            if (delay > maxQueueDelay) {
+                maxQueueDelay = delay;
+            }
+            AdmissionPolicy current = policy;
+            if (current != null && current.getMaxQueueDelay() > 0 && delay > current.getMaxQueueDelay()) {
+                expired.incrementAndGet();
+                reject(event, "Service " + route + " queue delay exceeded " + current.getMaxQueueDelay() + " ms");
+            } else {
+                return event;
+            }
+        }
+    }
+
+    /**
+     * Take the next event from the elastic queue together with its enqueue time
+     *
+     * @return event or null if the elastic queue is empty
+     */
+    private byte[] take() {
+        byte[] event = elasticQueue.read();
+        if (event == null) {
+            // elastic queue is empty
+            enqueueTimes.clear();
+            backlog = 0;
+            backlogBytes = 0;
+            return null;
+        }
+        enqueueTimes.remove();
+        backlog = Math.max(0, backlog - 1);
+        backlogBytes = Math.max(0, backlogBytes - event.length);
+        return event;
+    }
+
+    /**
+     * Reject an event with status 503 to its caller if any
+     *
+     * @param bytes of the event
+     * @param reason of rejection
+     */
+    private void reject(byte[] bytes, String reason) {
+        rejected.incrementAndGet();
+        try {
+            EventEnvelope event = new EventEnvelope(bytes);
+            if (event.getReplyTo() != null) {
+                EventEnvelope response = new EventEnvelope();
+                response.setTo(event.getReplyTo()).setFrom(route).setStatus(503).setBody(reason);
+                if (event.getCorrelationId() != null) {
+                    response.setCorrelationId(event.getCorrelationId());
+                }
+                if (event.getExtra() != null) {
+                    response.setExtra(event.getExtra());
+                }
+                if (event.getTraceId() != null) {
+                    response.setTrace(event.getTraceId(), event.getTracePath());
+                }
+                PostOffice.getInstance().send(response);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to reject event for {} - {}", route, e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentMap<String, AdmissionPolicy> loadAdmissionPolicies() {
+        ConcurrentMap<String, AdmissionPolicy> result = new ConcurrentHashMap<>();
+        String location = AppConfigReader.getInstance().getProperty(ADMISSION_YAML);
+        if (location == null) {
+            return result;
+        }
+        log.info("Loading admission policies from {}", location);
+        ConfigReader reader = new ConfigReader();
+        try {
+            reader.load(location);
+        } catch (IOException e) {
+            log.error("Unable to load admission policies - {}", e.getMessage());
+            return result;
+        }
+        Utility util = Utility.getInstance();
+        MultiLevelMap multi = new MultiLevelMap(reader.getMap());
+        int n = 0;
+        while (true) {
+            String prefix = ADMISSION + "[" + n + "].";
+            Object route = multi.getElement(prefix + "route");
+            if (route == null) {
+                break;
+            }
+            n++;
+            String shed = getValue(multi, prefix + "shed", "reject");
+            AdmissionPolicy.ShedMode mode;
+            try {
+                mode = AdmissionPolicy.ShedMode.valueOf(shed.toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                log.error("Admission policy for {} ignored - invalid shed mode {}", route, shed);
+                continue;
+            }
+            AdmissionPolicy policy = new AdmissionPolicy().setShedMode(mode)
+                    .setMaxBacklog(util.str2int(getValue(multi, prefix + "max_backlog", 0)))
+                    .setMaxBacklogBytes(util.str2long(getValue(multi, prefix + "max_backlog_bytes", 0)))
+                    .setMaxQueueDelay(util.str2long(getValue(multi, prefix + "max_queue_delay", 0)))
+                    .setHonorDeadline("true".equals(getValue(multi, prefix + "deadline", false)));
+            result.put(route.toString(), policy);
+        }
+        log.info("Total {} admission polic{} loaded", result.size(), result.size() == 1? "y" : "ies");
+        return result;
+    }
+
+    private static String getValue(MultiLevelMap multi, String path, Object defaultValue) {
+        Object value = multi.getElement(path);
+        return String.valueOf(value == null? defaultValue : value);
+    }
+
+    /**
+     * Enqueue times of buffered events in arrival order.
+     * <p>
+     * The times are kept beside the elastic queue so that the stored events are not copied.
+     * A primitive ring buffer uses 8 bytes per buffered event and does not create garbage.
+     */
+    private static class EnqueueTimes {
+        private static final int INITIAL_CAPACITY = 64;
+        private long[] times = new long[INITIAL_CAPACITY];
+        private int head = 0, size = 0;
+
+        private void add(long time) {
+            if (size == times.length) {
+                long[] expanded = new long[times.length * 2];
+                for (int i = 0; i < size; i++) {
+                    expanded[i] = times[(head + i) % times.length];
+                }
+                times = expanded;
+                head = 0;
+            }
+            times[(head + size) % times.length] = time;
+            size++;
+        }
+
+        /**
+         * @return enqueue time of the oldest event or -1 if there is none
+         */
+        private long first() {
+            return size == 0? -1 : times[head];
+        }
+
+        private void remove() {
+            if (size > 0) {
+                head = (head + 1) % times.length;
+                size--;
+            }
+        }
+
+        private void clear() {
+            if (times.length > INITIAL_CAPACITY) {
+                // release the memory held by a past backlog
+                times = new long[INITIAL_CAPACITY];
+            }
+            head = 0;
+            size = 0;
         }
-        return null;
     }
 
 }
@@ -18,22 +18,22 @@
 
 package org.platformlambda.core.system;
 
-import io.vertx.core.Handler;
-import io.vertx.core.eventbus.EventBus;
-import io.vertx.core.eventbus.Message;
+import io.vertx.core.Vertx;
 import org.apache.logging.log4j.ThreadContext;
 import org.platformlambda.core.annotations.EventInterceptor;
 import org.platformlambda.core.annotations.ZeroTracing;
 import org.platformlambda.core.exception.AppException;
 import org.platformlambda.core.models.*;
+import org.platformlambda.core.util.AppConfigReader;
 import org.platformlambda.core.util.Utility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class WorkerQueue extends WorkerQueues {
     private static final Logger log = LoggerFactory.getLogger(WorkerQueue.class);
@@ -55,6 +55,8 @@ public class WorkerQueue extends WorkerQueues {
     private static final String ASYNC = "async";
     private static final String ANNOTATIONS = "annotations";
     private static final String PAYLOAD = "payload";
+    private static final long asyncTimeout = Math.max(1000, util.str2long(
+            AppConfigReader.getInstance().getProperty("async.completion.timeout", "60000")));
     private final String origin;
     private final boolean interceptor, useEnvelope, tracing;
     private final int instance;
@@ -62,25 +64,17 @@ public class WorkerQueue extends WorkerQueues {
     public WorkerQueue(ServiceDef def, String route, int instance) {
         super(def, route);
         this.instance = instance;
-        EventBus system = Platform.getInstance().getEventSystem();
-        this.consumer = system.localConsumer(route, new WorkerHandler());
         this.interceptor = def.getFunction().getClass().getAnnotation(EventInterceptor.class) != null;
         this.useEnvelope = def.inputIsEnvelope();
         this.tracing = def.getFunction().getClass().getAnnotation(ZeroTracing.class) == null;
         this.origin = Platform.getInstance().getOrigin();
-        // tell manager that this worker is ready to process a new event
-        system.send(def.getRoute(), READY+route);
         this.started();
     }
 
     @SuppressWarnings({"rawtypes", "unchecked"})
     private ProcessStatus processEvent(EventEnvelope event) {
-        PostOffice po = PostOffice.getInstance();
-        Map<String, Object> inputOutput = new HashMap<>();
-        Map<String, Object> input = new HashMap<>();
-        input.put(HEADERS, event.getHeaders());
-        input.put(BODY, event.getRawBody());
-        inputOutput.put(INPUT, input);
+        // the input/output dataset is only collected when the route is journaled
+        Map<String, Object> inputOutput = isJournaled(event)? getJournalInput(event) : null;
         TypedLambdaFunction f = def.getFunction();
         if (event.hasError() && f instanceof ServiceExceptionHandler) {
             ServiceExceptionHandler handler = (ServiceExceptionHandler) f;
@@ -89,10 +83,7 @@ public class WorkerQueue extends WorkerQueues {
             } catch (Exception e1) {
                 log.warn("Unhandled exception in error handler of "+route, e1);
             }
-            Map<String, Object> output = new HashMap<>();
-            output.put(STATUS, event.getStatus());
-            output.put(EXCEPTION, event.getError());
-            inputOutput.put(OUTPUT, output);
+            setJournalError(inputOutput, event.getStatus(), event.getError(), false);
             return new ProcessStatus(event.getStatus(), event.getError()).setInputOutput(inputOutput);
         }
         try {
@@ -108,218 +99,359 @@ public class WorkerQueue extends WorkerQueues {
              */
             Object result = ping? null : f.handleEvent(event.getHeaders(),
                                             interceptor || useEnvelope ? event : event.getBody(), instance);
-            float diff = ping? 0 : ((float) (System.nanoTime() - begin)) / PostOffice.ONE_MILLISECOND;
-            Map<String, Object> output = new HashMap<>();
-            String replyTo = event.getReplyTo();
-            if (replyTo != null) {
-                boolean serviceTimeout = false;
-                EventEnvelope response = new EventEnvelope();
-                response.setTo(replyTo);
-                response.setFrom(def.getRoute());
-                /*
-                 * Preserve correlation ID and notes
-                 *
-                 * "Notes" is usually used by event interceptors. The system does not restrict the content of the notes.
-                 * For example, to save some metadata from the original sender.
-                 */
-                if (event.getCorrelationId() != null) {
-                    response.setCorrelationId(event.getCorrelationId());
-                }
-                if (event.getExtra() != null) {
-                    response.setExtra(event.getExtra());
-                }
-                // propagate the trace to the next service if any
-                if (event.getTraceId() != null) {
-                    response.setTrace(event.getTraceId(), event.getTracePath());
-                }
-                if (result instanceof EventEnvelope) {
-                    EventEnvelope resultEvent = (EventEnvelope) result;
-                    Map<String, String> headers = resultEvent.getHeaders();
-                    if (headers.isEmpty() && resultEvent.getStatus() == 408 && resultEvent.getBody() == null) {
-                        /*
-                         * An empty event envelope with timeout status
-                         * is used by the ObjectStreamService to simulate a READ timeout.
-                         */
-                        serviceTimeout = true;
-                    } else {
-                        /*
-                         * When EventEnvelope is used as a return type, the system will transport
-                         * 1. payload
-                         * 2. key-values (as headers)
-                         * 3. optional parametric types for Java class that uses generic types
-                         */
-                        response.setBody(resultEvent.getBody());
-                        for (String h : headers.keySet()) {
-                            response.setHeader(h, headers.get(h));
-                        }
-                        response.setStatus(resultEvent.getStatus());
-                        if (resultEvent.getParametricType() != null) {
-                            response.setParametricType(resultEvent.getParametricType());
-                        }
+            if (result instanceof CompletionStage) {
+                // the response will be sent when the completion stage completes
+                return new PendingStatus((CompletionStage<Object>) result, begin, inputOutput);
+            }
+            long elapsed = ping? 0 : System.nanoTime() - begin;
+            return processResult(event, ping, result, elapsed, inputOutput);
+        } catch (Exception e) {
+            return processError(event, e, inputOutput);
+        }
+    }
+
+    private ProcessStatus processResult(EventEnvelope event, boolean ping, Object result, long elapsed,
+                                        Map<String, Object> inputOutput) throws IOException {
+        PostOffice po = PostOffice.getInstance();
+        float diff = toMillis(elapsed);
+        String replyTo = event.getReplyTo();
+        if (replyTo != null) {
+            boolean serviceTimeout = false;
+            EventEnvelope response = new EventEnvelope();
+            response.setTo(replyTo);
+            response.setFrom(def.getRoute());
+            /*
+             * Preserve correlation ID and notes
+             *
+             * "Notes" is usually used by event interceptors. The system does not restrict the content of the notes.
+             * For example, to save some metadata from the original sender.
+             */
+            if (event.getCorrelationId() != null) {
+                response.setCorrelationId(event.getCorrelationId());
+            }
+            if (event.getExtra() != null) {
+                response.setExtra(event.getExtra());
+            }
+            // propagate the trace to the next service if any
+            if (event.getTraceId() != null) {
+                response.setTrace(event.getTraceId(), event.getTracePath());
+            }
+            if (result instanceof EventEnvelope) {
+                EventEnvelope resultEvent = (EventEnvelope) result;
+                Map<String, String> headers = resultEvent.getHeaders();
+                if (headers.isEmpty() && resultEvent.getStatus() == 408 && resultEvent.getBody() == null) {
+                    /*
+                     * An empty event envelope with timeout status
+                     * is used by the ObjectStreamService to simulate a READ timeout.
+                     */
+                    serviceTimeout = true;
+                } else {
+                    /*
+                     * When EventEnvelope is used as a return type, the system will transport
+                     * 1. payload
+                     * 2. key-values (as headers)
+                     * 3. optional parametric types for Java class that uses generic types
+                     */
+                    response.setBody(resultEvent.getBody());
+                    for (String h : headers.keySet()) {
+                        response.setHeader(h, headers.get(h));
                     }
-                    if (!response.getHeaders().isEmpty()) {
-                        output.put(HEADERS, response.getHeaders());
+                    response.setStatus(resultEvent.getStatus());
+                    if (resultEvent.getParametricType() != null) {
+                        response.setParametricType(resultEvent.getParametricType());
                     }
-                } else {
-                    response.setBody(result);
                 }
-                output.put(BODY, response.getRawBody() == null? "null" : response.getRawBody());
-                output.put(STATUS, response.getStatus());
-                inputOutput.put(OUTPUT, output);
-                if (ping) {
-                    String parent = route.contains(HASH) ? route.substring(0, route.lastIndexOf(HASH)) : route;
-                    Platform platform = Platform.getInstance();
-                    // execution time is not set because there is no need to execute the lambda function
-                    Map<String, Object> pong = new HashMap<>();
-                    pong.put(TYPE, PONG);
-                    pong.put(TIME, new Date());
-                    pong.put(APP, platform.getName());
-                    pong.put(ORIGIN, platform.getOrigin());
-                    pong.put(SERVICE, parent);
-                    pong.put(REASON, "This response is generated when you send an event without headers and body");
-                    pong.put(MESSAGE, "you have reached "+parent);
-                    response.setBody(pong);
+            } else {
+                response.setBody(result);
+            }
+            setJournalOutput(inputOutput, response, false);
+            if (ping) {
+                String parent = route.contains(HASH) ? route.substring(0, route.lastIndexOf(HASH)) : route;
+                Platform platform = Platform.getInstance();
+                // execution time is not set because there is no need to execute the lambda function
+                Map<String, Object> pong = new HashMap<>();
+                pong.put(TYPE, PONG);
+                pong.put(TIME, new Date());
+                pong.put(APP, platform.getName());
+                pong.put(ORIGIN, platform.getOrigin());
+                pong.put(SERVICE, parent);
+                pong.put(REASON, "This response is generated when you send an event without headers and body");
+                pong.put(MESSAGE, "you have reached "+parent);
+                response.setBody(pong);
+                po.send(response);
+            } else {
+                if (!interceptor && !serviceTimeout) {
+                    response.setExecutionTime(diff);
                     po.send(response);
-                } else {
-                    if (!interceptor && !serviceTimeout) {
-                        response.setExecutionTime(diff);
-                        po.send(response);
-                    }
                 }
-            } else {
-                EventEnvelope response = new EventEnvelope().setBody(result);
-                output.put(BODY, response.getRawBody() == null? "null" : response.getRawBody());
-                output.put(STATUS, response.getStatus());
-                output.put(ASYNC, true);
-                inputOutput.put(OUTPUT, output);
             }
-            if (diff > 0) {
-                // adjust precision to 3 decimal points
-                BigDecimal ms = new BigDecimal(diff).setScale(3, RoundingMode.HALF_EVEN);
-                return new ProcessStatus(ms.floatValue()).setInputOutput(inputOutput);
+        } else if (inputOutput != null) {
+            setJournalOutput(inputOutput, new EventEnvelope().setBody(result), true);
+        }
+        return new ProcessStatus(diff).setInputOutput(inputOutput);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private ProcessStatus processError(EventEnvelope event, Exception e, Map<String, Object> inputOutput) {
+        PostOffice po = PostOffice.getInstance();
+        TypedLambdaFunction f = def.getFunction();
+        final int status;
+        Throwable ex = util.getRootCause(e);
+        if (ex instanceof AppException) {
+            status = ((AppException) ex).getStatus();
+        } else if (ex instanceof IllegalArgumentException || ex instanceof IOException) {
+            status = 400;
+        } else {
+            status = 500;
+        }
+        if (f instanceof ServiceExceptionHandler) {
+            ServiceExceptionHandler handler = (ServiceExceptionHandler) f;
+            try {
+                handler.onError(new AppException(status, ex.getMessage()), event);
+            } catch (Exception e2) {
+                log.warn("Unhandled exception in error handler of "+route, e2);
+            }
+            setJournalError(inputOutput, status, ex.getMessage(), false);
+            return new ProcessStatus(status, ex.getMessage()).setInputOutput(inputOutput);
+        }
+        String replyTo = event.getReplyTo();
+        if (replyTo != null) {
+            EventEnvelope response = new EventEnvelope();
+            response.setTo(replyTo).setStatus(status).setBody(ex.getMessage());
+            response.setException(e);
+            response.setFrom(def.getRoute());
+            if (event.getCorrelationId() != null) {
+                response.setCorrelationId(event.getCorrelationId());
+            }
+            if (event.getExtra() != null) {
+                response.setExtra(event.getExtra());
+            }
+            // propagate the trace to the next service if any
+            if (event.getTraceId() != null) {
+                response.setTrace(event.getTraceId(), event.getTracePath());
+            }
+            try {
+                po.send(response);
+            } catch (Exception nested) {
+                log.warn("Unhandled exception when sending reply from {} - {}", route, nested.getMessage());
+            }
+        } else {
+            if (status >= 500) {
+                log.error("Unhandled exception for "+route, ex);
             } else {
-                return new ProcessStatus(0).setInputOutput(inputOutput);
+                log.warn("Unhandled exception for {} - {}", route, ex.getMessage());
             }
+        }
+        setJournalError(inputOutput, status, ex.getMessage(), replyTo == null);
+        return new ProcessStatus(status, ex.getMessage()).setInputOutput(inputOutput);
+    }
 
+    private ProcessStatus completeAsync(EventEnvelope event, PendingStatus pending, Object result, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null?
+                                error.getCause() : error;
+            Exception e = cause instanceof Exception? (Exception) cause : new AppException(500, cause.getMessage());
+            return processError(event, e, pending.inputOutput);
+        }
+        try {
+            return processResult(event, false, result, System.nanoTime() - pending.begin, pending.inputOutput);
         } catch (Exception e) {
-            final int status;
-            Throwable ex = util.getRootCause(e);
-            if (ex instanceof AppException) {
-                status = ((AppException) ex).getStatus();
-            } else if (ex instanceof IllegalArgumentException || ex instanceof IOException) {
-                status = 400;
-            } else {
-                status = 500;
+            return processError(event, e, pending.inputOutput);
+        }
+    }
+
+    private boolean isJournaled(EventEnvelope event) {
+        return tracing && event.getTraceId() != null && PostOffice.getInstance().isJournaled(def.getRoute());
+    }
+
+    private Map<String, Object> getJournalInput(EventEnvelope event) {
+        Map<String, Object> input = new HashMap<>();
+        input.put(HEADERS, event.getHeaders());
+        input.put(BODY, event.getRawBody());
+        Map<String, Object> inputOutput = new HashMap<>();
+        inputOutput.put(INPUT, input);
+        return inputOutput;
+    }
+
+    private void setJournalOutput(Map<String, Object> inputOutput, EventEnvelope response, boolean async) {
+        if (inputOutput != null) {
+            Map<String, Object> output = new HashMap<>();
+            if (!response.getHeaders().isEmpty()) {
+                output.put(HEADERS, response.getHeaders());
             }
-            if (f instanceof ServiceExceptionHandler) {
-                ServiceExceptionHandler handler = (ServiceExceptionHandler) f;
-                try {
-                    handler.onError(new AppException(status, ex.getMessage()), event);
-                } catch (Exception e2) {
-                    log.warn("Unhandled exception in error handler of "+route, e2);
-                }
-                Map<String, Object> output = new HashMap<>();
-                output.put(STATUS, status);
-                output.put(EXCEPTION, ex.getMessage());
-                inputOutput.put(OUTPUT, output);
-                return new ProcessStatus(status, ex.getMessage()).setInputOutput(inputOutput);
+            output.put(BODY, response.getRawBody() == null? "null" : response.getRawBody());
+            output.put(STATUS, response.getStatus());
+            if (async) {
+                output.put(ASYNC, true);
             }
+            inputOutput.put(OUTPUT, output);
+        }
+    }
+
+    private void setJournalError(Map<String, Object> inputOutput, int status, String error, boolean async) {
+        if (inputOutput != null) {
             Map<String, Object> output = new HashMap<>();
-            String replyTo = event.getReplyTo();
-            if (replyTo != null) {
-                EventEnvelope response = new EventEnvelope();
-                response.setTo(replyTo).setStatus(status).setBody(ex.getMessage());
-                response.setException(e);
-                response.setFrom(def.getRoute());
-                if (event.getCorrelationId() != null) {
-                    response.setCorrelationId(event.getCorrelationId());
-                }
-                if (event.getExtra() != null) {
-                    response.setExtra(event.getExtra());
-                }
-                // propagate the trace to the next service if any
-                if (event.getTraceId() != null) {
-                    response.setTrace(event.getTraceId(), event.getTracePath());
-                }
-                try {
-                    po.send(response);
-                } catch (Exception nested) {
-                    log.warn("Unhandled exception when sending reply from {} - {}", route, nested.getMessage());
-                }
-            } else {
+            if (async) {
                 output.put(ASYNC, true);
-                if (status >= 500) {
-                    log.error("Unhandled exception for "+route, ex);
-                } else {
-                    log.warn("Unhandled exception for {} - {}", route, ex.getMessage());
-                }
             }
             output.put(STATUS, status);
-            output.put(EXCEPTION, ex.getMessage());
+            output.put(EXCEPTION, error);
             inputOutput.put(OUTPUT, output);
-            return new ProcessStatus(status, ex.getMessage()).setInputOutput(inputOutput);
         }
     }
 
-    private class WorkerHandler implements Handler<Message<byte[]>> {
+    /**
+     * Convert elapsed time to milliseconds with a precision of 3 decimal points
+     *
+     * @param nanoseconds elapsed
+     * @return milliseconds
+     */
+    private static float toMillis(long nanoseconds) {
+        return nanoseconds > 0? (float) (Math.round(nanoseconds / 1000d) / 1000d) : 0;
+    }
 
-        @Override
-        public void handle(Message<byte[]> message) {
-            if (!stopped) {
+    /**
+     * Called by the service manager to hand over an event to this worker
+     *
+     * @param bytes of an encoded event
+     */
+    public void dispatch(byte[] bytes) {
+        if (!stopped) {
+            // decode and execute function as a future task
+            executor.submit(()->{
                 final EventEnvelope event = new EventEnvelope();
                 try {
-                    event.load(message.body());
+                    event.load(bytes);
                 } catch (IOException e) {
                     log.error("Unable to decode event - {}", e.getMessage());
+                    ready(instance);
                     return;
                 }
-                // execute function as a future task
-                executor.submit(()->{
-                    PostOffice po = PostOffice.getInstance();
-                    String traceLogHeader = po.getTraceLogHeader();
-                    po.startTracing(def.getRoute(), event.getTraceId(), event.getTracePath());
-                    if (event.getTraceId() != null) {
-                        ThreadContext.put(traceLogHeader, event.getTraceId());
-                    }
-                    ProcessStatus ps = processEvent(event);
-                    TraceInfo trace = po.stopTracing();
-                    ThreadContext.remove(traceLogHeader);
-                    if (tracing && trace != null && trace.id != null && trace.path != null) {
-                        try {
-                            // Send tracing information to distributed trace logger
-                            EventEnvelope dt = new EventEnvelope();
-                            Map<String, Object> payload = new HashMap<>();
-                            payload.put(ANNOTATIONS, trace.annotations);
-                            // send input/output dataset to journal if configured in journal.yaml
-                            if (po.isJournaled(def.getRoute())) {
-                                payload.put(PAYLOAD, ps.inputOutput);
-                            }
-                            dt.setTo(PostOffice.DISTRIBUTED_TRACING).setBody(payload);
-                            dt.setHeader("origin", origin);
-                            dt.setHeader("id", trace.id).setHeader("path", trace.path);
-                            dt.setHeader("service", def.getRoute()).setHeader("start", trace.startTime);
-                            dt.setHeader("success", ps.success);
-                            if (event.getFrom() != null) {
-                                dt.setHeader("from", event.getFrom());
-                            }
-                            if (ps.success) {
-                                dt.setHeader("exec_time", ps.executionTime);
-                            } else {
-                                dt.setHeader("status", ps.status).setHeader("exception", ps.exception);
-                            }
-                            po.send(dt);
-                        } catch (Exception e) {
-                            log.error("Unable to send to distributed tracing", e);
+                ServiceQueue manager = def.getManager();
+                AdmissionPolicy policy = manager == null? null : manager.getAdmissionPolicy();
+                if (policy != null && policy.isHonorDeadline() && event.isExpired()) {
+                    // the caller has timed out so there is no need to execute the request
+                    manager.expired();
+                    log.debug("Expired request {} discarded by {}", event.getId(), route);
+                    ready(instance);
+                    return;
+                }
+                PostOffice po = PostOffice.getInstance();
+                String traceLogHeader = po.getTraceLogHeader();
+                po.startTracing(def.getRoute(), event.getTraceId(), event.getTracePath(), event.getDeadline());
+                if (event.getTraceId() != null) {
+                    ThreadContext.put(traceLogHeader, event.getTraceId());
+                }
+                ProcessStatus ps = processEvent(event);
+                TraceInfo trace = po.stopTracing();
+                ThreadContext.remove(traceLogHeader);
+                if (ps instanceof PendingStatus) {
+                    PendingStatus pending = (PendingStatus) ps;
+                    // beyond the limit of outstanding completions, hold this worker until its stage completes
+                    boolean hold = manager != null && !manager.startAsync();
+                    // a stage that never completes must not leak the pending count or a held worker
+                    long timeout = event.getDeadline() > 0?
+                            Math.max(1, event.getDeadline() - System.currentTimeMillis()) : asyncTimeout;
+                    AtomicBoolean done = new AtomicBoolean(false);
+                    Vertx vertx = Platform.getInstance().getVertx();
+                    long timer = vertx.setTimer(timeout, t -> {
+                        if (done.compareAndSet(false, true)) {
+                            finishAsync(event, trace, pending, null,
+                                    new AppException(408, "Timeout for " + timeout + " ms"), manager, hold);
+                        }
+                    });
+                    pending.stage.whenComplete((result, error) -> {
+                        if (done.compareAndSet(false, true)) {
+                            vertx.cancelTimer(timer);
+                            finishAsync(event, trace, pending, result, error, manager, hold);
                         }
+                    });
+                    if (!hold) {
+                        ready(instance);
                     }
-                    /*
-                     * Send a ready signal to inform the system this worker is ready for next event.
-                     * This guarantee that this future task is executed orderly
-                     */
-                    Platform.getInstance().getEventSystem().send(def.getRoute(), READY+route);
-                });
+                    return;
+                }
+                sendTrace(event, trace, ps);
+                /*
+                 * Return the worker slot to inform the system this worker is ready for next event.
+                 * This guarantee that this future task is executed orderly
+                 */
+                ready(instance);
+            });
+        }
+    }
+
+    private void finishAsync(EventEnvelope event, TraceInfo trace, PendingStatus pending,
+                             Object result, Throwable error, ServiceQueue manager, boolean hold) {
+        PostOffice po = PostOffice.getInstance();
+        String traceLogHeader = po.getTraceLogHeader();
+        String logId = ThreadContext.get(traceLogHeader);
+        // the stage may complete in any thread so the trace of the function is restored for the reply
+        TraceInfo previous = po.resumeTracing(trace);
+        if (event.getTraceId() != null) {
+            ThreadContext.put(traceLogHeader, event.getTraceId());
+        }
+        ProcessStatus ps;
+        try {
+            ps = completeAsync(event, pending, result, error);
+        } finally {
+            po.resumeTracing(previous);
+            if (logId == null) {
+                ThreadContext.remove(traceLogHeader);
+            } else {
+                ThreadContext.put(traceLogHeader, logId);
+            }
+        }
+        sendTrace(event, trace, ps);
+        if (manager != null) {
+            manager.endAsync();
+        }
+        if (hold) {
+            ready(instance);
+        }
+    }
+
+    private void sendTrace(EventEnvelope event, TraceInfo trace, ProcessStatus ps) {
+        PostOffice po = PostOffice.getInstance();
+        if (tracing && trace != null && trace.id != null && trace.path != null) {
+            try {
+                // Send tracing information to distributed trace logger
+                EventEnvelope dt = new EventEnvelope();
+                Map<String, Object> payload = new HashMap<>();
+                payload.put(ANNOTATIONS, trace.annotations);
+                // send input/output dataset to journal if configured in journal.yaml
+                if (ps.inputOutput != null) {
+                    payload.put(PAYLOAD, ps.inputOutput);
+                }
+                dt.setTo(PostOffice.DISTRIBUTED_TRACING).setBody(payload);
+                dt.setHeader("origin", origin);
+                dt.setHeader("id", trace.id).setHeader("path", trace.path);
+                dt.setHeader("service", def.getRoute()).setHeader("start", trace.startTime);
+                dt.setHeader("success", ps.success);
+                if (event.getFrom() != null) {
+                    dt.setHeader("from", event.getFrom());
+                }
+                if (ps.success) {
+                    dt.setHeader("exec_time", ps.executionTime);
+                } else {
+                    dt.setHeader("status", ps.status).setHeader("exception", ps.exception);
+                }
+                po.send(dt);
+            } catch (Exception e) {
+                log.error("Unable to send to distributed tracing", e);
             }
+        }
+    }
+
+    private static class PendingStatus extends ProcessStatus {
+        private final CompletionStage<Object> stage;
+        private final long begin;
 
+        private PendingStatus(CompletionStage<Object> stage, long begin, Map<String, Object> inputOutput) {
+            super(0);
+            this.stage = stage;
+            this.begin = begin;
+            this.inputOutput = inputOutput;
         }
     }
 
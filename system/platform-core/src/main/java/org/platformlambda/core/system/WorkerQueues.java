@@ -29,7 +29,6 @@ public abstract class WorkerQueues {
     private static final Logger log = LoggerFactory.getLogger(WorkerQueues.class);
 
     protected static final ExecutorService executor = Executors.newCachedThreadPool();
-    protected static final String READY = "ready:";
     protected static final String HASH = "#";
     protected final ServiceDef def;
     protected final String route;
@@ -45,9 +44,23 @@ public abstract class WorkerQueues {
         log.debug("{} started", route);
     }
 
+    /**
+     * Return the worker slot to the service manager so that it can receive the next event
+     *
+     * @param instance number of this worker
+     */
+    protected void ready(int instance) {
+        ServiceQueue manager = def.getManager();
+        if (manager != null) {
+            manager.ready(instance - 1);
+        }
+    }
+
     protected void stop() {
         if (consumer != null && consumer.isRegistered()) {
             consumer.unregister();
+        }
+        if (!stopped) {
             stopped = true;
             log.debug("{} stopped", route);
         }
@@ -0,0 +1,103 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+package org.platformlambda.core.system;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free set of free worker slots.
+ * <p>
+ * Each worker is identified by an integer index and its availability is a single bit
+ * so that a worker can return its slot from any thread without allocating memory.
+ */
+public class WorkerSlots {
+    private static final int BITS = 64;
+    private final AtomicLongArray bits;
+    private final int size;
+
+    public WorkerSlots(int size) {
+        this.size = Math.max(1, size);
+        this.bits = new AtomicLongArray((this.size + BITS - 1) / BITS);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Mark a slot as free
+     *
+     * @param slot index from 0 to size-1
+     */
+    public void release(int slot) {
+        if (slot >= 0 && slot < size) {
+            int n = slot / BITS;
+            long mask = 1L << (slot % BITS);
+            while (true) {
+                long current = bits.get(n);
+                if ((current & mask) != 0 || bits.compareAndSet(n, current, current | mask)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Claim the free slot with the lowest index
+     *
+     * @return slot index or -1 if all slots are busy
+     */
+    public int acquire() {
+        for (int n = 0; n < bits.length(); n++) {
+            while (true) {
+                long current = bits.get(n);
+                if (current == 0) {
+                    break;
+                }
+                long lowest = Long.lowestOneBit(current);
+                if (bits.compareAndSet(n, current, current & ~lowest)) {
+                    return n * BITS + Long.numberOfTrailingZeros(lowest);
+                }
+            }
+        }
+        return -1;
+    }
+
+    public boolean isEmpty() {
+        for (int n = 0; n < bits.length(); n++) {
+            if (bits.get(n) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of free slots
+     *
+     * @return count
+     */
+    public int available() {
+        int count = 0;
+        for (int n = 0; n < bits.length(); n++) {
+            count += Long.bitCount(bits.get(n));
+        }
+        return count;
+    }
+
+}
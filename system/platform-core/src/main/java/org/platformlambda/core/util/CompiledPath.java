@@ -0,0 +1,195 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.List;
+
+/**
+ * A composite path that is parsed once into segment tokens
+ * <p>
+ * e.g. "some.key", "some.array[3]", "hello.world[2][10][1]"
+ * <p>
+ * Compiled paths are immutable and thread safe. Recently used paths are cached
+ * so that repeated lookups of the same composite path do not parse it again.
+ */
+public class CompiledPath {
+    private static final long MAX_CACHED_PATHS = 5000;
+    private static final Cache<String, CompiledPath> cache = CacheBuilder.newBuilder()
+                                                                .maximumSize(MAX_CACHED_PATHS).build();
+    private final String path;
+    private final String[] keys;
+    private final int[][] indexes;
+    private final boolean composite, valid;
+    private final String error;
+
+    private CompiledPath(String path) {
+        Utility util = Utility.getInstance();
+        this.path = path;
+        this.composite = path.contains(".") || path.contains("/") || path.contains("[") || path.contains("]");
+        this.error = getSyntaxError(path);
+        List<String> segments = util.split(path, "./");
+        this.keys = new String[segments.size()];
+        this.indexes = new int[segments.size()][];
+        boolean ok = true;
+        for (int i=0; i < keys.length; i++) {
+            String p = segments.get(i);
+            if (p.contains("[") && p.endsWith("]") && !p.startsWith("[")) {
+                int start = p.indexOf('[');
+                int end = p.indexOf(']', start);
+                String index = p.substring(start+1, end).trim();
+                if (index.length() == 0 || !util.isDigits(index)) {
+                    ok = false;
+                }
+                List<String> parts = util.split(p.substring(start), "[]");
+                int[] n = new int[parts.size()];
+                for (int j=0; j < n.length; j++) {
+                    n[j] = util.str2int(parts.get(j));
+                }
+                keys[i] = p.substring(0, start);
+                indexes[i] = n;
+            } else {
+                keys[i] = p;
+            }
+        }
+        this.valid = ok;
+    }
+
+    /**
+     * Get a compiled path
+     *
+     * @param path using dot-bracket convention
+     * @return compiled path
+     */
+    public static CompiledPath compile(String path) {
+        if (path == null) {
+            throw new IllegalArgumentException("Missing composite path");
+        }
+        CompiledPath result = cache.getIfPresent(path);
+        if (result == null) {
+            result = new CompiledPath(path);
+            cache.put(path, result);
+        }
+        return result;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return true if the path has more than one segment or any array index
+     */
+    public boolean isComposite() {
+        return composite;
+    }
+
+    /**
+     * @return false if any array index is empty or not a number
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return number of segments
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @param n segment number
+     * @return key of the segment
+     */
+    public String getKey(int n) {
+        return keys[n];
+    }
+
+    /**
+     * @param n segment number
+     * @return array indexes of the segment or null if it is not an array element
+     */
+    public int[] getIndexes(int n) {
+        return indexes[n];
+    }
+
+    /**
+     * Check the syntax of the composite path for use in setting an element
+     *
+     * @throws IllegalArgumentException if the path is invalid
+     */
+    public void validate() {
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+    private static String getSyntaxError(String path) {
+        Utility util = Utility.getInstance();
+        List<String> segments = util.split(path, "./");
+        if (segments.isEmpty()) {
+            return "Missing composite path";
+        }
+        for (String s: segments) {
+            if (s.contains("[") || s.contains("]")) {
+                if (!s.contains("[")) {
+                    return "Invalid composite path - missing start bracket";
+                }
+                if (!s.endsWith("]")) {
+                    return "Invalid composite path - missing end bracket";
+                }
+                // check start-end pair
+                int sep1 = s.indexOf('[');
+                int sep2 = s.indexOf(']');
+                if (sep2 < sep1) {
+                    return "Invalid composite path - missing start bracket";
+                }
+                boolean start = false;
+                for (char c: s.substring(sep1).toCharArray()) {
+                    if (c == '[') {
+                        if (start) {
+                            return "Invalid composite path - missing end bracket";
+                        } else {
+                            start = true;
+                        }
+                    } else if (c == ']') {
+                        if (!start) {
+                            return "Invalid composite path - duplicated end bracket";
+                        } else {
+                            start = false;
+                        }
+                    } else {
+                        if (start) {
+                            if (c < '0' || c > '9') {
+                                return "Invalid composite path - indexes must be digits";
+                            }
+                        } else {
+                            return "Invalid composite path - invalid indexes";
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+}
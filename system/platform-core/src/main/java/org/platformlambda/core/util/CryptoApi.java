@@ -18,28 +18,42 @@
 
 package org.platformlambda.core.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import javax.crypto.Cipher;
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManagerFactory;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Cipher, digest, MAC and signature instances are cached per thread to avoid provider lookup
+ * for every operation. They are used only by methods that do not call application code
+ * in the middle of an operation. Stream methods use their own instances.
+ * <p>
+ * Parsed public and private keys are cached by fingerprint of the encoded key.
+ */
 public class CryptoApi {
 
     public static final String PUBLIC = ".pub";
     public static final String PRIVATE = ".key";
     private static final int IV_LENGTH = 16;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final long MAX_CACHED_KEYS = 200;
     private static final SecureRandom random = new SecureRandom();
     private static final int BUFFER_SIZE = 1024;
     private static final String RSA = "RSA";
@@ -55,11 +69,17 @@ public class CryptoApi {
     private static final String SHA1_DSA = "SHA1withDSA"; // or SHA256withDSA
     private static final String SHA1_RSA = "SHA1withRSA"; // or SHA256withRSA
     private static final String AES_PADDING = "AES/CBC/PKCS5Padding";
+    private static final String AES_GCM = "AES/GCM/NoPadding";
     private static final String RSA_PADDING = "RSA/ECB/OAEPWithSHA1AndMGF1Padding";
     private static final String CORRUPTED_IV = "Corrupted IV";
     private static final String DASHES = "-----";
     private static final String BEGIN = "BEGIN";
     private static final String END = "END";
+    private static final ThreadLocal<Map<String, MessageDigest>> digests = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Mac>> macs = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Cipher>> ciphers = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Signature>> signatures = ThreadLocal.withInitial(HashMap::new);
+    private static final Cache<String, Key> keys = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_KEYS).build();
 
     /////////////////////////
     // RSA crypto utilities
@@ -116,7 +136,14 @@ public class CryptoApi {
     }
 
     public PublicKey getPublic(byte[] publicKey, boolean rsa) throws GeneralSecurityException {
-        return KeyFactory.getInstance(rsa? RSA : DSA).generatePublic(new X509EncodedKeySpec(publicKey));
+        String id = getFingerprint(rsa? "rsa.pub." : "dsa.pub.", publicKey);
+        Key cached = keys.getIfPresent(id);
+        if (cached instanceof PublicKey) {
+            return (PublicKey) cached;
+        }
+        PublicKey key = KeyFactory.getInstance(rsa? RSA : DSA).generatePublic(new X509EncodedKeySpec(publicKey));
+        keys.put(id, key);
+        return key;
     }
 
     public PrivateKey getPrivate(byte[] privateKey) throws GeneralSecurityException {
@@ -124,7 +151,18 @@ public class CryptoApi {
     }
 
     public PrivateKey getPrivate(byte[] privateKey, boolean rsa) throws GeneralSecurityException {
-        return KeyFactory.getInstance(rsa? RSA : DSA).generatePrivate(new PKCS8EncodedKeySpec(privateKey));
+        String id = getFingerprint(rsa? "rsa.key." : "dsa.key.", privateKey);
+        Key cached = keys.getIfPresent(id);
+        if (cached instanceof PrivateKey) {
+            return (PrivateKey) cached;
+        }
+        PrivateKey key = KeyFactory.getInstance(rsa? RSA : DSA).generatePrivate(new PKCS8EncodedKeySpec(privateKey));
+        keys.put(id, key);
+        return key;
+    }
+
+    private String getFingerprint(String type, byte[] encodedKey) throws NoSuchAlgorithmException {
+        return type + Utility.getInstance().bytesToBase64(getDigest(SHA256).digest(encodedKey));
     }
 
     /**
@@ -139,14 +177,14 @@ public class CryptoApi {
 
     public byte[] rsaEncrypt(byte[] clearText, byte[] publicKey) throws GeneralSecurityException {
         PublicKey key = getPublic(publicKey, true);
-        Cipher cipher = Cipher.getInstance(RSA_PADDING);
+        Cipher cipher = getCipher(RSA_PADDING);
         cipher.init(Cipher.ENCRYPT_MODE, key);
         return cipher.doFinal(clearText);
     }
 
     public byte[] rsaDecrypt(byte[] cipherText, byte[] privateKey) throws GeneralSecurityException {
         PrivateKey key = getPrivate(privateKey, true);
-        Cipher cipher = Cipher.getInstance(RSA_PADDING);
+        Cipher cipher = getCipher(RSA_PADDING);
         cipher.init(Cipher.DECRYPT_MODE, key);
         return cipher.doFinal(cipherText);
     }
@@ -160,7 +198,7 @@ public class CryptoApi {
      */
     public byte[] rsaSign(byte[] data, byte[] privateKey) throws GeneralSecurityException {
         PrivateKey key = getPrivate(privateKey, true);
-        Signature dsa = Signature.getInstance(SHA1_RSA);
+        Signature dsa = getSignature(SHA1_RSA);
         dsa.initSign(key);
         dsa.update(data);
         return dsa.sign();
@@ -192,7 +230,7 @@ public class CryptoApi {
      */
     public boolean rsaVerify(byte[] data, byte[] signature, byte[] publicKey) throws GeneralSecurityException {
         PublicKey key = getPublic(publicKey, true);
-        Signature dsa = Signature.getInstance(SHA1_RSA);
+        Signature dsa = getSignature(SHA1_RSA);
         dsa.initVerify(key);
         dsa.update(data);
         return dsa.verify(signature);
@@ -223,7 +261,7 @@ public class CryptoApi {
      */
     public byte[] dsaSign(byte[] data, byte[] privateKey) throws GeneralSecurityException {
         PrivateKey key = getPrivate(privateKey, false);
-        Signature dsa = Signature.getInstance(SHA1_DSA);
+        Signature dsa = getSignature(SHA1_DSA);
         dsa.initSign(key);
         dsa.update(data);
         return dsa.sign();
@@ -239,7 +277,7 @@ public class CryptoApi {
      */
     public boolean dsaVerify(byte[] data, byte[] signature, byte[] publicKey) throws GeneralSecurityException {
         PublicKey key = getPublic(publicKey, false);
-        Signature dsa = Signature.getInstance(SHA1_DSA);
+        Signature dsa = getSignature(SHA1_DSA);
         dsa.initVerify(key);
         dsa.update(data);
         return dsa.verify(signature);
@@ -319,33 +357,89 @@ public class CryptoApi {
     public byte[] aesEncrypt(byte[] clearText, byte[] key, byte[] iv, String algorithm)
             throws GeneralSecurityException, IOException {
         SecretKeySpec secret = new SecretKeySpec(key, AES);
-        Cipher cipher = Cipher.getInstance(algorithm);
+        Cipher cipher = getCipher(algorithm);
         cipher.init(Cipher.ENCRYPT_MODE, secret, new IvParameterSpec(iv));
-        byte[] encrypted = cipher.doFinal(clearText);
         // prepend random IV so encrypting the same text multiple times would generate different results
-        ByteArrayOutputStream out = new ByteArrayOutputStream(encrypted.length);
-        out.write(iv);
-        out.write(encrypted);
-        return out.toByteArray();
+        byte[] result = new byte[iv.length + cipher.getOutputSize(clearText.length)];
+        System.arraycopy(iv, 0, result, 0, iv.length);
+        int len = cipher.doFinal(clearText, 0, clearText.length, result, iv.length);
+        return len + iv.length == result.length? result : Arrays.copyOf(result, len + iv.length);
     }
 
     public byte[] aesDecrypt(byte[] encrypted, byte[] key) throws GeneralSecurityException, IOException {
         if (encrypted.length < IV_LENGTH) {
             throw new IOException(CORRUPTED_IV);
         }
-        byte[] iv = Arrays.copyOfRange(encrypted, 0, IV_LENGTH);
-        byte[] payload = Arrays.copyOfRange(encrypted, IV_LENGTH, encrypted.length);
-        return aesDecrypt(payload, key, iv, AES_PADDING);
+        SecretKeySpec secret = new SecretKeySpec(key, AES);
+        Cipher cipher = getCipher(AES_PADDING);
+        cipher.init(Cipher.DECRYPT_MODE, secret, new IvParameterSpec(encrypted, 0, IV_LENGTH));
+        return cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
     }
 
     public byte[] aesDecrypt(byte[] payload, byte[] key, byte[] iv, String algorithm)
             throws GeneralSecurityException {
         SecretKeySpec secret = new SecretKeySpec(key, AES);
-        Cipher cipher = Cipher.getInstance(algorithm);
+        Cipher cipher = getCipher(algorithm);
         cipher.init(Cipher.DECRYPT_MODE, secret, new IvParameterSpec(iv));
         return cipher.doFinal(payload);
     }
 
+    /**
+     * Get the buffer size required by AES-GCM encryption
+     *
+     * @param clearTextLength in bytes
+     * @return length of IV, cipher text and authentication tag
+     */
+    public int getAesGcmOutputSize(int clearTextLength) {
+        return GCM_IV_LENGTH + clearTextLength + GCM_TAG_BITS / 8;
+    }
+
+    /**
+     * Encrypt with AES-GCM from one buffer to another without intermediate copies
+     * <p>
+     * A random 12-byte IV is written before the cipher text and the authentication tag.
+     *
+     * @param clearText buffer to be consumed
+     * @param encryptedOut buffer with at least getAesGcmOutputSize remaining
+     * @param key AES key
+     * @return number of bytes written
+     * @throws GeneralSecurityException in case of error
+     */
+    public int aesGcmEncrypt(ByteBuffer clearText, ByteBuffer encryptedOut, byte[] key)
+            throws GeneralSecurityException {
+        // the IV must never repeat for the same key so it is taken from the secure random generator
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        random.nextBytes(iv);
+        Cipher cipher = getCipher(AES_GCM);
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, AES), new GCMParameterSpec(GCM_TAG_BITS, iv));
+        if (encryptedOut.remaining() < getAesGcmOutputSize(clearText.remaining())) {
+            throw new ShortBufferException("Output buffer too small");
+        }
+        encryptedOut.put(iv);
+        return GCM_IV_LENGTH + cipher.doFinal(clearText, encryptedOut);
+    }
+
+    /**
+     * Decrypt AES-GCM from one buffer to another without intermediate copies
+     *
+     * @param encrypted buffer with IV, cipher text and authentication tag
+     * @param clearOut buffer with enough space for the clear text
+     * @param key AES key
+     * @return number of bytes written
+     * @throws GeneralSecurityException in case of error, including authentication failure
+     */
+    public int aesGcmDecrypt(ByteBuffer encrypted, ByteBuffer clearOut, byte[] key)
+            throws GeneralSecurityException {
+        if (encrypted.remaining() < GCM_IV_LENGTH + GCM_TAG_BITS / 8) {
+            throw new GeneralSecurityException(CORRUPTED_IV);
+        }
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        encrypted.get(iv);
+        Cipher cipher = getCipher(AES_GCM);
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, AES), new GCMParameterSpec(GCM_TAG_BITS, iv));
+        return cipher.doFinal(encrypted, clearOut);
+    }
+
     /**
      * IV does not need to be truly random
      * so we use the basic pseudo-random generator for performance reason.
@@ -386,8 +480,7 @@ public class CryptoApi {
 
     private byte[] getHash(byte[] data, String algorithm) {
         try {
-            MessageDigest hash = MessageDigest.getInstance(algorithm);
-            return hash.digest(data);
+            return getDigest(algorithm).digest(data);
         } catch (NoSuchAlgorithmException e) {
             // this should not happen
             return null;
@@ -423,7 +516,7 @@ public class CryptoApi {
 
     private byte[] getHmac(byte[] key, byte[] message, String algorithm) {
         try {
-            Mac mac = Mac.getInstance(algorithm);
+            Mac mac = getMac(algorithm);
             SecretKeySpec keySpec = new SecretKeySpec(key, algorithm);
             mac.init(keySpec);
             return mac.doFinal(message);
@@ -434,6 +527,112 @@ public class CryptoApi {
         }
     }
 
+    /**
+     * Create an incremental hash for MD5, SHA1 or SHA-256
+     *
+     * @param algorithm of the message digest
+     * @return hasher
+     * @throws NoSuchAlgorithmException if algorithm is not supported
+     */
+    public Hasher getHasher(String algorithm) throws NoSuchAlgorithmException {
+        return new Hasher(MessageDigest.getInstance(algorithm), null);
+    }
+
+    /**
+     * Create an incremental HMAC for HmacSHA1 or HmacSHA256
+     *
+     * @param key for the HMAC
+     * @param algorithm of the HMAC
+     * @return hasher
+     * @throws GeneralSecurityException if algorithm is not supported or key is invalid
+     */
+    public Hasher getHmacHasher(byte[] key, String algorithm) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(algorithm);
+        mac.init(new SecretKeySpec(key, algorithm));
+        return new Hasher(null, mac);
+    }
+
+    /**
+     * Incremental hash or HMAC over byte arrays and byte buffers
+     * <p>
+     * A hasher is not thread safe. It is reset after each digest so it can be reused.
+     */
+    public static class Hasher {
+        private final MessageDigest digest;
+        private final Mac mac;
+
+        private Hasher(MessageDigest digest, Mac mac) {
+            this.digest = digest;
+            this.mac = mac;
+        }
+
+        public Hasher update(ByteBuffer data) {
+            if (digest != null) {
+                digest.update(data);
+            } else {
+                mac.update(data);
+            }
+            return this;
+        }
+
+        public Hasher update(byte[] data, int offset, int len) {
+            if (digest != null) {
+                digest.update(data, offset, len);
+            } else {
+                mac.update(data, offset, len);
+            }
+            return this;
+        }
+
+        public Hasher update(byte[] data) {
+            return update(data, 0, data.length);
+        }
+
+        public byte[] digest() {
+            return digest != null? digest.digest() : mac.doFinal();
+        }
+    }
+
+    private MessageDigest getDigest(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> cache = digests.get();
+        MessageDigest result = cache.get(algorithm);
+        if (result == null) {
+            result = MessageDigest.getInstance(algorithm);
+            cache.put(algorithm, result);
+        }
+        return result;
+    }
+
+    private Mac getMac(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, Mac> cache = macs.get();
+        Mac result = cache.get(algorithm);
+        if (result == null) {
+            result = Mac.getInstance(algorithm);
+            cache.put(algorithm, result);
+        }
+        return result;
+    }
+
+    private Cipher getCipher(String algorithm) throws GeneralSecurityException {
+        Map<String, Cipher> cache = ciphers.get();
+        Cipher result = cache.get(algorithm);
+        if (result == null) {
+            result = Cipher.getInstance(algorithm);
+            cache.put(algorithm, result);
+        }
+        return result;
+    }
+
+    private Signature getSignature(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, Signature> cache = signatures.get();
+        Signature result = cache.get(algorithm);
+        if (result == null) {
+            result = Signature.getInstance(algorithm);
+            cache.put(algorithm, result);
+        }
+        return result;
+    }
+
     ///////////////////
     // Other utilities
     ///////////////////
@@ -47,6 +47,11 @@ public class MultiLevelMap {
         return element != null;
     }
 
+    public boolean exists(CompiledPath compositePath) {
+        Object element = getElement(compositePath);
+        return element != null;
+    }
+
     /**
      * Retrieve an element from a map using a composite path
      * (Nested array is supported)
@@ -56,21 +61,60 @@ public class MultiLevelMap {
      * @return element
      */
     public Object getElement(String compositePath) {
-        return getElement(compositePath, multiLevels);
+        if (compositePath == null || multiLevels.isEmpty()) return null;
+        if (multiLevels.containsKey(compositePath)) {
+            return multiLevels.get(compositePath);
+        }
+        return getElement(CompiledPath.compile(compositePath));
+    }
+
+    /**
+     * Retrieve an element from a map using a compiled path
+     *
+     * @param compositePath that has been parsed into segments
+     * @return element
+     */
+    @SuppressWarnings("unchecked")
+    public Object getElement(CompiledPath compositePath) {
+        if (compositePath == null || multiLevels.isEmpty()) return null;
+        if (!compositePath.isComposite() || multiLevels.containsKey(compositePath.getPath())) {
+            return multiLevels.get(compositePath.getPath());
+        }
+        if (!compositePath.isValid()) return null;
+        Map<String, Object> current = multiLevels;
+        int len = compositePath.size();
+        for (int n=0; n < len; n++) {
+            Object next = current.get(compositePath.getKey(n));
+            int[] indexes = compositePath.getIndexes(n);
+            if (indexes != null) {
+                if (!(next instanceof List)) {
+                    return null;
+                }
+                next = getListElement(indexes, (List<Object>) next);
+            }
+            if (n == len - 1) {
+                return next;
+            }
+            if (next instanceof Map) {
+                current = (Map<String, Object>) next;
+            } else {
+                return null;
+            }
+        }
+        return null;
     }
 
     @SuppressWarnings("unchecked")
-    private Object getListElement(List<Integer> indexes, List<Object> data) {
+    private Object getListElement(int[] indexes, List<Object> data) {
         List<Object> current = data;
-        int n = 0;
-        int len = indexes.size();
-        for (Integer i: indexes) {
-            n++;
+        int len = indexes.length;
+        for (int n=0; n < len; n++) {
+            int i = indexes[n];
             if (i < 0 || i >= current.size()) {
                 break;
             }
             Object o = current.get(i);
-            if (n == len) {
+            if (n == len - 1) {
                 return o;
             }
             if (o instanceof List) {
@@ -82,86 +126,27 @@ public class MultiLevelMap {
         return null;
     }
 
-    @SuppressWarnings("unchecked")
-    private Object getElement(String path, Map<String, Object> map) {
-        if (path == null || map == null || map.isEmpty()) return null;
-        if (map.containsKey(path)) {
-            return map.get(path);
-        }
-        if (!isComposite(path)) {
-            return map.get(path);
-        }
-        Utility util = Utility.getInstance();
-        List<String> list = util.split(path, "./");
-        Map<String, Object> current = map;
-        int len = list.size();
-        int n = 0;
-        for (String p: list) {
-            n++;
-            if (isListElement(p)) {
-                int start = p.indexOf('[');
-                int end = p.indexOf(']', start);
-                if (end == -1) break;
-                String key = p.substring(0, start);
-                String index = p.substring(start+1, end).trim();
-                if (index.length() == 0 || !util.isDigits(index)) break;
-                if (current.containsKey(key)) {
-                    Object nextList = current.get(key);
-                    if (nextList instanceof List) {
-                        List<Integer> indexes = getIndexes(p.substring(start));
-                        Object next = getListElement(indexes, (List<Object>) nextList);
-                        if (n == len) {
-                            return next;
-                        }
-                        if (next instanceof Map) {
-                            current = (Map<String, Object>) next;
-                            continue;
-                        }
-                    }
-                }
-            } else {
-                if (current.containsKey(p)) {
-                    Object next = current.get(p);
-                    if (n == len) {
-                        return next;
-                    } else if (next instanceof Map) {
-                        current = (Map<String, Object>) next;
-                        continue;
-                    }
-                }
-            }
-            // item not found
-            break;
-        }
-        return null;
+    public MultiLevelMap setElement(String compositePath, Object value) {
+        return setElement(CompiledPath.compile(compositePath), value);
     }
 
-    public MultiLevelMap setElement(String compositePath, Object value) {
-        validateCompositePathSyntax(compositePath);
+    public MultiLevelMap setElement(CompiledPath compositePath, Object value) {
+        compositePath.validate();
         setElement(compositePath, value, multiLevels);
         return this;
     }
 
     @SuppressWarnings("unchecked")
-    private void setElement(String path, Object value, Map<String, Object> map) {
-        Utility util = Utility.getInstance();
-        List<String> segments = util.split(path, "./");
-        if (segments.isEmpty()) {
-            return;
-        }
+    private void setElement(CompiledPath path, Object value, Map<String, Object> map) {
         Map<String, Object> current = map;
-        int len = segments.size();
-        int n = 0;
-        // reconstruct the composite as we walk the path segments
-        StringBuilder composite = new StringBuilder();
-        for (String p : segments) {
-            n++;
-            if (isListElement(p)) {
-                int sep = p.indexOf('[');
-                List<Integer> indexes = getIndexes(p.substring(sep));
-                String element = p.substring(0, sep);
-                Object parent = getElement(composite+element, map);
-                if (n == len) {
+        int len = path.size();
+        for (int n=0; n < len; n++) {
+            String element = path.getKey(n);
+            int[] indexes = path.getIndexes(n);
+            boolean last = n == len - 1;
+            if (indexes != null) {
+                Object parent = current.get(element);
+                if (last) {
                     if (parent instanceof List) {
                         setListElement(indexes, (List<Object>) parent, value);
                     } else {
@@ -169,10 +154,9 @@ public class MultiLevelMap {
                         setListElement(indexes, newList, value);
                         current.put(element, newList);
                     }
-                    break;
                 } else {
                     if (parent instanceof List) {
-                        Object next = getElement(composite+p, map);
+                        Object next = getListElement(indexes, (List<Object>) parent);
                         if (next instanceof Map) {
                             current = (Map<String, Object>) next;
                         } else {
@@ -188,32 +172,29 @@ public class MultiLevelMap {
                         current = nextMap;
                     }
                 }
-
             } else {
-                if (n == len) {
-                    current.put(p, value);
-                    break;
+                if (last) {
+                    current.put(element, value);
                 } else {
-                    Object next = current.get(p);
+                    Object next = current.get(element);
                     if (next instanceof Map) {
                         current = (Map<String, Object>) next;
                     } else {
                         Map<String, Object> nextMap = new HashMap<>();
-                        current.put(p, nextMap);
+                        current.put(element, nextMap);
                         current = nextMap;
                     }
                 }
             }
-            composite.append(p).append('.');
         }
     }
 
     @SuppressWarnings("unchecked")
-    private void setListElement(List<Integer> indexes, List<Object> data, Object value) {
+    private void setListElement(int[] indexes, List<Object> data, Object value) {
         List<Object> current = expandList(indexes, data);
-        int len = indexes.size();
+        int len = indexes.length;
         for (int i=0; i < len; i++) {
-            int idx = indexes.get(i);
+            int idx = indexes[i];
             if (i == len - 1) {
                 current.set(idx, value);
             } else {
@@ -226,11 +207,11 @@ public class MultiLevelMap {
     }
 
     @SuppressWarnings("unchecked")
-    private List<Object> expandList(List<Integer> indexes, List<Object> data) {
+    private List<Object> expandList(int[] indexes, List<Object> data) {
         List<Object> current = data;
-        int len = indexes.size();
+        int len = indexes.length;
         for (int i=0; i < len; i++) {
-            int idx = indexes.get(i);
+            int idx = indexes[i];
             if (idx >= current.size()) {
                 int diff = idx - current.size();
                 while (diff-- >= 0) {
@@ -252,70 +233,8 @@ public class MultiLevelMap {
         return data;
     }
 
-    private boolean isComposite(String item) {
-        return item.contains(".") || item.contains("/") || item.contains("[") || item.contains("]");
-    }
-
-    private boolean isListElement(String item) {
-        return (item.contains("[") && item.endsWith("]") && !item.startsWith("["));
-    }
-
-    private List<Integer> getIndexes(String indexSegment) {
-        Utility util = Utility.getInstance();
-        List<String> indexes = util.split(indexSegment, "[]");
-        List<Integer> result = new ArrayList<>();
-        for (String s: indexes) {
-            result.add(util.str2int(s));
-        }
-        return result;
-    }
-
     public void validateCompositePathSyntax(String path) {
-        Utility util = Utility.getInstance();
-        List<String> segments = util.split(path, "./");
-        if (segments.isEmpty()) {
-            throw new IllegalArgumentException("Missing composite path");
-        }
-        for (String s: segments) {
-            if (s.contains("[") || s.contains("]")) {
-                if (!s.contains("[")) {
-                    throw new IllegalArgumentException("Invalid composite path - missing start bracket");
-                }
-                if (!s.endsWith("]")) {
-                    throw new IllegalArgumentException("Invalid composite path - missing end bracket");
-                }
-                // check start-end pair
-                int sep1 = s.indexOf('[');
-                int sep2 = s.indexOf(']');
-                if (sep2 < sep1) {
-                    throw new IllegalArgumentException("Invalid composite path - missing start bracket");
-                }
-                boolean start = false;
-                for (char c: s.substring(sep1).toCharArray()) {
-                    if (c == '[') {
-                        if (start) {
-                            throw new IllegalArgumentException("Invalid composite path - missing end bracket");
-                        } else {
-                            start = true;
-                        }
-                    } else if (c == ']') {
-                        if (!start) {
-                            throw new IllegalArgumentException("Invalid composite path - duplicated end bracket");
-                        } else {
-                            start = false;
-                        }
-                    } else {
-                        if (start) {
-                            if (c < '0' || c > '9') {
-                                throw new IllegalArgumentException("Invalid composite path - indexes must be digits");
-                            }
-                        } else {
-                            throw new IllegalArgumentException("Invalid composite path - invalid indexes");
-                        }
-                    }
-                }
-            }
-        }
+        CompiledPath.compile(path).validate();
     }
 
 }
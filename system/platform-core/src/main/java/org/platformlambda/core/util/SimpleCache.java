@@ -15,40 +15,70 @@
     limitations under the License.
 
  */
-
 package org.platformlambda.core.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 import org.platformlambda.core.models.EventBlocks;
-import org.platformlambda.core.models.TimedItem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * SimpleCache is a simple ConcurrentHashMap with automatic removal of inactive entries
- * <b>
- * WARNING - You should NOT use this as a regular cache class because its memory consumption would expand without limit.
+ * SimpleCache is a concurrent map with automatic removal of inactive entries
+ * <p>
+ * Entries expire a fixed time after they are last written. Expired entries are reclaimed
+ * in write order so that housekeeping cost is proportional to the number of expired items
+ * rather than the size of the cache.
+ * <p>
+ * A cache may be bounded by number of entries or by number of bytes. When the bound is reached,
+ * the least recently used entries are evicted. The bound is approximate because the cache is
+ * partitioned internally for concurrency. Byte size is estimated for byte arrays and
+ * event blocks. Other objects are counted as one byte each. The size of an entry is taken
+ * when it is put into the cache, so a mutable value such as an event block must be put again
+ * after each change to keep its weight current.
  * <p>
- * This class is exclusively used by the MultipartPayload class for segmentation of large event payload.
+ * This class is used by the MultipartPayload class for segmentation of large event payload
+ * and by cloud connectors for sticky destinations.
  */
 public class SimpleCache {
     private static final Logger log = LoggerFactory.getLogger(SimpleCache.class);
     private static final long MIN_EXPIRY = 1000;
+    private static final long HOUSEKEEPING_INTERVAL = 2000;
     private static final ConcurrentMap<String, SimpleCache> cacheCollection = new ConcurrentHashMap<>();
     private static final AtomicInteger counter = new AtomicInteger(0);
     private static boolean loaded = false;
     private final String name;
-    private final long expiry;
-    private final ConcurrentMap<String, TimedItem> cache = new ConcurrentHashMap<>();
+    private final long expiry, maxItems, maxBytes;
+    private final Cache<String, Object> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
 
-    private SimpleCache(String name, long expiryMs) {
+    private SimpleCache(String name, long expiryMs, long maxItems, long maxBytes) {
         this.name = name;
         this.expiry = expiryMs;
+        this.maxItems = maxItems;
+        this.maxBytes = maxBytes;
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS);
+        if (maxBytes > 0) {
+            builder.maximumWeight(maxBytes).weigher((Weigher<Object, Object>) (k, v) -> weigh(v));
+        } else if (maxItems > 0) {
+            builder.maximumSize(maxItems);
+        }
+        RemovalListener<String, Object> listener = this::removed;
+        this.cache = builder.removalListener(listener).build();
         if (counter.incrementAndGet() == 1 && !loaded) {
             loaded = true;
             CleanUp cleanUp = new CleanUp();
@@ -63,15 +93,39 @@ public class SimpleCache {
      * @param expiryMs timer
      * @return simple cache object
      */
-    public synchronized static SimpleCache createCache(String name, long expiryMs) {
+    public static SimpleCache createCache(String name, long expiryMs) {
+        return createCache(name, expiryMs, 0, 0);
+    }
+
+    /**
+     * Create a simple cache with expiry timer and size bound
+     * <p>
+     * Only one bound is enforced. If maxBytes is positive, it takes precedence over maxItems.
+     * A value of zero means no limit.
+     *
+     * @param name cache label
+     * @param expiryMs timer
+     * @param maxItems maximum number of entries
+     * @param maxBytes maximum estimated size in bytes
+     * @return simple cache object
+     */
+    public synchronized static SimpleCache createCache(String name, long expiryMs, long maxItems, long maxBytes) {
         SimpleCache simpleCache = getInstance(name);
         if (simpleCache != null) {
             return simpleCache;
         }
         long expiryTimer = Math.max(expiryMs, MIN_EXPIRY);
-        simpleCache = new SimpleCache(name, expiryTimer);
+        long itemLimit = Math.max(0, maxItems);
+        long byteLimit = Math.max(0, maxBytes);
+        simpleCache = new SimpleCache(name, expiryTimer, itemLimit, byteLimit);
         cacheCollection.put(name, simpleCache);
-        log.info("Created cache ({}), expiry {} ms", name, expiryTimer);
+        if (byteLimit > 0) {
+            log.info("Created cache ({}), expiry {} ms, maxBytes={}", name, expiryTimer, byteLimit);
+        } else if (itemLimit > 0) {
+            log.info("Created cache ({}), expiry {} ms, maxItems={}", name, expiryTimer, itemLimit);
+        } else {
+            log.info("Created cache ({}), expiry {} ms", name, expiryTimer);
+        }
         return simpleCache;
     }
 
@@ -79,27 +133,41 @@ public class SimpleCache {
         return cacheCollection.get(name);
     }
 
+    /**
+     * Put an entry into the cache
+     * <p>
+     * The entry is weighed at this point. Put a mutable value again after it has changed.
+     *
+     * @param key of the entry
+     * @param o value
+     */
     public void put(String key, Object o) {
-        cache.put(key, new TimedItem(System.currentTimeMillis(), o));
+        if (key != null && o != null) {
+            cache.put(key, o);
+        }
     }
 
     public void remove(String key) {
-        TimedItem item = cache.get(key);
-        cache.remove(key);
-        if (item != null) {
-            // remove references
-            item.time = null;
-            item.payload = null;
+        if (key != null) {
+            cache.invalidate(key);
         }
     }
 
     public Object get(String key) {
-        TimedItem item = cache.get(key);
-        return item == null? null: item.payload;
+        if (key == null) {
+            return null;
+        }
+        Object o = cache.getIfPresent(key);
+        if (o == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return o;
     }
 
     public boolean exists(String key) {
-        return get(key) != null;
+        return key != null && cache.asMap().containsKey(key);
     }
 
     public String getName() {
@@ -110,32 +178,79 @@ public class SimpleCache {
         return expiry;
     }
 
+    public long getMaxItems() {
+        return maxItems;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of entries evicted because the cache has reached its size bound
+     *
+     * @return count
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Number of entries removed because they have not been updated within the expiry period
+     *
+     * @return count
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
     public void clear() {
-        cache.clear();
+        cache.invalidateAll();
+        cache.cleanUp();
     }
 
     public void cleanUp() {
-        long now = System.currentTimeMillis();
-        log.debug("Cleaning up {}", this.getName());
-        // clean up cache
-        List<String> expired = new ArrayList<>();
-        for (String k: cache.keySet()) {
-            TimedItem item = cache.get(k);
-            if (now - item.time > expiry) {
-                expired.add(k);
-            }
-        }
-        if (!expired.isEmpty()) {
-            for (String k : expired) {
-                remove(k);
-            }
-            log.info("Total {} item{} expired, remaining: {}",
-                    expired.size(), expired.size() == 1? "" : "s", cache.size());
+        long before = expirations.sum();
+        cache.cleanUp();
+        long n = expirations.sum() - before;
+        if (n > 0) {
+            log.debug("Total {} item{} expired in {}, remaining: {}", n, n == 1? "" : "s", name, cache.size());
         }
     }
 
     public int size() {
-        return cache.size();
+        return (int) cache.size();
+    }
+
+    private void removed(RemovalNotification<String, Object> notification) {
+        RemovalCause cause = notification.getCause();
+        if (cause == RemovalCause.EXPIRED) {
+            expirations.increment();
+        } else if (cause == RemovalCause.SIZE) {
+            evictions.increment();
+        }
+        // return reassembly quota when an incomplete event is dropped
+        if (cause != RemovalCause.REPLACED && notification.getValue() instanceof EventBlocks) {
+            ((EventBlocks) notification.getValue()).release();
+        }
+    }
+
+    private static int weigh(Object o) {
+        if (o instanceof byte[]) {
+            return Math.max(1, ((byte[]) o).length);
+        }
+        if (o instanceof EventBlocks) {
+            return Math.max(1, ((EventBlocks) o).getBytes());
+        }
+        return 1;
     }
 
     private static class CleanUp extends Thread {
@@ -152,11 +267,10 @@ public class SimpleCache {
             while (normal) {
                 long now = System.currentTimeMillis();
                 // avoid scanning frequently
-                if (now - t1 > 2000) {//HOUSEKEEPING_INTERVAL) {
+                if (now - t1 > HOUSEKEEPING_INTERVAL) {
                     t1 = now;
-                    // clean up cache collection
-                    for (String key : cacheCollection.keySet()) {
-                        SimpleCache c = cacheCollection.get(key);
+                    // reclaim expired entries of idle caches
+                    for (SimpleCache c : cacheCollection.values()) {
                         c.cleanUp();
                     }
                 }
@@ -31,12 +31,15 @@ import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Utility {
     public static final String ISO_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZ";
@@ -70,6 +73,16 @@ public class Utility {
     private static final String DEFAULT_APPNAME = "application";
     private static final String APP_VERSION = "info.app.version";
     private static final String DEFAULT_APP_VERSION = "1.0.0";
+    private static final char[] BASE36 = "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
+    private static final int ID_TIME_LEN = 8;
+    private static final int ID_NODE_LEN = 8;
+    private static final int ID_SEQ_LEN = 7;
+    private static final long ID_SEQ_MAX = 78364164096L; // 36^7
+    private static final long ID_NODE = Math.floorMod(new SecureRandom().nextLong(), 2821109907456L); // 36^8
+    private static final AtomicLong ID_SEQ = new AtomicLong(0);
+    private static final int ID_RANDOM_LEN = 12;
+    private static final long ID_RANDOM_MAX = 4738381338321616896L; // 36^12
+    private static final ThreadLocal<SecureRandom> ID_RANDOM = ThreadLocal.withInitial(Utility::getIdRandom);
     private static final String[] RESERVED_FILENAMES = {"thumbs.db"};
     private static final String[] RESERVED_EXTENSIONS = {
             ".con", ".prn", ".aux", ".nul", ".com", ".exe",
@@ -188,10 +201,76 @@ public class Utility {
         return value.length() < len? ZEROS.substring(0, len - value.length()) + value : value;
     }
 
+    /**
+     * Random UUID without hyphens.
+     * <p>
+     * Use this for tokens, keys and file names that must not be predictable.
+     * For event IDs, please use getUniqueId(). For inbox routes and request IDs, please use getRandomId().
+     * Both are much cheaper.
+     *
+     * @return 32-character random ID
+     */
     public String getUuid() {
         return UUID.randomUUID().toString().replace("-", "");
     }
 
+    /**
+     * Time-ordered unique ID in lower case base-36 (23 characters)
+     * <p>
+     * It is composed of the current time in milliseconds, a random node number chosen when the JVM starts
+     * and a sequence number. It is unique within a JVM and practically unique across a cluster.
+     * It is lock-free and does not use SecureRandom so it is suitable for high-frequency use.
+     * The ID is predictable so it must not be used as a security token or an addressable route.
+     * Please use getRandomId() for these.
+     *
+     * @return unique ID
+     */
+    public String getUniqueId() {
+        char[] result = new char[ID_TIME_LEN + ID_NODE_LEN + ID_SEQ_LEN];
+        encodeBase36(result, 0, ID_TIME_LEN, System.currentTimeMillis());
+        encodeBase36(result, ID_TIME_LEN, ID_NODE_LEN, ID_NODE);
+        encodeBase36(result, ID_TIME_LEN + ID_NODE_LEN, ID_SEQ_LEN,
+                        Math.floorMod(ID_SEQ.getAndIncrement(), ID_SEQ_MAX));
+        return new String(result);
+    }
+
+    /**
+     * Unique ID with a random suffix in lower case base-36 (35 characters)
+     * <p>
+     * It is getUniqueId() followed by 12 random characters from a SecureRandom of the current thread
+     * so that it cannot be guessed from another ID. Use it for inbox reply routes, stream routes and
+     * request IDs that another party must not be able to address.
+     *
+     * @return unique ID that is not predictable
+     */
+    public String getRandomId() {
+        char[] result = new char[ID_TIME_LEN + ID_NODE_LEN + ID_SEQ_LEN + ID_RANDOM_LEN];
+        encodeBase36(result, 0, ID_TIME_LEN, System.currentTimeMillis());
+        encodeBase36(result, ID_TIME_LEN, ID_NODE_LEN, ID_NODE);
+        encodeBase36(result, ID_TIME_LEN + ID_NODE_LEN, ID_SEQ_LEN,
+                        Math.floorMod(ID_SEQ.getAndIncrement(), ID_SEQ_MAX));
+        encodeBase36(result, ID_TIME_LEN + ID_NODE_LEN + ID_SEQ_LEN, ID_RANDOM_LEN,
+                        Math.floorMod(ID_RANDOM.get().nextLong(), ID_RANDOM_MAX));
+        return new String(result);
+    }
+
+    private static SecureRandom getIdRandom() {
+        try {
+            // an instance per thread avoids the shared lock of the native generator
+            return SecureRandom.getInstance("SHA1PRNG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    private void encodeBase36(char[] result, int offset, int len, long value) {
+        long v = value;
+        for (int i = offset + len - 1; i >= offset; i--) {
+            result[i] = BASE36[(int) (v % 36)];
+            v /= 36;
+        }
+    }
+
     public String getDateUuid() {
         return getDateOnly(new Date())+getUuid();
     }
@@ -258,50 +337,62 @@ public class Utility {
      */
     public Map<String, Object> getFlatMap(Map<String, Object> src) {
         Map<String, Object> target = new HashMap<>();
-        getFlatMap(null, src, target);
+        // composite keys are built in a single buffer that is truncated when returning from each level
+        getFlatMap(new StringBuilder(), src, target);
         return target;
     }
 
     @SuppressWarnings("unchecked")
-    private void getFlatMap(String prefix, Map<String, Object> src, Map<String, Object> target) {
-        for (String k: src.keySet()) {
-            String key = prefix == null? k : prefix+"."+k;
-            Object v = src.get(k);
+    private void getFlatMap(StringBuilder key, Map<String, Object> src, Map<String, Object> target) {
+        int mark = key.length();
+        for (Map.Entry<String, Object> kv: src.entrySet()) {
+            key.setLength(mark);
+            if (mark > 0) {
+                key.append('.');
+            }
+            key.append(kv.getKey());
+            Object v = kv.getValue();
             if (v instanceof Map) {
                 getFlatMap(key, (Map<String, Object>) v, target);
             } else if (v instanceof List) {
+                int prefix = key.length();
                 int n = 0;
                 for (Object o: (List<Object>) v) {
-                    String next = key +"["+n+"]";
+                    key.setLength(prefix);
+                    key.append('[').append(n).append(']');
                     n++;
                     if (o instanceof Map) {
-                        getFlatMap(next, (Map<String, Object>) o, target);
+                        getFlatMap(key, (Map<String, Object>) o, target);
                     } else if (o instanceof List) {
-                        getFlatList(next, (List<Object>) o, target);
+                        getFlatList(key, (List<Object>) o, target);
                     } else if (o != null) {
-                        target.put(next, o);
+                        target.put(key.toString(), o);
                     }
                 }
             } else if (v != null) {
-                target.put(key, v);
+                target.put(key.toString(), v);
             }
         }
+        key.setLength(mark);
     }
 
     @SuppressWarnings("unchecked")
-    private void getFlatList(String prefix, List<Object> src, Map<String, Object> target) {
+    private void getFlatList(StringBuilder key, List<Object> src, Map<String, Object> target) {
+        int mark = key.length();
         int n = 0;
         for (Object v: src) {
-            String key = prefix+"["+n+"]";
+            key.setLength(mark);
+            key.append('[').append(n).append(']');
             n++;
             if (v instanceof Map) {
                 getFlatMap(key, (Map<String, Object>) v, target);
             } else if (v instanceof List) {
                 getFlatList(key, (List<Object>) v, target);
             } else {
-                target.put(key, v);
+                target.put(key.toString(), v);
             }
         }
+        key.setLength(mark);
     }
 
     //////////////////////////////////
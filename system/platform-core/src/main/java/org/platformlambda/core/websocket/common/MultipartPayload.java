@@ -23,12 +23,12 @@ import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.system.Platform;
 import org.platformlambda.core.system.PostOffice;
 import org.platformlambda.core.system.ServiceQueue;
+import org.platformlambda.core.util.AppConfigReader;
 import org.platformlambda.core.util.SimpleCache;
 import org.platformlambda.core.util.Utility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.Arrays;
@@ -39,16 +39,24 @@ public class MultipartPayload {
     public static final String ID = "_id_";
     public static final String COUNT = "_blk_";
     public static final String TOTAL = "_max_";
+    public static final String SIZE = "_len_";
     public static final String TO = "to";
     public static final String BROADCAST = "broadcast";
     public static final int OVERHEAD = 256;
     private static final String TO_MONITOR = "@monitor";
+    private static final String REASSEMBLY_LIMIT = "payload.reassembly.limit";
     private static final SimpleCache cache = SimpleCache.createCache("payload.segmentation", 60000);
     private static final int MAX_PAYLOAD = WsConfigurator.getInstance().getMaxBinaryPayload() - OVERHEAD;
     private static final MultipartPayload instance = new MultipartPayload();
 
     private MultipartPayload() {
         log.info("Automatic segmentation when event payload exceeds {}", NumberFormat.getInstance().format(MAX_PAYLOAD));
+        // default reassembly limit is one quarter of the heap
+        long defaultLimit = Runtime.getRuntime().maxMemory() / 4;
+        String limit = AppConfigReader.getInstance().getProperty(REASSEMBLY_LIMIT, String.valueOf(defaultLimit));
+        EventBlocks.setMaxReservedBytes(Utility.getInstance().str2long(limit));
+        log.info("Reassembly of segmented events limited to {} bytes",
+                NumberFormat.getInstance().format(EventBlocks.getMaxReservedBytes()));
     }
 
     public static MultipartPayload getInstance() {
@@ -76,19 +84,26 @@ public class MultipartPayload {
                 byte[] data = (byte[]) message.getBody();
                 log.debug("Receiving block {} of {} as {} - {} bytes", count, total, id, data.length);
                 Object o = cache.get(id);
-                EventBlocks segments = o instanceof EventBlocks ? (EventBlocks) o : new EventBlocks(id, total);
-                if (segments.exists(count)) {
+                EventBlocks segments = o instanceof EventBlocks ? (EventBlocks) o :
+                                        new EventBlocks(id, total, util.str2int(control.get(SIZE)));
+                if (segments.isRejected()) {
+                    log.debug("Block {} for rejected event {} dropped", count, id);
+                } else if (segments.exists(count)) {
                     log.error("Duplicated block {} for event {} dropped", count, id);
+                } else if (!segments.put(count, data)) {
+                    // keep the rejected entry until expiry so that remaining blocks are dropped
+                    cache.put(id, segments);
+                    log.error("Unable to reassemble event {} - block {} of {} rejected, reserved {} of {} bytes",
+                            id, count, total, EventBlocks.getReservedBytes(), EventBlocks.getMaxReservedBytes());
+                } else if (segments.isComplete()) {
+                    EventEnvelope reconstructed = new EventEnvelope();
+                    reconstructed.load(segments.getBuffer(), 0, segments.getLength());
+                    segments.release();
+                    cache.remove(id);
+                    po.send(reconstructed);
                 } else {
-                    segments.put(count, data);
-                    if (total == segments.size()) {
-                        EventEnvelope reconstructed = new EventEnvelope();
-                        reconstructed.load(segments.toBytes());
-                        cache.remove(id);
-                        po.send(reconstructed);
-                    } else {
-                        cache.put(id, segments);
-                    }
+                    // put it again so that the cache weighs the buffer after this block
+                    cache.put(id, segments);
                 }
             }
         }
@@ -118,17 +133,18 @@ public class MultipartPayload {
             EventBus system = Platform.getInstance().getEventSystem();
             if (payload.length > MAX_PAYLOAD) {
                 int total = (payload.length / MAX_PAYLOAD) + (payload.length % MAX_PAYLOAD == 0 ? 0 : 1);
-                ByteArrayInputStream in = new ByteArrayInputStream(payload);
                 for (int i = 0; i < total; i++) {
                     // To distinguish from a normal payload, the segmented block MUST not have a "TO" value.
                     int count = i + 1;
                     EventEnvelope blk = new EventEnvelope()
                                             .setHeader(MultipartPayload.ID, event.getId())
                                             .setHeader(MultipartPayload.COUNT, count)
-                                            .setHeader(MultipartPayload.TOTAL, total);
-                    byte[] segment = new byte[MAX_PAYLOAD];
-                    int size = in.read(segment);
-                    blk.setBody(size == MAX_PAYLOAD ? segment : Arrays.copyOfRange(segment, 0, size));
+                                            .setHeader(MultipartPayload.TOTAL, total)
+                                            .setHeader(MultipartPayload.SIZE, payload.length);
+                    int start = i * MAX_PAYLOAD;
+                    int end = Math.min(start + MAX_PAYLOAD, payload.length);
+                    int size = end - start;
+                    blk.setBody(Arrays.copyOfRange(payload, start, end));
                     /*
                      * To guarantee that the cloud connector can deliver blocks of the same event
                      * to the same destination, we pass id, count and total as the headers
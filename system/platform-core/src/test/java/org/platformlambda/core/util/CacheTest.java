@@ -20,12 +20,16 @@ package org.platformlambda.core.util;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.platformlambda.core.models.EventBlocks;
 
 public class CacheTest {
 
     // note that the cache expiry has a minimum value of 1000 ms
     private static final ManagedCache cache1 = ManagedCache.createCache("hello.world", 1000, 100);
     private static final SimpleCache cache2 = SimpleCache.createCache("simple.cache", 500);
+    private static final SimpleCache cache3 = SimpleCache.createCache("bounded.cache", 5000, 3, 0);
+    private static final SimpleCache cache4 = SimpleCache.createCache("bytes.cache", 5000, 0, 1000);
+    private static final SimpleCache cache5 = SimpleCache.createCache("blocks.cache", 5000, 0, 1000);
 
     @Test
     public void cacheBehavior() throws InterruptedException {
@@ -81,4 +85,57 @@ public class CacheTest {
         cache2.clear();
     }
 
+    @Test
+    public void boundedSimpleCacheTest() {
+        Assert.assertEquals(3, cache3.getMaxItems());
+        for (int i=0; i < 5; i++) {
+            cache3.put("k"+i, "v"+i);
+        }
+        cache3.cleanUp();
+        Assert.assertEquals(3, cache3.size());
+        Assert.assertEquals(2, cache3.getEvictions());
+        // the oldest entries are evicted
+        Assert.assertNull(cache3.get("k0"));
+        Assert.assertEquals("v4", cache3.get("k4"));
+        Assert.assertEquals(1, cache3.getHits());
+        Assert.assertEquals(1, cache3.getMisses());
+        cache3.clear();
+        Assert.assertEquals(0, cache3.size());
+        // removal by clear is not counted as eviction
+        Assert.assertEquals(2, cache3.getEvictions());
+    }
+
+    @Test
+    public void byteBoundedSimpleCacheTest() {
+        Assert.assertEquals(1000, cache4.getMaxBytes());
+        for (int i=0; i < 20; i++) {
+            cache4.put("b"+i, new byte[100]);
+        }
+        cache4.cleanUp();
+        // the byte bound is enforced approximately because the cache is partitioned for concurrency
+        int n = cache4.size();
+        Assert.assertTrue(n > 0 && n <= 10);
+        Assert.assertEquals(20 - n, cache4.getEvictions());
+        Assert.assertTrue(cache4.exists("b19"));
+        cache4.clear();
+    }
+
+    @Test
+    public void mutableEntryWeightTest() {
+        long reserved = EventBlocks.getReservedBytes();
+        EventBlocks blocks = new EventBlocks("w1", 2, 4000);
+        cache5.put("w1", blocks);
+        // an empty buffer is light so it fits within the bound
+        Assert.assertTrue(cache5.exists("w1"));
+        Assert.assertTrue(blocks.put(1, new byte[2000]));
+        Assert.assertEquals(reserved + 4000, EventBlocks.getReservedBytes());
+        // the entry is weighed again when it is put after the change and it is over the bound
+        cache5.put("w1", blocks);
+        cache5.cleanUp();
+        Assert.assertFalse(cache5.exists("w1"));
+        Assert.assertEquals(1, cache5.getEvictions());
+        // the evicted buffer returns its reservation
+        Assert.assertEquals(reserved, EventBlocks.getReservedBytes());
+    }
+
 }
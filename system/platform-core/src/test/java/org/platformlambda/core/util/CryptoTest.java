@@ -27,6 +27,8 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.PrivateKey;
@@ -178,4 +180,55 @@ public class CryptoTest {
         Assert.assertEquals(expected, Utility.getInstance().bytes2hex(b));
     }
 
+    @Test
+    public void incrementalHashTest() throws GeneralSecurityException {
+        byte[] input = "hello world".getBytes(StandardCharsets.UTF_8);
+        CryptoApi.Hasher hasher = crypto.getHasher("SHA-256");
+        hasher.update(ByteBuffer.wrap(input, 0, 5));
+        ByteBuffer direct = ByteBuffer.allocateDirect(6);
+        direct.put(input, 5, 6);
+        direct.flip();
+        hasher.update(direct);
+        Assert.assertArrayEquals(crypto.getSHA256(input), hasher.digest());
+        // hasher is reset after digest
+        Assert.assertArrayEquals(crypto.getSHA256(input), hasher.update(input).digest());
+        CryptoApi.Hasher hmac = crypto.getHmacHasher("hello".getBytes(), "HmacSHA256");
+        hmac.update("wor".getBytes()).update(ByteBuffer.wrap("ld".getBytes()));
+        Assert.assertEquals("f1ac9702eb5faf23ca291a4dc46deddeee2a78ccdaf0a412bed7714cfffb1cc4",
+                Utility.getInstance().bytes2hex(hmac.digest()));
+    }
+
+    @Test
+    public void aesGcmTest() throws GeneralSecurityException {
+        byte[] key = crypto.generateAesKey(128);
+        byte[] input = "hello world".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer encrypted = ByteBuffer.allocateDirect(crypto.getAesGcmOutputSize(input.length));
+        int len = crypto.aesGcmEncrypt(ByteBuffer.wrap(input), encrypted, key);
+        Assert.assertEquals(encrypted.capacity(), len);
+        encrypted.flip();
+        ByteBuffer clear = ByteBuffer.allocate(input.length);
+        Assert.assertEquals(input.length, crypto.aesGcmDecrypt(encrypted, clear, key));
+        Assert.assertArrayEquals(input, clear.array());
+        // tampered cipher text is rejected
+        encrypted.clear();
+        encrypted.put(20, (byte) (encrypted.get(20) ^ 1));
+        try {
+            crypto.aesGcmDecrypt(encrypted, ByteBuffer.allocate(input.length), key);
+            Assert.fail("Tampered cipher text must be rejected");
+        } catch (GeneralSecurityException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void parsedKeyCacheTest() throws GeneralSecurityException {
+        KeyPair kp = crypto.generateRsaKey();
+        byte[] pub = crypto.getEncodedPublicKey(kp);
+        byte[] pri = crypto.getEncodedPrivateKey(kp);
+        Assert.assertSame(crypto.getPublic(pub), crypto.getPublic(pub.clone()));
+        Assert.assertSame(crypto.getPrivate(pri), crypto.getPrivate(pri.clone()));
+        byte[] data = "hello world".getBytes();
+        Assert.assertTrue(crypto.rsaVerify(data, crypto.rsaSign(data, pri), pub));
+    }
+
 }
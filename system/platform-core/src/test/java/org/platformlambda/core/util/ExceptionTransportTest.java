@@ -4,13 +4,18 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.platformlambda.core.exception.AppException;
+import org.platformlambda.core.exception.UnresolvedException;
 import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.LambdaFunction;
 import org.platformlambda.core.models.TypedLambdaFunction;
+import org.platformlambda.core.serializers.ExceptionCodec;
+import org.platformlambda.core.serializers.MsgPack;
 import org.platformlambda.core.system.Platform;
 import org.platformlambda.core.system.PostOffice;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -63,6 +68,62 @@ public class ExceptionTransportTest {
         Assert.assertEquals(DEMO, result.getException().getMessage());
     }
 
+    @Test
+    public void causeChainTest() throws IOException {
+        AppException ex = new AppException(409, "conflict", new IllegalStateException("inner"));
+        EventEnvelope event = new EventEnvelope(new EventEnvelope().setException(ex).toBytes());
+        Throwable restored = event.getException();
+        Assert.assertTrue(restored instanceof AppException);
+        Assert.assertEquals(409, ((AppException) restored).getStatus());
+        Assert.assertEquals("conflict", restored.getMessage());
+        Assert.assertTrue(restored.getStackTrace().length > 0);
+        Assert.assertEquals(ex.getStackTrace()[0].toString(), restored.getStackTrace()[0].toString());
+        Assert.assertTrue(restored.getCause() instanceof IllegalStateException);
+        Assert.assertEquals("inner", restored.getCause().getMessage());
+    }
+
+    @Test
+    public void allowListTest() throws IOException {
+        EventEnvelope event = new EventEnvelope(new EventEnvelope()
+                .setException(new DemoException(DEMO)).setStatus(422).toBytes());
+        // an application exception that is not registered must not be instantiated by class name
+        Throwable restored = event.getException();
+        Assert.assertTrue(restored instanceof UnresolvedException);
+        Assert.assertEquals(DemoException.class.getName(), ((UnresolvedException) restored).getOriginalClass());
+        Assert.assertEquals(DEMO, restored.getMessage());
+        // the original class name is retained when the exception is relayed
+        EventEnvelope relayed = new EventEnvelope(new EventEnvelope().setException(restored).toBytes());
+        Assert.assertEquals(DemoException.class.getName(),
+                ((UnresolvedException) relayed.getException()).getOriginalClass());
+        ExceptionCodec.getInstance().register(DemoException.class);
+        restored = new EventEnvelope(event.toBytes()).getException();
+        Assert.assertTrue(restored instanceof DemoException);
+        Assert.assertEquals(DEMO, restored.getMessage());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void legacyFormatTest() throws IOException {
+        MsgPack msgPack = new MsgPack();
+        Map<String, Object> message = (Map<String, Object>) msgPack.unpack(new EventEnvelope().setBody("x").toBytes());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(out)) {
+            stream.writeObject(new IllegalArgumentException(DEMO));
+        }
+        // "4" is the key for an exception in Java serialization format
+        message.put("4", out.toByteArray());
+        EventEnvelope event = new EventEnvelope(msgPack.pack(message));
+        Assert.assertTrue(event.getException() instanceof IllegalArgumentException);
+        Assert.assertEquals(DEMO, event.getException().getMessage());
+    }
+
+    public static class DemoException extends RuntimeException {
+
+        public DemoException(String message) {
+            super(message);
+        }
+    }
+
     private static class MyCallBack implements TypedLambdaFunction<EventEnvelope, Object> {
 
         @Override
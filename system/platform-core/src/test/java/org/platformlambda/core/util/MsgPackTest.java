@@ -20,6 +20,7 @@ package org.platformlambda.core.util;
 
 import org.junit.Test;
 import org.platformlambda.core.serializers.MsgPack;
+import org.platformlambda.core.serializers.PackedValue;
 import org.platformlambda.core.serializers.PayloadMapper;
 import org.platformlambda.core.util.models.PoJo;
 
@@ -270,4 +271,43 @@ public class MsgPackTest {
         Assert.assertEquals(input.getAddress(), result.getAddress());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void reusedBufferTest() throws IOException {
+        // a large payload must not leave residue in the buffer for the next small one
+        byte[] large = new byte[512 * 1024];
+        Arrays.fill(large, (byte) 7);
+        Map<String, Object> big = new HashMap<>();
+        big.put("data", large);
+        Map<String, Object> small = new HashMap<>();
+        small.put("hello", "world");
+        for (int i = 0; i < 3; i++) {
+            Object o = msgPack.unpack(msgPack.pack(small));
+            Assert.assertEquals(small, o);
+            Map<String, Object> result = (Map<String, Object>) msgPack.unpack(msgPack.pack(big));
+            Assert.assertArrayEquals(large, (byte[]) result.get("data"));
+        }
+        // the same packed content must be produced on every call
+        byte[] b1 = msgPack.pack(small);
+        byte[] b2 = msgPack.pack(small);
+        Assert.assertArrayEquals(b1, b2);
+        Assert.assertNotSame(b1, b2);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void packedValueTest() throws IOException {
+        Map<String, Object> body = new HashMap<>();
+        body.put("hello", "world");
+        body.put("number", 100);
+        // an encoded value is embedded as is
+        PackedValue packed = new PackedValue(msgPack.packValue(body));
+        Map<String, Object> input = new HashMap<>();
+        input.put("body", packed);
+        input.put("to", "some.target");
+        Map<String, Object> result = (Map<String, Object>) msgPack.unpack(msgPack.pack(input));
+        Assert.assertEquals("some.target", result.get("to"));
+        Assert.assertEquals(body, result.get("body"));
+    }
+
 }
@@ -2,11 +2,13 @@ package org.platformlambda.core.util;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.LambdaFunction;
 import org.platformlambda.core.system.Platform;
 import org.platformlambda.core.system.PostOffice;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -39,4 +41,59 @@ public class MulticastTest {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void conditionalTargetTest() throws IOException, InterruptedException {
+        final String ALL = "v1.conditional.all";
+        final String AUDIT = "v1.conditional.audit";
+        final String SAMPLE = "v1.conditional.sample";
+        final PostOffice po = PostOffice.getInstance();
+        final ConcurrentMap<String, AtomicInteger> result = new ConcurrentHashMap<>();
+        final AtomicInteger counter = new AtomicInteger(0);
+        final BlockingQueue<Boolean> completion = new ArrayBlockingQueue<>(1);
+        // 4 events to all, 2 audit events and half of the events sampled
+        final int EXPECTED = 4 + 2 + 2;
+        LambdaFunction f = (headers, body, instance) -> {
+            result.computeIfAbsent(po.getRoute(), k -> new AtomicInteger(0)).incrementAndGet();
+            Assert.assertEquals("hello", body);
+            if (counter.incrementAndGet() == EXPECTED) {
+                completion.offer(true);
+            }
+            return true;
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(ALL, f, 1);
+        platform.registerPrivate(AUDIT, f, 1);
+        platform.registerPrivate(SAMPLE, f, 1);
+        for (int i = 0; i < 4; i++) {
+            EventEnvelope event = new EventEnvelope().setTo("v1.conditional.world").setBody("hello");
+            if (i % 2 == 0) {
+                event.setHeader("type", "audit");
+            }
+            po.send(event);
+        }
+        Assert.assertEquals(true, completion.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals(4, result.get(ALL).get());
+        Assert.assertEquals(2, result.get(AUDIT).get());
+        Assert.assertEquals(2, result.get(SAMPLE).get());
+        // delivery counters are updated after the events are sent
+        Map<String, Object> metrics = null;
+        for (int i = 0; i < 20; i++) {
+            metrics = (Map<String, Object>) po.getMulticastMetrics().get("v1.conditional.world");
+            long total = 0;
+            for (Object m: metrics.values()) {
+                total += (Long) ((Map<String, Object>) m).get("delivered");
+            }
+            if (total == EXPECTED) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+        Map<String, Object> audit = (Map<String, Object>) metrics.get(AUDIT);
+        Assert.assertEquals(2L, audit.get("delivered"));
+        Assert.assertEquals(2L, audit.get("skipped"));
+        Map<String, Object> all = (Map<String, Object>) metrics.get(ALL);
+        Assert.assertEquals(4L, all.get("delivered"));
+    }
+
 }
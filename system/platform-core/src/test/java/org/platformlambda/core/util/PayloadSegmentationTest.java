@@ -19,6 +19,7 @@
 package org.platformlambda.core.util;
 
 import org.junit.Test;
+import org.platformlambda.core.models.EventBlocks;
 import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.LambdaFunction;
 import org.platformlambda.core.system.Platform;
@@ -26,6 +27,7 @@ import org.platformlambda.core.system.PostOffice;
 import org.platformlambda.core.websocket.common.MultipartPayload;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -81,4 +83,53 @@ public class PayloadSegmentationTest {
         Assert.assertEquals((int) size, sb.length());
     }
 
+    @Test
+    public void outOfOrderReassembly() throws IOException {
+        byte[] payload = new byte[250];
+        for (int i=0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        // total size is unknown and the last block arrives first
+        EventBlocks blocks = new EventBlocks("1", 3);
+        Assert.assertTrue(blocks.put(3, Arrays.copyOfRange(payload, 200, 250)));
+        Assert.assertFalse(blocks.isComplete());
+        Assert.assertTrue(blocks.put(1, Arrays.copyOfRange(payload, 0, 100)));
+        Assert.assertFalse(blocks.put(1, Arrays.copyOfRange(payload, 0, 100)));
+        Assert.assertTrue(blocks.put(2, Arrays.copyOfRange(payload, 100, 200)));
+        Assert.assertTrue(blocks.isComplete());
+        Assert.assertEquals(payload.length, blocks.getLength());
+        Assert.assertArrayEquals(payload, blocks.toBytes());
+        blocks.release();
+        // total size is known and the buffer has the exact size
+        EventBlocks exact = new EventBlocks("2", 3, payload.length);
+        Assert.assertTrue(exact.put(3, Arrays.copyOfRange(payload, 200, 250)));
+        Assert.assertTrue(exact.put(2, Arrays.copyOfRange(payload, 100, 200)));
+        Assert.assertTrue(exact.put(1, Arrays.copyOfRange(payload, 0, 100)));
+        Assert.assertTrue(exact.isComplete());
+        Assert.assertEquals(payload.length, exact.getBuffer().length);
+        Assert.assertArrayEquals(payload, exact.getBuffer());
+        exact.release();
+    }
+
+    @Test
+    public void reassemblyLimit() {
+        long original = EventBlocks.getMaxReservedBytes();
+        long reserved = EventBlocks.getReservedBytes();
+        try {
+            EventBlocks.setMaxReservedBytes(reserved + 1000);
+            EventBlocks blocks = new EventBlocks("3", 20, 2000);
+            Assert.assertFalse(blocks.put(1, new byte[100]));
+            Assert.assertTrue(blocks.isRejected());
+            Assert.assertFalse(blocks.put(2, new byte[100]));
+            EventBlocks accepted = new EventBlocks("4", 2, 800);
+            Assert.assertTrue(accepted.put(1, new byte[400]));
+            Assert.assertEquals(reserved + 800, EventBlocks.getReservedBytes());
+            accepted.release();
+            accepted.release();
+            Assert.assertEquals(reserved, EventBlocks.getReservedBytes());
+        } finally {
+            EventBlocks.setMaxReservedBytes(original);
+        }
+    }
+
 }
@@ -23,6 +23,7 @@ import org.apache.logging.log4j.ThreadContext;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.platformlambda.core.actuator.ActuatorSnapshot;
 import org.platformlambda.core.annotations.EventInterceptor;
 import org.platformlambda.core.exception.AppException;
 import org.platformlambda.core.models.*;
@@ -30,6 +31,7 @@ import org.platformlambda.core.system.AppStarter;
 import org.platformlambda.core.system.Platform;
 import org.platformlambda.core.system.PostOffice;
 import org.platformlambda.core.system.ServiceDef;
+import org.platformlambda.core.system.ServiceQueue;
 import org.platformlambda.core.util.models.PoJo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -250,6 +252,179 @@ public class PostOfficeTest {
         po.send("undefined.route", "OK");
     }
 
+    @Test
+    public void routeResolutionCacheTest() throws IOException {
+        String ROUTE = "route.cache.test";
+        Platform platform = Platform.getInstance();
+        PostOffice po = PostOffice.getInstance();
+        try {
+            po.discover(ROUTE, false);
+            throw new IllegalArgumentException("Route should not exist");
+        } catch (IOException e) {
+            Assert.assertEquals("Route "+ROUTE+" not found", e.getMessage());
+        }
+        // registration invalidates the negative cache entry
+        platform.registerPrivate(ROUTE, (headers, body, instance) -> body, 1);
+        TargetRoute target = po.discover(ROUTE, false);
+        Assert.assertFalse(target.isCloud());
+        Assert.assertSame(target, po.discover(ROUTE, false));
+        Assert.assertSame(target.getManager(), po.discover(ROUTE+"@"+platform.getOrigin(), false).getManager());
+        platform.release(ROUTE);
+        try {
+            po.discover(ROUTE, false);
+            throw new IllegalArgumentException("Route should have been released");
+        } catch (IOException e) {
+            Assert.assertEquals("Route "+ROUTE+" not found", e.getMessage());
+        }
+    }
+
+    @Test
+    public void scatterGatherTest() throws IOException, InterruptedException, ExecutionException {
+        String FAST = "sg.fast";
+        String SLOW = "sg.slow";
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(FAST, (headers, body, instance) -> body, 2);
+        platform.registerPrivate(SLOW, (headers, body, instance) -> {
+            Thread.sleep(3000);
+            return body;
+        }, 1);
+        PostOffice po = PostOffice.getInstance();
+        List<EventEnvelope> events = new ArrayList<>();
+        events.add(new EventEnvelope().setTo(FAST).setBody("a"));
+        events.add(new EventEnvelope().setTo(SLOW).setBody("b"));
+        events.add(new EventEnvelope().setTo(FAST).setBody("c"));
+        long start = System.currentTimeMillis();
+        List<String> bodies = new ArrayList<>();
+        try (ScatterGather sg = po.scatterGather(events, 10000, ScatterGatherPolicy.first(2))) {
+            for (EventEnvelope reply: sg) {
+                bodies.add((String) reply.getBody());
+            }
+            Assert.assertTrue(sg.isDone());
+            Assert.assertEquals(2, sg.getFuture().toCompletionStage().toCompletableFuture().get().size());
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Collections.sort(bodies);
+        Assert.assertEquals(Arrays.asList("a", "c"), bodies);
+        // the slow target is reported as timeout without waiting for the overall timeout
+        events = new ArrayList<>();
+        events.add(new EventEnvelope().setTo(FAST).setBody("d").setCorrelationId("x"));
+        events.add(new EventEnvelope().setTo(SLOW).setBody("e").setCorrelationId("y"));
+        start = System.currentTimeMillis();
+        ScatterGather sg = po.scatterGather(events, 10000, ScatterGatherPolicy.all().setTargetTimeout(500));
+        List<EventEnvelope> replies = sg.getFuture().toCompletionStage().toCompletableFuture().get();
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assert.assertEquals(2, replies.size());
+        for (EventEnvelope reply: replies) {
+            if ("y".equals(reply.getCorrelationId())) {
+                Assert.assertEquals(408, (int) reply.getStatus());
+            } else {
+                Assert.assertEquals("d", reply.getBody());
+            }
+        }
+        // closing before completion cancels the outstanding request
+        sg = po.scatterGather(Collections.singletonList(new EventEnvelope().setTo(SLOW).setBody("f")),
+                10000, ScatterGatherPolicy.all());
+        sg.close();
+        Assert.assertTrue(sg.isDone());
+        try {
+            sg.getFuture().toCompletionStage().toCompletableFuture().get();
+            throw new IllegalArgumentException("Cancellation expected");
+        } catch (CancellationException e) {
+            Assert.assertTrue(e.getMessage().endsWith("cancelled"));
+        }
+        Assert.assertNull(sg.poll(100));
+        platform.release(FAST);
+        platform.release(SLOW);
+    }
+
+    @Test
+    public void hedgedRequestTest() throws IOException, InterruptedException, ExecutionException {
+        String ROUTE = "sg.hedged";
+        AtomicInteger calls = new AtomicInteger(0);
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(ROUTE, (headers, body, instance) -> {
+            if (calls.incrementAndGet() == 1) {
+                Thread.sleep(3000);
+            }
+            return calls.get();
+        }, 2);
+        PostOffice po = PostOffice.getInstance();
+        long start = System.currentTimeMillis();
+        ScatterGather sg = po.scatterGather(Collections.singletonList(new EventEnvelope().setTo(ROUTE).setBody("hello")),
+                        10000, ScatterGatherPolicy.all().setHedgeDelay(200));
+        List<EventEnvelope> replies = sg.getFuture().toCompletionStage().toCompletableFuture().get();
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assert.assertEquals(1, replies.size());
+        Assert.assertEquals(2, replies.get(0).getBody());
+        platform.release(ROUTE);
+    }
+
+    @Test
+    public void asyncFunctionTest() throws IOException, TimeoutException, InterruptedException {
+        String ROUTE = "async.function.test";
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        AsyncLambdaFunction<String, String> f = (headers, body, instance) -> {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            if ("hang".equals(body)) {
+                // this stage never completes
+                return future;
+            }
+            timer.schedule(() -> {
+                if ("fail".equals(body)) {
+                    future.completeExceptionally(new AppException(409, "conflict"));
+                } else {
+                    future.complete(body.toUpperCase());
+                }
+            }, 1000, TimeUnit.MILLISECONDS);
+            return future;
+        };
+        Platform platform = Platform.getInstance();
+        // a single instance serves all requests because it is released before the future completes
+        platform.registerPrivate(ROUTE, f, 1);
+        PostOffice po = PostOffice.getInstance();
+        try {
+            List<EventEnvelope> events = new ArrayList<>();
+            for (int i=0; i < 5; i++) {
+                events.add(new EventEnvelope().setTo(ROUTE).setBody("hello"+i));
+            }
+            long start = System.currentTimeMillis();
+            List<EventEnvelope> replies = po.request(events, 8000);
+            // sequential execution would take at least 5 seconds
+            Assert.assertTrue(System.currentTimeMillis() - start < 4000);
+            Assert.assertEquals(5, replies.size());
+            for (EventEnvelope reply: replies) {
+                Assert.assertTrue(((String) reply.getBody()).startsWith("HELLO"));
+            }
+            try {
+                po.request(ROUTE, 5000, "fail");
+                throw new IllegalArgumentException("Exception expected");
+            } catch (AppException e) {
+                Assert.assertEquals(409, e.getStatus());
+                Assert.assertEquals("conflict", e.getMessage());
+            }
+            try {
+                po.request(ROUTE, 500, "hang");
+                throw new IllegalArgumentException("Timeout expected");
+            } catch (AppException | TimeoutException e) {
+                // the caller may see its own timeout or the 408 reply from the stage timeout
+            }
+            // the stage is abandoned at the deadline of the request
+            ServiceQueue manager = platform.getManager(ROUTE);
+            Object pending = null;
+            for (int i=0; i < 20; i++) {
+                pending = manager.getAdmissionMetrics().get("async_pending");
+                if (Integer.valueOf(0).equals(pending)) {
+                    break;
+                }
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(0, pending);
+        } finally {
+            platform.release(ROUTE);
+            timer.shutdown();
+        }
+    }
+
     @Test
     public void cancelFutureEventTest() throws IOException {
         long FIVE_SECONDS = 5000;
@@ -337,6 +512,39 @@ public class PostOfficeTest {
         Assert.assertEquals(WORLD, multi.getElement("journal.annotations.hello"));
     }
 
+    @Test
+    public void traceWithoutJournalTest() throws IOException, InterruptedException {
+        BlockingQueue<Map<String, Object>> bench = new ArrayBlockingQueue<>(1);
+        Platform platform = Platform.getInstance();
+        PostOffice po = PostOffice.getInstance();
+        String TRACE_ID = Utility.getInstance().getUuid();
+        String NOT_JOURNALED = "not.journaled.function";
+        String TRACE_PROCESSOR = "distributed.trace.processor";
+        LambdaFunction f = (headers, body, instance) -> {
+            if (TRACE_ID.equals(headers.get("id"))) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("metrics", headers);
+                result.put("journal", body);
+                bench.offer(result);
+            }
+            return null;
+        };
+        LambdaFunction myFunction = (headers, body, instance) -> body;
+        platform.registerPrivate(TRACE_PROCESSOR, f, 1);
+        platform.registerPrivate(NOT_JOURNALED, myFunction, 1);
+        po.send(new EventEnvelope().setTo(NOT_JOURNALED).setTraceId(TRACE_ID)
+                .setTracePath("GET /api/hello/world").setBody("hello"));
+        Map<String, Object> result = bench.poll(10, TimeUnit.SECONDS);
+        platform.release(TRACE_PROCESSOR);
+        platform.release(NOT_JOURNALED);
+        MultiLevelMap multi = new MultiLevelMap(result);
+        Assert.assertEquals(NOT_JOURNALED, multi.getElement("metrics.service"));
+        Assert.assertEquals("true", multi.getElement("metrics.success"));
+        Assert.assertNotNull(multi.getElement("metrics.start"));
+        // input/output dataset is not collected for a route that is not journaled
+        Assert.assertNull(multi.getElement("journal.payload"));
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void pingTest() throws AppException, IOException, TimeoutException {
@@ -676,6 +884,31 @@ public class PostOfficeTest {
         Assert.assertTrue(routes.contains(ANOTHER_FUNCTION));
     }
 
+    @Test
+    public void routeSnapshotTest() throws AppException, IOException, TimeoutException {
+        String ROUTE = "snapshot.test.function";
+        PostOffice po = PostOffice.getInstance();
+        po.request(PostOffice.ACTUATOR_SERVICES, 5000, new Kv("type", "routes"));
+        ActuatorSnapshot.Snapshot snapshot = ActuatorSnapshot.getInstance().get("routes");
+        Assert.assertNotNull(snapshot);
+        // the snapshot is reused until the routing table changes
+        po.request(PostOffice.ACTUATOR_SERVICES, 5000, new Kv("type", "routes"));
+        Assert.assertSame(snapshot, ActuatorSnapshot.getInstance().get("routes"));
+        Platform platform = Platform.getInstance();
+        LambdaFunction f = (headers, body, instance) -> body;
+        platform.register(ROUTE, f, 1);
+        try {
+            Assert.assertNull(ActuatorSnapshot.getInstance().get("routes"));
+            po.request(PostOffice.ACTUATOR_SERVICES, 5000, new Kv("type", "routes"));
+            ActuatorSnapshot.Snapshot updated = ActuatorSnapshot.getInstance().get("routes");
+            Assert.assertNotNull(updated);
+            Assert.assertNotSame(snapshot, updated);
+            Assert.assertTrue(updated.getETag().startsWith("\""));
+        } finally {
+            platform.release(ROUTE);
+        }
+    }
+
     @Test
     public void livenessProbeTest() throws AppException, IOException, TimeoutException {
         PostOffice po = PostOffice.getInstance();
@@ -683,11 +916,14 @@ public class PostOfficeTest {
         Assert.assertEquals("OK", result.getBody());
     }
 
+    @SuppressWarnings("unchecked")
     @Test
     public void envTest() throws AppException, IOException, TimeoutException {
         PostOffice po = PostOffice.getInstance();
         EventEnvelope result = po.request(PostOffice.ACTUATOR_SERVICES, 5000, new Kv("type", "env"));
         Assert.assertTrue(result.getBody() instanceof Map);
+        Map<String, Object> queues = (Map<String, Object>) ((Map<String, Object>) result.getBody()).get("queues");
+        Assert.assertTrue(queues.get(PostOffice.ACTUATOR_SERVICES) instanceof Map);
     }
 
     @Test
@@ -703,6 +939,109 @@ public class PostOfficeTest {
         Assert.assertEquals(false, result.getBody());
     }
 
+    @Test
+    public void admissionYamlTest() throws IOException {
+        String ROUTE = "admission.yaml.test";
+        Platform platform = Platform.getInstance();
+        LambdaFunction f = (headers, body, instance) -> body;
+        platform.registerPrivate(ROUTE, f, 1);
+        AdmissionPolicy policy = platform.getManager(ROUTE).getAdmissionPolicy();
+        Assert.assertNotNull(policy);
+        Assert.assertEquals(100, policy.getMaxBacklog());
+        Assert.assertEquals(1000000, policy.getMaxBacklogBytes());
+        Assert.assertEquals(2000, policy.getMaxQueueDelay());
+        Assert.assertTrue(policy.isHonorDeadline());
+        Assert.assertEquals(AdmissionPolicy.ShedMode.DROP_OLDEST, policy.getShedMode());
+        platform.release(ROUTE);
+    }
+
+    @Test
+    public void admissionRejectTest() throws IOException {
+        String ROUTE = "admission.reject.test";
+        Platform platform = Platform.getInstance();
+        PostOffice po = PostOffice.getInstance();
+        LambdaFunction f = (headers, body, instance) -> {
+            Thread.sleep(300);
+            return body;
+        };
+        platform.registerPrivate(ROUTE, f, 1);
+        platform.getManager(ROUTE).setAdmissionPolicy(new AdmissionPolicy().setMaxBacklog(1));
+        List<EventEnvelope> requests = new ArrayList<>();
+        for (int i=0; i < 4; i++) {
+            requests.add(new EventEnvelope().setTo(ROUTE).setBody(i));
+        }
+        List<EventEnvelope> responses = po.request(requests, 5000);
+        Assert.assertEquals(4, responses.size());
+        int rejected = 0;
+        for (EventEnvelope res: responses) {
+            if (res.getStatus() == 503) {
+                rejected++;
+            }
+        }
+        // one event is executed, one is queued and the others are rejected immediately
+        Assert.assertEquals(2, rejected);
+        Assert.assertEquals(2, platform.getManager(ROUTE).getRejectedCounter());
+        platform.release(ROUTE);
+    }
+
+    @Test
+    public void admissionDeadlineTest() throws IOException, InterruptedException {
+        String ROUTE = "admission.deadline.test";
+        AtomicInteger executed = new AtomicInteger(0);
+        Platform platform = Platform.getInstance();
+        PostOffice po = PostOffice.getInstance();
+        LambdaFunction f = (headers, body, instance) -> {
+            executed.incrementAndGet();
+            Thread.sleep(500);
+            return body;
+        };
+        platform.registerPrivate(ROUTE, f, 1);
+        platform.getManager(ROUTE).setAdmissionPolicy(new AdmissionPolicy().setHonorDeadline(true));
+        po.asyncRequest(new EventEnvelope().setTo(ROUTE).setBody(1), 5000);
+        // the second request expires while the first one is being executed
+        po.asyncRequest(new EventEnvelope().setTo(ROUTE).setBody(2), 100);
+        Thread.sleep(1000);
+        Assert.assertEquals(1, executed.get());
+        Assert.assertEquals(1, platform.getManager(ROUTE).getExpiredCounter());
+        platform.release(ROUTE);
+    }
+
+    @Test
+    public void batchFunctionTest() throws IOException, InterruptedException {
+        String ROUTE = "batch.function.test";
+        int CYCLES = 20;
+        AtomicInteger batches = new AtomicInteger(0);
+        BlockingQueue<EventEnvelope> responses = new ArrayBlockingQueue<>(CYCLES);
+        Platform platform = Platform.getInstance();
+        PostOffice po = PostOffice.getInstance();
+        BatchLambdaFunction f = (events, instance) -> {
+            batches.incrementAndGet();
+            List<Object> output = new ArrayList<>();
+            for (EventEnvelope event: events) {
+                output.add(new EventEnvelope().setBody(event.getBody()).setHeader("batch", events.size()));
+            }
+            return output;
+        };
+        platform.registerPrivateBatch(ROUTE, f, 1, 10, 100);
+        for (int i=0; i < CYCLES; i++) {
+            Future<EventEnvelope> future = po.asyncRequest(new EventEnvelope().setTo(ROUTE).setBody(i), 5000);
+            // assertions inside a callback would not fail the test so responses are checked on the test thread
+            future.onSuccess(responses::offer);
+        }
+        Set<Object> results = new HashSet<>();
+        for (int i=0; i < CYCLES; i++) {
+            EventEnvelope response = responses.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(response);
+            Assert.assertEquals(200, (int) response.getStatus());
+            Assert.assertNotNull(response.getHeaders().get("batch"));
+            results.add(response.getBody());
+        }
+        Assert.assertEquals(CYCLES, results.size());
+        // events are delivered in batches of up to 10
+        Assert.assertTrue(batches.get() < CYCLES);
+        platform.release(ROUTE);
+    }
+
     @Test
     public void envelopeArgumentTest() throws IOException, AppException, TimeoutException {
         String TARGET = "test.route.1";
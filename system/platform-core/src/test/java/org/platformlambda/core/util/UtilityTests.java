@@ -316,6 +316,29 @@ public class UtilityTests {
         Assert.assertEquals(m3flat.get(MIX_PATH), m3.getElement(MIX_PATH));
     }
 
+    @Test
+    public void compiledPathTest() {
+        CompiledPath path = CompiledPath.compile("hello.world[1][2].headers[0]");
+        // compiled paths are cached
+        Assert.assertSame(path, CompiledPath.compile("hello.world[1][2].headers[0]"));
+        Assert.assertTrue(path.isComposite());
+        Assert.assertEquals(3, path.size());
+        Assert.assertEquals("world", path.getKey(1));
+        Assert.assertArrayEquals(new int[]{1, 2}, path.getIndexes(1));
+        Assert.assertNull(path.getIndexes(0));
+        MultiLevelMap mm = new MultiLevelMap();
+        mm.setElement(path, "x");
+        Assert.assertEquals("x", mm.getElement(path));
+        Assert.assertEquals("x", mm.getElement("hello.world[1][2].headers[0]"));
+        Assert.assertTrue(mm.exists(path));
+        Assert.assertNull(mm.getElement("hello.world[1][3].headers[0]"));
+        Assert.assertNull(mm.getElement("hello.world[x].headers[0]"));
+        // syntax is checked when setting an element
+        IllegalArgumentException ex = Assert.assertThrows(IllegalArgumentException.class,
+                () -> mm.setElement("hello.world[x]", "y"));
+        Assert.assertEquals("Invalid composite path - indexes must be digits", ex.getMessage());
+    }
+
     @Test
     public void intranetIpTest() {
         final Utility util = Utility.getInstance();
@@ -358,4 +381,34 @@ public class UtilityTests {
         Assert.assertEquals(expected, util.elapsedTime(time));
     }
 
+    @Test
+    public void uniqueIdTest() {
+        final Utility util = Utility.getInstance();
+        Set<String> ids = new HashSet<>();
+        for (int i=0; i < 10000; i++) {
+            String id = util.getUniqueId();
+            Assert.assertEquals(23, id.length());
+            Assert.assertTrue(util.validServiceName("r."+id));
+            ids.add(id);
+        }
+        Assert.assertEquals(10000, ids.size());
+    }
+
+    @Test
+    public void randomIdTest() {
+        final Utility util = Utility.getInstance();
+        Set<String> ids = new HashSet<>();
+        Set<String> suffixes = new HashSet<>();
+        for (int i=0; i < 10000; i++) {
+            String id = util.getRandomId();
+            Assert.assertEquals(35, id.length());
+            Assert.assertTrue(util.validServiceName("r."+id));
+            ids.add(id);
+            suffixes.add(id.substring(23));
+        }
+        Assert.assertEquals(10000, ids.size());
+        // the random part does not depend on the time and sequence number
+        Assert.assertEquals(10000, suffixes.size());
+    }
+
 }
@@ -0,0 +1,121 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+package org.platformlambda.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.models.LambdaFunction;
+import org.platformlambda.core.system.Platform;
+import org.platformlambda.core.system.PostOffice;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WorkerAllocationTest {
+
+    private static final int WARM_UP = 3000;
+    private static final int CYCLES = 2000;
+    /*
+     * Allowance for the trace context and process status of the worker.
+     * The input/output journal maps of a single event would exceed this.
+     */
+    private static final long MAX_OVERHEAD = 384;
+
+    /**
+     * The execution path of an untraced and unjournaled event should not allocate anything
+     * other than the decoded event and its reply.
+     * <p>
+     * Allocation is measured on the worker thread from the end of one function call to the start of the next.
+     * This covers sending the reply of an event and decoding the next one.
+     * The same work is then repeated on the test thread to obtain the baseline.
+     * <p>
+     * Since worker threads are pooled, another task may run on the same thread between two calls.
+     * The smallest measurement is therefore used.
+     */
+    @Test
+    public void untracedPathAllocation() throws IOException, InterruptedException {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assert.assertTrue(mx.isThreadAllocatedMemorySupported());
+        mx.setThreadAllocatedMemoryEnabled(true);
+        String ROUTE = "allocation.test";
+        String SINK = "allocation.sink";
+        int total = WARM_UP + CYCLES;
+        long[] entry = new long[total];
+        long[] exit = new long[total];
+        long[] threads = new long[total];
+        AtomicInteger counter = new AtomicInteger(0);
+        BlockingQueue<Boolean> replies = new LinkedBlockingQueue<>();
+        LambdaFunction f = (headers, body, instance) -> {
+            long tid = Thread.currentThread().getId();
+            int n = counter.getAndIncrement();
+            threads[n] = tid;
+            entry[n] = mx.getThreadAllocatedBytes(tid);
+            // the function does nothing else so that the reply is sent right after this point
+            exit[n] = mx.getThreadAllocatedBytes(tid);
+            return body;
+        };
+        LambdaFunction sink = (headers, body, instance) -> {
+            replies.offer(true);
+            return null;
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(ROUTE, f, 1);
+        platform.registerPrivate(SINK, sink, 1);
+        PostOffice po = PostOffice.getInstance();
+        try {
+            for (int i=0; i < total; i++) {
+                po.send(new EventEnvelope().setTo(ROUTE).setReplyTo(SINK).setBody("hello"));
+                Assert.assertNotNull(replies.poll(5, TimeUnit.SECONDS));
+            }
+            long worker = Long.MAX_VALUE;
+            for (int i=WARM_UP; i < total - 1; i++) {
+                if (threads[i] == threads[i+1]) {
+                    worker = Math.min(worker, entry[i+1] - exit[i]);
+                }
+            }
+            Assert.assertNotEquals(Long.MAX_VALUE, worker);
+            // the same reply and decoding work on the test thread
+            byte[] request = new EventEnvelope().setTo(ROUTE).setReplyTo(SINK).setBody("hello").toBytes();
+            long tid = Thread.currentThread().getId();
+            long baseline = Long.MAX_VALUE;
+            for (int i=0; i < total; i++) {
+                long start = mx.getThreadAllocatedBytes(tid);
+                EventEnvelope event = new EventEnvelope();
+                event.load(request);
+                EventEnvelope response = new EventEnvelope().setTo(event.getReplyTo()).setFrom(ROUTE);
+                response.setBody(event.getBody()).setExecutionTime(0.1f);
+                po.send(response);
+                long end = mx.getThreadAllocatedBytes(tid);
+                Assert.assertNotNull(replies.poll(5, TimeUnit.SECONDS));
+                if (i >= WARM_UP) {
+                    baseline = Math.min(baseline, end - start);
+                }
+            }
+            Assert.assertTrue("Overhead of " + (worker - baseline) + " bytes", worker - baseline <= MAX_OVERHEAD);
+        } finally {
+            platform.release(ROUTE);
+            platform.release(SINK);
+        }
+    }
+
+}
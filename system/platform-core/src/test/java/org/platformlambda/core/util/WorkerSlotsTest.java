@@ -0,0 +1,80 @@
+/*
+
+    Copyright 2018-2022 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+package org.platformlambda.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.system.WorkerSlots;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class WorkerSlotsTest {
+
+    @Test
+    public void acquireAndRelease() {
+        WorkerSlots slots = new WorkerSlots(100);
+        Assert.assertTrue(slots.isEmpty());
+        Assert.assertEquals(-1, slots.acquire());
+        for (int i=0; i < 100; i++) {
+            slots.release(i);
+        }
+        // releasing a free slot or an invalid slot has no effect
+        slots.release(5);
+        slots.release(100);
+        Assert.assertEquals(100, slots.available());
+        Set<Integer> claimed = new HashSet<>();
+        for (int i=0; i < 100; i++) {
+            claimed.add(slots.acquire());
+        }
+        Assert.assertEquals(100, claimed.size());
+        Assert.assertEquals(-1, slots.acquire());
+        slots.release(70);
+        Assert.assertEquals(70, slots.acquire());
+    }
+
+    @Test
+    public void concurrentRelease() throws InterruptedException {
+        int SIZE = 200;
+        WorkerSlots slots = new WorkerSlots(SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch done = new CountDownLatch(SIZE);
+        for (int i=0; i < SIZE; i++) {
+            int slot = i;
+            executor.submit(() -> {
+                slots.release(slot);
+                done.countDown();
+            });
+        }
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertEquals(SIZE, slots.available());
+        Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+        int n;
+        while ((n = slots.acquire()) >= 0) {
+            claimed.add(n);
+        }
+        Assert.assertEquals(SIZE, claimed.size());
+    }
+
+}
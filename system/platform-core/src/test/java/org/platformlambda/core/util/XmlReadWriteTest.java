@@ -23,8 +23,13 @@ import org.junit.Test;
 import org.platformlambda.core.serializers.SimpleXmlParser;
 import org.platformlambda.core.serializers.SimpleXmlWriter;
 
+import io.vertx.core.buffer.Buffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class XmlReadWriteTest {
@@ -111,4 +116,44 @@ public class XmlReadWriteTest {
         }
     }
 
+    @Test
+    public void streamingWriteTest() throws IOException {
+        Map<String, Object> data = new HashMap<>();
+        data.put("hello", "world");
+        data.put("text", "\u4f60\u597d & <bye>");
+        data.put("numbers", Arrays.asList(1, 2, 3));
+        String xml = writer.write("result", data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write("result", data, out);
+        Assert.assertEquals(xml, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        Buffer buffer = Buffer.buffer();
+        writer.write("result", data, buffer);
+        Assert.assertEquals(xml, buffer.toString(StandardCharsets.UTF_8));
+        Map<String, Object> result = parser.parse(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals("\u4f60\u597d & <bye>", result.get("text"));
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), result.get("numbers"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void attributeAndCdataTest() throws IOException {
+        String xml = "<order id=\"100\"><item sku=\"a1\"><![CDATA[x < y]]></item>" +
+                     "<note>  hello  </note><empty/></order>";
+        Map<String, Object> result = parser.parse(xml);
+        // attributes of the root element belong to the root and the rest are rendered under the parent
+        Assert.assertEquals("100", result.get("id"));
+        Assert.assertEquals("a1", result.get("sku"));
+        Assert.assertEquals("x < y", result.get("item"));
+        Assert.assertEquals("hello", result.get("note"));
+        Assert.assertFalse(result.containsKey("empty"));
+    }
+
+    @Test(expected = IOException.class)
+    public void doctypeTest() throws IOException {
+        String problematic = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<!DOCTYPE foo [ <!ENTITY xxe SYSTEM \"file:///etc/passwd\"> ]>\n" +
+                "<stockCheck><productId>&xxe;</productId></stockCheck>";
+        parser.parse(problematic);
+    }
+
 }